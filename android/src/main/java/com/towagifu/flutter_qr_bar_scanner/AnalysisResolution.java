@@ -0,0 +1,89 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Requested size of the frames that are sent for detection. Independent of the preview size.
+ * <p>
+ * Width and height are given in the same orientation as the preview target size, i.e. they are swapped according
+ * to the sensor orientation when matched against the sizes the camera supports.
+ */
+class AnalysisResolution {
+    /** default analysis size (long edge x short edge) when only 1D formats are requested. */
+    private static final int LINEAR_LONG_EDGE = 640;
+    private static final int LINEAR_SHORT_EDGE = 480;
+
+    /** default analysis size (long edge x short edge) when any 2D format is requested. */
+    private static final int MATRIX_LONG_EDGE = 1280;
+    private static final int MATRIX_SHORT_EDGE = 720;
+
+    enum Mode {
+        /** analyse frames of about the same size as the preview, as before analysis sizes could be chosen. */
+        PREVIEW,
+        /** analyse frames of about the requested size. */
+        FIXED,
+        /** analyse frames sized for the density of the requested formats. */
+        AUTO;
+
+        static Mode parse(String value) throws NoSuchElementException {
+            if(value == null) {
+                return PREVIEW;
+            }
+            switch(value) {
+                case "preview":
+                    return PREVIEW;
+                case "fixed":
+                    return FIXED;
+                case "auto":
+                    return AUTO;
+                default:
+                    throw new NoSuchElementException(value);
+            }
+        }
+    }
+
+    final int width;
+    final int height;
+    /** maximum number of pixels in an analysed frame, or 0 for no limit. */
+    final int maxPixels;
+
+    private AnalysisResolution(int width, int height, int maxPixels) {
+        this.width = width;
+        this.height = height;
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * @param mode          - how to pick the analysis size.
+     * @param width         - requested width, used in FIXED mode.
+     * @param height        - requested height, used in FIXED mode.
+     * @param maxPixels     - maximum pixel count, or null for no limit.
+     * @param previewWidth  - preview target width.
+     * @param previewHeight - preview target height.
+     * @param formats       - requested barcode formats, used in AUTO mode.
+     */
+    static AnalysisResolution resolve(
+        Mode mode, Integer width, Integer height, Integer maxPixels, int previewWidth, int previewHeight,
+        List<String> formats
+    ) {
+        final int limit = maxPixels == null || maxPixels < 0 ? 0 : maxPixels;
+        switch(mode) {
+            case FIXED:
+                if(width != null && height != null) {
+                    return new AnalysisResolution(width, height, limit);
+                }
+                // fall back to preview size when no size is given
+            case PREVIEW:
+                return new AnalysisResolution(previewWidth, previewHeight, limit);
+            case AUTO:
+            default:
+                final boolean matrix = BarcodeFormats.anyTwoDimensional(formats);
+                final int longEdge = matrix ? MATRIX_LONG_EDGE : LINEAR_LONG_EDGE;
+                final int shortEdge = matrix ? MATRIX_SHORT_EDGE : LINEAR_SHORT_EDGE;
+                return previewWidth >= previewHeight
+                    ? new AnalysisResolution(longEdge, shortEdge, limit)
+                    : new AnalysisResolution(shortEdge, longEdge, limit);
+        }
+    }
+}
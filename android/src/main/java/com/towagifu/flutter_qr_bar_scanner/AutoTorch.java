@@ -0,0 +1,117 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.hardware.camera2.CaptureResult;
+import android.os.SystemClock;
+
+/**
+ * Decides when to turn the torch on and off from the exposure auto exposure settles on, as reported in capture
+ * results: the product of exposure time (in ms) and sensitivity (ISO) grows as the scene gets darker.
+ * <p>
+ * The torch is turned on once the scene has been darker than the dark level for the hold time. With the torch on,
+ * the exposure reflects the torch rather than the surroundings, so the exposure measured once the torch has settled
+ * becomes the reference, and the torch is turned off again once the exposure has stayed well below it (meaning the
+ * surroundings got much brighter) for the hold time. Between the two the state does not change, which keeps the torch
+ * from flickering at the threshold.
+ * <p>
+ * Once the app switches the torch itself, the torch is left to it until the next start.
+ * <p>
+ * Only used from the camera thread.
+ */
+class AutoTorch {
+    /** exposure with the torch on is measured this long after turning it on, once auto exposure has adjusted. */
+    private static final long SETTLE_MS = 500;
+    /** the torch goes off once the exposure is below this fraction of the one measured after turning it on. */
+    private static final float BRIGHTER_FRACTION = 0.25f;
+
+    static class Options {
+        final boolean enabled;
+        /** exposure time (ms) times ISO above which the scene counts as dark. */
+        final float darkLevel;
+        /** how long a change of lighting must last before the torch follows it. */
+        final long holdMs;
+
+        Options(Boolean enabled, Double darkLevel, Integer holdMs) {
+            this.enabled = enabled != null && enabled;
+            this.darkLevel = darkLevel == null || darkLevel <= 0 ? 20000f : darkLevel.floatValue();
+            this.holdMs = holdMs == null || holdMs < 0 ? 1000 : holdMs;
+        }
+    }
+
+    private final Options options;
+    /** true once the app took over the torch. */
+    private boolean overridden;
+    private boolean on;
+    /** uptime at which the torch was last switched. */
+    private long switchedMs;
+    /** exposure measured with the torch on, or 0 while not measured yet. */
+    private float torchLevel;
+    /** uptime since which the lighting has called for a switch, or -1. */
+    private long pendingSinceMs = -1;
+
+    AutoTorch(Options options) {
+        this.options = options;
+    }
+
+    boolean isOn() {
+        return on;
+    }
+
+    /**
+     * @return true if the torch state changed, in which case isOn() tells the new state.
+     */
+    boolean update(CaptureResult result) {
+        final Long exposureNs = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+        final Integer iso = result.get(CaptureResult.SENSOR_SENSITIVITY);
+        if(!options.enabled || overridden || exposureNs == null || iso == null) {
+            return false;
+        }
+        final float level = exposureNs / 1e6f * iso;
+        final long now = SystemClock.uptimeMillis();
+
+        final boolean wantSwitch;
+        if(!on) {
+            wantSwitch = level > options.darkLevel;
+        } else if(now - switchedMs < SETTLE_MS) {
+            return false;
+        } else if(torchLevel == 0) {
+            torchLevel = level;
+            return false;
+        } else {
+            wantSwitch = level < torchLevel * BRIGHTER_FRACTION;
+        }
+
+        if(!wantSwitch) {
+            pendingSinceMs = -1;
+            return false;
+        }
+        if(pendingSinceMs < 0) {
+            pendingSinceMs = now;
+        }
+        if(now - pendingSinceMs < options.holdMs) {
+            return false;
+        }
+        on = !on;
+        switchedMs = now;
+        torchLevel = 0;
+        pendingSinceMs = -1;
+        return true;
+    }
+
+    /**
+     * Turns the torch off and stops switching it, for when the app switches it itself. Unlike the torch state, this is
+     * not forgotten when the camera is reopened.
+     */
+    void override() {
+        overridden = true;
+        reset();
+    }
+
+    /**
+     * Forgets the torch state, for when the camera is reopened.
+     */
+    void reset() {
+        on = false;
+        torchLevel = 0;
+        pendingSinceMs = -1;
+    }
+}
@@ -0,0 +1,231 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.graphics.Rect;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Builds up the set of distinct barcodes seen across frames, for reading many labels at once: a barcode that is
+ * occluded or blurred in one frame is still in the set from the frames it was read in. Takes the place of the
+ * per-frame results, and reports changes to the set instead:
+ * <ul>
+ * <li>added: a barcode has been seen in enough frames of the window to count</li>
+ * <li>moved: a barcode in the set was seen at a clearly different position</li>
+ * <li>removed: a barcode in the set has not been seen for the window of frames</li>
+ * </ul>
+ * A collection completes once the set holds enough barcodes, or some time after the first barcode was seen. The
+ * whole set is then reported, and the next collection starts empty.
+ * <p>
+ * Barcodes are tracked by {@link BarcodeKey}, with the number of frames each was seen in as a measure of confidence,
+ * and the position it was last seen at (in frame coordinates).
+ */
+class BarcodeAggregator implements QrReaderCallbacks {
+    static class Options {
+        /** a barcode leaves the set once it has not been seen for this many analysed frames, or 0 to keep it. */
+        final int windowFrames;
+        /**
+         * number of frames a barcode must be seen in before it is added, all within windowFrames frames of each other
+         * (or any frames if windowFrames is 0).
+         */
+        final int minSightings;
+        /** complete the collection once the set holds this many barcodes, or 0. */
+        final int completeAfterCodes;
+        /** complete the collection this long after the first barcode was seen, or 0. */
+        final long completeAfterMs;
+
+        private Options(
+            Integer windowFrames, Integer minSightings, Integer completeAfterCodes, Integer completeAfterMs
+        ) {
+            this.windowFrames = windowFrames == null ? 30 : Math.max(0, windowFrames);
+            this.minSightings = minSightings == null ? 1 : Math.max(1, minSightings);
+            this.completeAfterCodes = completeAfterCodes == null ? 0 : Math.max(0, completeAfterCodes);
+            this.completeAfterMs = completeAfterMs == null ? 0 : Math.max(0, completeAfterMs);
+        }
+
+        /**
+         * @return the options, or null if not aggregating.
+         */
+        static Options create(
+            Boolean aggregate, Integer windowFrames, Integer minSightings, Integer completeAfterCodes,
+            Integer completeAfterMs
+        ) {
+            if(aggregate == null || !aggregate) {
+                return null;
+            }
+            return new Options(windowFrames, minSightings, completeAfterCodes, completeAfterMs);
+        }
+    }
+
+    /**
+     * A barcode of the set, as it was when reported.
+     */
+    static class Sighting {
+        final QrBarcode barcode;
+        /** number of frames the barcode has been seen in. */
+        final int count;
+
+        Sighting(QrBarcode barcode, int count) {
+            this.barcode = barcode;
+            this.count = count;
+        }
+    }
+
+    interface Listener {
+        /**
+         * Called on the thread detection results are handled on, after a frame that changed the set.
+         *
+         * @param collected - the whole set if the collection completed with this frame, otherwise null.
+         */
+        void onAggregate(List<Sighting> added, List<Sighting> moved, List<Sighting> removed, List<Sighting> collected);
+    }
+
+    private static class Entry {
+        QrBarcode barcode;
+        int count;
+        long lastSeenFrame;
+        /** the frames of the last minSightings sightings, as a ring indexed by count, until the barcode is added. */
+        long[] recentFrames;
+        boolean added;
+        /** position last reported, to tell whether the barcode moved. */
+        Rect reportedBox;
+
+        Sighting sighting() {
+            return new Sighting(barcode, count);
+        }
+    }
+
+    private final Options options;
+    private final Listener listener;
+    private final Map<BarcodeKey, Entry> entries = new HashMap<>();
+    private long frame;
+    private int addedCount;
+    /** uptime at which the first barcode of this collection was seen, or -1. */
+    private long firstSeenMs = -1;
+
+    BarcodeAggregator(Options options, Listener listener) {
+        this.options = options;
+        this.listener = listener;
+    }
+
+    /**
+     * Empties the set and starts a new collection.
+     */
+    synchronized void reset() {
+        entries.clear();
+        addedCount = 0;
+        firstSeenMs = -1;
+    }
+
+    @Override
+    public synchronized void qrRead(Stream<QrBarcode> data) {
+        final long now = SystemClock.elapsedRealtime();
+        ++frame;
+
+        final List<Sighting> added = new ArrayList<>();
+        final List<Sighting> moved = new ArrayList<>();
+        final List<Sighting> removed = new ArrayList<>();
+        final Set<BarcodeKey> seen = new HashSet<>();
+        for(Iterator<QrBarcode> it = data.iterator(); it.hasNext();) {
+            final QrBarcode barcode = it.next();
+            final BarcodeKey key = BarcodeKey.of(barcode);
+            if(!seen.add(key)) {
+                // the same barcode twice in one frame counts once
+                continue;
+            }
+            if(firstSeenMs < 0) {
+                firstSeenMs = now;
+            }
+
+            Entry entry = entries.get(key);
+            if(entry == null) {
+                entry = new Entry();
+                entries.put(key, entry);
+            }
+            entry.barcode = barcode;
+            ++entry.count;
+            entry.lastSeenFrame = frame;
+
+            if(!entry.added) {
+                if(seenEnough(entry)) {
+                    entry.recentFrames = null;
+                    entry.added = true;
+                    entry.reportedBox = barcode.getBoundingBox();
+                    ++addedCount;
+                    added.add(entry.sighting());
+                }
+            } else if(moved(entry.reportedBox, barcode.getBoundingBox())) {
+                entry.reportedBox = barcode.getBoundingBox();
+                moved.add(entry.sighting());
+            }
+        }
+
+        if(options.windowFrames > 0) {
+            for(Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+                final Entry entry = it.next();
+                if(frame - entry.lastSeenFrame < options.windowFrames) {
+                    continue;
+                }
+                it.remove();
+                if(entry.added) {
+                    --addedCount;
+                    removed.add(entry.sighting());
+                }
+            }
+        }
+
+        List<Sighting> collected = null;
+        if((options.completeAfterCodes > 0 && addedCount >= options.completeAfterCodes)
+            || (options.completeAfterMs > 0 && firstSeenMs >= 0 && now - firstSeenMs >= options.completeAfterMs))
+        {
+            collected = new ArrayList<>(addedCount);
+            for(Entry entry : entries.values()) {
+                if(entry.added) {
+                    collected.add(entry.sighting());
+                }
+            }
+            reset();
+        }
+
+        if(collected != null || !added.isEmpty() || !moved.isEmpty() || !removed.isEmpty()) {
+            listener.onAggregate(added, moved, removed, collected);
+        }
+    }
+
+    /**
+     * Records the sighting of entry in the current frame.
+     *
+     * @return true if entry has been seen in minSightings frames, within the window if there is one.
+     */
+    private boolean seenEnough(Entry entry) {
+        final int needed = options.minSightings;
+        if(needed == 1 || options.windowFrames == 0) {
+            return entry.count >= needed;
+        }
+        if(entry.recentFrames == null) {
+            entry.recentFrames = new long[needed];
+        }
+        entry.recentFrames[entry.count % needed] = frame;
+        // the oldest of the last needed sightings, which the next sighting will replace
+        return entry.count >= needed && frame - entry.recentFrames[(entry.count + 1) % needed] < options.windowFrames;
+    }
+
+    /**
+     * @return true if the centre of box has moved from that of reported by more than half the barcode's size.
+     */
+    private static boolean moved(Rect reported, Rect box) {
+        if(reported == null || box == null) {
+            return reported != box;
+        }
+        final int limit = Math.max(1, Math.min(reported.width(), reported.height()) / 2);
+        return Math.abs(box.centerX() - reported.centerX()) > limit
+            || Math.abs(box.centerY() - reported.centerY()) > limit;
+    }
+}
@@ -0,0 +1,167 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Sits between a QrDetector and the callbacks it reports to, and only passes on barcodes whose content matches every
+ * rule of its options, so that barcodes the app has no use for are dropped before they are encoded and sent to Dart.
+ * A barcode without text content (binary data) never matches.
+ */
+class BarcodeFilter implements QrReaderCallbacks {
+    static class Options {
+        /** content must match this as a whole, or null. */
+        final Pattern pattern;
+        final int minLength;
+        /** 0 for no maximum. */
+        final int maxLength;
+        /** content must start with one of these, or null. */
+        final List<String> prefixes;
+        /**
+         * EAN and UPC barcodes (and ITF-14) must have a valid check digit, as must the SSCC, GTIN and GLN of GS1
+         * element strings when those are parsed.
+         */
+        final boolean validateChecksum;
+        /** content must be a well formed GS1 element string. */
+        final boolean gs1;
+        /** application identifiers the GS1 element string must contain, or null. */
+        final List<String> gs1Ais;
+
+        private Options(
+            Pattern pattern, Integer minLength, Integer maxLength, List<String> prefixes, boolean validateChecksum,
+            List<String> gs1Ais, boolean gs1
+        ) {
+            this.pattern = pattern;
+            this.minLength = minLength == null ? 0 : Math.max(0, minLength);
+            this.maxLength = maxLength == null ? 0 : Math.max(0, maxLength);
+            this.prefixes = prefixes == null || prefixes.isEmpty() ? null : prefixes;
+            this.validateChecksum = validateChecksum;
+            this.gs1Ais = gs1Ais == null || gs1Ais.isEmpty() ? null : gs1Ais;
+            this.gs1 = gs1 || this.gs1Ais != null;
+        }
+
+        /**
+         * @return the options, or null if there is nothing to filter on.
+         * @throws IllegalArgumentException if pattern is not a valid regular expression.
+         */
+        static Options create(
+            String pattern, Integer minLength, Integer maxLength, List<String> prefixes, Boolean validateChecksum,
+            Boolean gs1, List<String> gs1Ais
+        ) {
+            final Options options = new Options(
+                pattern == null ? null : Pattern.compile(pattern), minLength, maxLength, prefixes,
+                validateChecksum != null && validateChecksum, gs1Ais, gs1 != null && gs1
+            );
+            if(options.pattern == null && options.minLength == 0 && options.maxLength == 0 && options.prefixes == null
+                && !options.validateChecksum && !options.gs1)
+            {
+                return null;
+            }
+            return options;
+        }
+    }
+
+    private final QrReaderCallbacks downstream;
+    private final Options options;
+
+    BarcodeFilter(QrReaderCallbacks downstream, Options options) {
+        this.downstream = downstream;
+        this.options = options;
+    }
+
+    @Override
+    public void qrRead(Stream<QrBarcode> data) {
+        downstream.qrRead(data.filter(this::matches));
+    }
+
+    boolean matches(QrBarcode barcode) {
+        final String content = barcode.getContent();
+        if(content == null) {
+            return false;
+        }
+        if(content.length() < options.minLength || (options.maxLength > 0 && content.length() > options.maxLength)) {
+            return false;
+        }
+        if(options.prefixes != null && !hasPrefix(content)) {
+            return false;
+        }
+        if(options.validateChecksum && !checksumValid(barcode.getFormatValue(), content)) {
+            return false;
+        }
+        if(options.gs1 && !gs1Valid(content)) {
+            return false;
+        }
+        // the regex is the most expensive rule, so goes last
+        return options.pattern == null || options.pattern.matcher(content).matches();
+    }
+
+    private boolean hasPrefix(String content) {
+        for(String prefix : options.prefixes) {
+            if(content.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean gs1Valid(String content) {
+        final Map<String, String> elements = Gs1ElementString.parse(content);
+        if(elements == null) {
+            return false;
+        }
+        if(options.gs1Ais != null && !elements.keySet().containsAll(options.gs1Ais)) {
+            return false;
+        }
+        return !options.validateChecksum || Gs1ElementString.checkDigitsValid(elements);
+    }
+
+    /**
+     * @return false if the barcode is of a format with a check digit, and content is not of the format's length or its
+     * check digit is wrong.
+     */
+    private static boolean checksumValid(int format, String content) {
+        switch(format) {
+            case Barcode.FORMAT_EAN_13:
+                return content.length() == 13 && Gs1ElementString.mod10Valid(content);
+            case Barcode.FORMAT_EAN_8:
+                return content.length() == 8 && Gs1ElementString.mod10Valid(content);
+            case Barcode.FORMAT_UPC_A:
+                return content.length() == 12 && Gs1ElementString.mod10Valid(content);
+            case Barcode.FORMAT_UPC_E:
+                return content.length() == 8 && Gs1ElementString.isDigits(content, 0, 8)
+                    && Gs1ElementString.mod10Valid(expandUpcE(content));
+            case Barcode.FORMAT_ITF:
+                // the check digit is only mandatory for ITF-14
+                return content.length() != 14 || Gs1ElementString.mod10Valid(content);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @param upcE - 8 digits: number system, 6 digits and check digit.
+     * @return the UPC-A form of upcE, which its check digit is computed over.
+     */
+    private static String expandUpcE(String upcE) {
+        final String prefix = upcE.substring(0, 3);
+        final String d = upcE.substring(1, 7);
+        final char check = upcE.charAt(7);
+        final char last = d.charAt(5);
+        switch(last) {
+            case '0':
+            case '1':
+            case '2':
+                return prefix + last + "0000" + d.substring(2, 5) + check;
+            case '3':
+                return upcE.substring(0, 4) + "00000" + d.substring(3, 5) + check;
+            case '4':
+                return upcE.substring(0, 5) + "00000" + d.charAt(4) + check;
+            default:
+                return upcE.substring(0, 6) + "0000" + last + check;
+        }
+    }
+}
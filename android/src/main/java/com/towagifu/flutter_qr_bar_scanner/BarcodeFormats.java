@@ -9,28 +9,36 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
+/**
+ * Barcode formats, in the same order as the Dart BarcodeFormats enum: results are sent to Dart with the ordinal of
+ * their format.
+ */
 public enum BarcodeFormats {
-    ALL_FORMATS(Barcode.FORMAT_ALL_FORMATS),
-    CODE_128(Barcode.FORMAT_CODE_128),
-    CODE_39(Barcode.FORMAT_CODE_39),
-    CODE_93(Barcode.FORMAT_CODE_93),
-    CODABAR(Barcode.FORMAT_CODABAR),
-    DATA_MATRIX(Barcode.FORMAT_DATA_MATRIX),
-    EAN_13(Barcode.FORMAT_EAN_13),
-    EAN_8(Barcode.FORMAT_EAN_8),
-    ITF(Barcode.FORMAT_ITF),
-    QR_CODE(Barcode.FORMAT_QR_CODE),
-    UPC_A(Barcode.FORMAT_UPC_A),
-    UPC_E(Barcode.FORMAT_UPC_E),
-    PDF417(Barcode.FORMAT_PDF417),
-    AZTEC(Barcode.FORMAT_AZTEC);
-
-    BarcodeFormats(int intValue) {
+    ALL_FORMATS(Barcode.FORMAT_ALL_FORMATS, true),
+    AZTEC(Barcode.FORMAT_AZTEC, true),
+    CODE_128(Barcode.FORMAT_CODE_128, false),
+    CODE_39(Barcode.FORMAT_CODE_39, false),
+    CODE_93(Barcode.FORMAT_CODE_93, false),
+    CODABAR(Barcode.FORMAT_CODABAR, false),
+    DATA_MATRIX(Barcode.FORMAT_DATA_MATRIX, true),
+    EAN_13(Barcode.FORMAT_EAN_13, false),
+    EAN_8(Barcode.FORMAT_EAN_8, false),
+    ITF(Barcode.FORMAT_ITF, false),
+    PDF417(Barcode.FORMAT_PDF417, true),
+    QR_CODE(Barcode.FORMAT_QR_CODE, true),
+    UPC_A(Barcode.FORMAT_UPC_A, false),
+    UPC_E(Barcode.FORMAT_UPC_E, false);
+
+    BarcodeFormats(int intValue, boolean twoDimensional) {
         this.intValue = intValue;
+        this.twoDimensional = twoDimensional;
     }
 
     public final int intValue;
 
+    /** true for 2D (matrix and stacked) formats, which generally need more pixels to decode than 1D formats. */
+    public final boolean twoDimensional;
+
     private static Map<String, Integer> formatsMap;
 
     static {
@@ -97,6 +105,44 @@ public enum BarcodeFormats {
             .setBarcodeFormats(first, rest).build();
     }
 
+    /**
+     * Return whether any of the supplied formats is a 2D format. No formats, or no known formats, is treated as
+     * ALL_FORMATS.
+     *
+     * @param strings - list of strings representing the various formats
+     * @return true if a 2D format may be requested.
+     */
+    static boolean anyTwoDimensional(List<String> strings) {
+        if(strings == null) {
+            return ALL_FORMATS.twoDimensional;
+        }
+        boolean anyKnown = false;
+        for(String string : strings) {
+            try {
+                if(BarcodeFormats.valueOf(string).twoDimensional) {
+                    return true;
+                }
+                anyKnown = true;
+            } catch(IllegalArgumentException e) {
+                // unknown formats are ignored, as in optionsFromStringList
+            }
+        }
+        return !anyKnown;
+    }
+
+    /**
+     * @param value - ML Kit format value.
+     * @return the ordinal of the format with value, or -1 if there is none (e.g. FORMAT_UNKNOWN).
+     */
+    static int ordinalOfValue(final int value) {
+        for(BarcodeFormats bf : BarcodeFormats.values()) {
+            if(bf.intValue == value) {
+                return bf.ordinal();
+            }
+        }
+        return -1;
+    }
+
     public static BarcodeFormats getFromValue(final int value) {
         for(BarcodeFormats bf : BarcodeFormats.values()) {
             if(bf.intValue == value) {
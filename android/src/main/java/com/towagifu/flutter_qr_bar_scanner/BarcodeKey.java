@@ -0,0 +1,47 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Identity of a barcode across frames: its format and raw bytes (or content if there are no raw bytes).
+ */
+final class BarcodeKey {
+    private static final byte[] EMPTY = new byte[0];
+
+    final int format;
+    private final byte[] bytes;
+    private final int hash;
+
+    private BarcodeKey(int format, byte[] bytes) {
+        this.format = format;
+        this.bytes = bytes;
+        this.hash = 31 * format + Arrays.hashCode(bytes);
+    }
+
+    static BarcodeKey of(QrBarcode barcode) {
+        byte[] bytes = barcode.getBytes();
+        if(bytes == null) {
+            String content = barcode.getContent();
+            bytes = content == null ? EMPTY : content.getBytes(StandardCharsets.UTF_8);
+        }
+        return new BarcodeKey(barcode.getFormatValue(), bytes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof BarcodeKey)) {
+            return false;
+        }
+        BarcodeKey other = (BarcodeKey)o;
+        return format == other.format && hash == other.hash && Arrays.equals(bytes, other.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,270 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.graphics.Rect;
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Follows the barcodes in view between detections, which come far less often than preview frames, so that an
+ * overlay can move along with the preview. Sees every detection result on its way down the callbacks, and passes it
+ * on unchanged.
+ * <p>
+ * Each barcode is tracked by {@link BarcodeKey}, with a constant velocity Kalman filter for each of the centre and
+ * size of its bounding box. A detection updates the filters as of the time its frame arrived, and at every update
+ * interval the boxes are predicted for the current time and reported, which makes up for the time detection took as
+ * well as for the frames in between. A barcode is no longer tracked once it has not been detected for a while.
+ */
+class BarcodeTracker implements QrReaderCallbacks {
+    private static final double NANOS_PER_SECOND = 1e9;
+    /** variance of the error of detected positions and sizes, in pixels squared. */
+    private static final double MEASUREMENT_VARIANCE = 16;
+    /** variance of the acceleration of a handheld camera, in (pixels / s^2) squared. */
+    private static final double ACCELERATION_VARIANCE = 3000.0 * 3000.0;
+    /** variance of the velocity of a newly detected barcode, in (pixels / s) squared. */
+    private static final double INITIAL_VELOCITY_VARIANCE = 1000.0 * 1000.0;
+    /** boxes are not extrapolated further than this past their last detection. */
+    private static final long MAX_EXTRAPOLATION_NS = 300_000_000L;
+
+    static class Options {
+        /** a barcode is no longer tracked once it has not been detected for this long. */
+        final long lostAfterMs;
+        /** how often positions are reported. */
+        final long updateIntervalMs;
+
+        private Options(Integer lostAfterMs, Integer updateFps) {
+            this.lostAfterMs = lostAfterMs == null || lostAfterMs <= 0 ? 500 : lostAfterMs;
+            this.updateIntervalMs = 1000 / (updateFps == null || updateFps <= 0 ? 30 : Math.min(updateFps, 120));
+        }
+
+        /**
+         * @return the options, or null if not tracking.
+         */
+        static Options create(Boolean track, Integer lostAfterMs, Integer updateFps) {
+            if(track == null || !track) {
+                return null;
+            }
+            return new Options(lostAfterMs, updateFps);
+        }
+    }
+
+    /**
+     * Where a tracked barcode is predicted to be, as reported.
+     */
+    static class Position {
+        /** identifies the barcode for as long as it is tracked. */
+        final int id;
+        final QrBarcode barcode;
+        /** true in the first report of the barcode. */
+        final boolean isNew;
+        final float left;
+        final float top;
+        final float right;
+        final float bottom;
+
+        Position(int id, QrBarcode barcode, boolean isNew, float left, float top, float right, float bottom) {
+            this.id = id;
+            this.barcode = barcode;
+            this.isNew = isNew;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+    }
+
+    interface Listener {
+        /**
+         * Called on the thread of the handler given to the tracker, at every update interval while barcodes are
+         * tracked, and once more (with an empty list) after the last one is lost.
+         *
+         * @param positions - every barcode tracked.
+         */
+        void onTrack(List<Position> positions);
+    }
+
+    /**
+     * Constant velocity Kalman filter of one coordinate.
+     */
+    private static class Axis {
+        double position;
+        double velocity;
+        /* covariance of position and velocity */
+        double pp;
+        double pv;
+        double vv;
+
+        Axis(double measured) {
+            position = measured;
+            pp = MEASUREMENT_VARIANCE;
+            vv = INITIAL_VELOCITY_VARIANCE;
+        }
+
+        void predict(double dt) {
+            final double dt2 = dt * dt;
+            position += velocity * dt;
+            pp += dt * (2 * pv + dt * vv) + ACCELERATION_VARIANCE * dt2 * dt2 / 4;
+            pv += dt * vv + ACCELERATION_VARIANCE * dt2 * dt / 2;
+            vv += ACCELERATION_VARIANCE * dt2;
+        }
+
+        void update(double measured) {
+            final double s = pp + MEASUREMENT_VARIANCE;
+            final double kp = pp / s, kv = pv / s;
+            final double residual = measured - position;
+            position += kp * residual;
+            velocity += kv * residual;
+            vv -= kv * pv;
+            pv -= kp * pv;
+            pp -= kp * pp;
+        }
+
+        double at(double dt) {
+            return position + velocity * dt;
+        }
+    }
+
+    private static class Track {
+        final int id;
+        QrBarcode barcode;
+        final Axis centreX;
+        final Axis centreY;
+        final Axis width;
+        final Axis height;
+        /** time the frame of the last detection arrived. */
+        long measuredNs;
+        boolean reported;
+
+        Track(int id, QrBarcode barcode, Rect box, long measuredNs) {
+            this.id = id;
+            this.barcode = barcode;
+            this.centreX = new Axis(box.exactCenterX());
+            this.centreY = new Axis(box.exactCenterY());
+            this.width = new Axis(box.width());
+            this.height = new Axis(box.height());
+            this.measuredNs = measuredNs;
+        }
+
+        void update(QrBarcode barcode, Rect box, long frameNs) {
+            this.barcode = barcode;
+            final double dt = Math.max(0, frameNs - measuredNs) / NANOS_PER_SECOND;
+            for(Axis axis : new Axis[] { centreX, centreY, width, height }) {
+                axis.predict(dt);
+            }
+            centreX.update(box.exactCenterX());
+            centreY.update(box.exactCenterY());
+            width.update(box.width());
+            height.update(box.height());
+            measuredNs = frameNs;
+        }
+
+        Position predict(long nowNs) {
+            final double dt = Math.min(Math.max(0, nowNs - measuredNs), MAX_EXTRAPOLATION_NS) / NANOS_PER_SECOND;
+            final double x = centreX.at(dt), y = centreY.at(dt);
+            final double halfWidth = Math.max(0, width.at(dt)) / 2, halfHeight = Math.max(0, height.at(dt)) / 2;
+            final boolean isNew = !reported;
+            reported = true;
+            return new Position(
+                id, barcode, isNew, (float)(x - halfWidth), (float)(y - halfHeight), (float)(x + halfWidth),
+                (float)(y + halfHeight)
+            );
+        }
+    }
+
+    private final QrReaderCallbacks downstream;
+    private final Options options;
+    private final PipelineStats stats;
+    private final Handler handler;
+    private final Listener listener;
+    private final Map<BarcodeKey, Track> tracks = new HashMap<>();
+    private int nextId = 1;
+    /** true while updates are scheduled. */
+    private boolean updating;
+    private boolean stopped;
+
+    private final Runnable update = this::update;
+
+    /**
+     * @param stats   - tells when the frame of the detection being passed down arrived.
+     * @param handler - handler of the thread positions are reported on.
+     */
+    BarcodeTracker(
+        QrReaderCallbacks downstream, Options options, PipelineStats stats, Handler handler, Listener listener
+    ) {
+        this.downstream = downstream;
+        this.options = options;
+        this.stats = stats;
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    @Override
+    public void qrRead(Stream<QrBarcode> data) {
+        final List<QrBarcode> barcodes = data.collect(Collectors.toCollection(ArrayList::new));
+        final long frameNs = stats.completedFrameNs();
+        boolean startUpdates = false;
+        synchronized(this) {
+            for(QrBarcode barcode : barcodes) {
+                final Rect box = barcode.getBoundingBox();
+                if(box == null) {
+                    continue;
+                }
+                final BarcodeKey key = BarcodeKey.of(barcode);
+                final Track track = tracks.get(key);
+                if(track == null) {
+                    tracks.put(key, new Track(nextId++, barcode, box, frameNs));
+                } else {
+                    track.update(barcode, box, frameNs);
+                }
+            }
+            if(!tracks.isEmpty() && !updating && !stopped) {
+                updating = true;
+                startUpdates = true;
+            }
+        }
+        if(startUpdates) {
+            handler.post(update);
+        }
+        downstream.qrRead(barcodes.stream());
+    }
+
+    private void update() {
+        final long now = PipelineStats.now();
+        final List<Position> positions = new ArrayList<>();
+        synchronized(this) {
+            if(stopped) {
+                return;
+            }
+            for(Iterator<Track> it = tracks.values().iterator(); it.hasNext();) {
+                final Track track = it.next();
+                if(now - track.measuredNs > options.lostAfterMs * 1_000_000L) {
+                    it.remove();
+                } else {
+                    positions.add(track.predict(now));
+                }
+            }
+            updating = !tracks.isEmpty();
+        }
+        listener.onTrack(positions);
+        if(!positions.isEmpty()) {
+            handler.postDelayed(update, options.updateIntervalMs);
+        }
+    }
+
+    /**
+     * Stops reporting, forgetting every barcode tracked.
+     */
+    void stop() {
+        synchronized(this) {
+            stopped = true;
+            tracks.clear();
+        }
+        handler.removeCallbacks(update);
+    }
+}
@@ -0,0 +1,171 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.annotation.TargetApi;
+import android.graphics.Rect;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.MeteringRectangle;
+import android.os.Build;
+import android.util.Range;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static android.hardware.camera2.CameraMetadata.CONTROL_AF_MODE_AUTO;
+import static android.hardware.camera2.CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE;
+import static android.hardware.camera2.CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_VIDEO;
+import static android.hardware.camera2.CameraMetadata.CONTROL_AF_MODE_MACRO;
+
+/**
+ * Focus, metering and zoom settings of the repeating request, tuned for reading barcodes. Autofocus and auto
+ * exposure are metered on the scan region (so that the camera focuses on the label rather than the background), the
+ * field of view can be narrowed with digital zoom, and a macro focus mode can be preferred for labels held close.
+ * <p>
+ * Only used from the camera thread.
+ */
+@TargetApi(21)
+@RequiresApi(21)
+class CameraControl {
+    static class Options {
+        /** prefer the macro autofocus mode, when the camera has one. */
+        final boolean macro;
+        /** number of consecutive analysed frames without a barcode after which focus is triggered, or 0. */
+        final int refocusAfterFrames;
+        /** meter autofocus and auto exposure on the scan region. */
+        final boolean meterScanRegion;
+
+        Options(Boolean macro, Integer refocusAfterFrames, Boolean meterScanRegion) {
+            this.macro = macro != null && macro;
+            this.refocusAfterFrames = refocusAfterFrames == null ? 0 : Math.max(0, refocusAfterFrames);
+            this.meterScanRegion = meterScanRegion == null || meterScanRegion;
+        }
+    }
+
+    final Options options;
+    private final CameraCharacteristics characteristics;
+    private final Rect activeArray;
+    private final boolean canMeterAf;
+    private final boolean canMeterAe;
+    /** zoom ratio range on API 30+, or null to zoom through the crop region. */
+    private final Range<Float> zoomRange;
+    private final float maxZoom;
+    private float zoom = 1f;
+
+    CameraControl(Options options, CameraCharacteristics characteristics) {
+        this.options = options;
+        this.characteristics = characteristics;
+        this.activeArray = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        this.canMeterAf = positive(characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AF));
+        this.canMeterAe = positive(characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AE));
+
+        Range<Float> zoomRange = null;
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            zoomRange = characteristics.get(CameraCharacteristics.CONTROL_ZOOM_RATIO_RANGE);
+        }
+        this.zoomRange = zoomRange;
+        if(zoomRange != null) {
+            maxZoom = zoomRange.getUpper();
+        } else {
+            Float maxDigitalZoom = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+            maxZoom = maxDigitalZoom == null || activeArray == null ? 1f : maxDigitalZoom;
+        }
+    }
+
+    private static boolean positive(Integer value) {
+        return value != null && value > 0;
+    }
+
+    float getMaxZoom() {
+        return maxZoom;
+    }
+
+    /**
+     * @return the zoom ratio that will be used, clamped to what the camera supports.
+     */
+    float setZoom(float zoom) {
+        final float min = zoomRange == null ? 1f : Math.min(1f, zoomRange.getLower());
+        this.zoom = Math.max(min, Math.min(maxZoom, zoom));
+        return this.zoom;
+    }
+
+    /**
+     * @return the autofocus mode to use, or null if the camera has none: macro if preferred and available, else the
+     * first available of continuous video, continuous picture and auto.
+     */
+    Integer afMode() {
+        int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+
+        if(afModes == null) {
+            return null;
+        }
+
+        Set<Integer> modes = new HashSet<>(afModes.length * 2);
+        for(int afMode : afModes) {
+            modes.add(afMode);
+        }
+
+        if(options.macro && modes.contains(CONTROL_AF_MODE_MACRO)) {
+            return CONTROL_AF_MODE_MACRO;
+        } else if(modes.contains(CONTROL_AF_MODE_CONTINUOUS_VIDEO)) {
+            return CONTROL_AF_MODE_CONTINUOUS_VIDEO;
+        } else if(modes.contains(CONTROL_AF_MODE_CONTINUOUS_PICTURE)) {
+            return CONTROL_AF_MODE_CONTINUOUS_PICTURE;
+        } else if(modes.contains(CONTROL_AF_MODE_AUTO)) {
+            return CONTROL_AF_MODE_AUTO;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Sets zoom and metering regions on builder.
+     *
+     * @param region   - scan region, or null for the whole frame (in which case the camera meters as it likes).
+     * @param rotation - clockwise rotation (0, 90, 180 or 270) that makes frames upright.
+     */
+    void apply(CaptureRequest.Builder builder, ScanRegion region, int rotation) {
+        if(activeArray == null) {
+            return;
+        }
+
+        // with a zoom ratio, regions are relative to the zoomed field of view scaled to the active array size;
+        // with a crop region, they are in active array pixels and should lie within the crop.
+        final Rect base;
+        if(zoomRange != null) {
+            builder.set(CaptureRequest.CONTROL_ZOOM_RATIO, zoom);
+            base = new Rect(0, 0, activeArray.width(), activeArray.height());
+        } else {
+            base = cropRegion();
+            builder.set(CaptureRequest.SCALER_CROP_REGION, zoom > 1f ? base : null);
+        }
+
+        MeteringRectangle[] regions = null;
+        if(options.meterScanRegion && region != null) {
+            Rect crop = region.cropFor(base.width(), base.height(), rotation);
+            if(crop != null) {
+                crop.offset(base.left, base.top);
+                regions = new MeteringRectangle[] {
+                    new MeteringRectangle(crop, MeteringRectangle.METERING_WEIGHT_MAX)
+                };
+            }
+        }
+        if(canMeterAf) {
+            builder.set(CaptureRequest.CONTROL_AF_REGIONS, regions);
+        }
+        if(canMeterAe) {
+            builder.set(CaptureRequest.CONTROL_AE_REGIONS, regions);
+        }
+    }
+
+    /**
+     * @return the centered part of the active array (in active array coordinates) that the zoom ratio shows.
+     */
+    private Rect cropRegion() {
+        final int width = activeArray.width(), height = activeArray.height();
+        final int cropWidth = Math.round(width / zoom), cropHeight = Math.round(height / zoom);
+        final int left = (width - cropWidth) / 2, top = (height - cropHeight) / 2;
+        return new Rect(left, top, left + cropWidth, top + cropHeight);
+    }
+}
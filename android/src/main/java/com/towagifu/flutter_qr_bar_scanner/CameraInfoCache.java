@@ -0,0 +1,95 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.annotation.TargetApi;
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.util.Size;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static android.hardware.camera2.CameraMetadata.LENS_FACING_BACK;
+import static android.hardware.camera2.CameraMetadata.LENS_FACING_FRONT;
+
+/**
+ * Process-wide cache of the camera chosen for each orientation, its characteristics, and the sizes selected for it,
+ * so that starting a reader does not have to query the camera service again.
+ */
+@TargetApi(21)
+@RequiresApi(21)
+class CameraInfoCache {
+    private static final Map<CameraOrientation, CameraInfo> cameras = new ConcurrentHashMap<>();
+
+    static class CameraInfo {
+        final String cameraId;
+        final CameraCharacteristics characteristics;
+        final int sensorOrientation;
+        final boolean hasFlash;
+        final Size[] previewSizes;
+        final Size[] analysisSizes;
+        /** sizes already selected for this camera, by a key describing the selection. */
+        private final Map<String, Size> selectedSizes = new ConcurrentHashMap<>();
+
+        private CameraInfo(String cameraId, CameraCharacteristics characteristics) {
+            this.cameraId = cameraId;
+            this.characteristics = characteristics;
+
+            Integer sensorOrientationInteger = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+            this.sensorOrientation = sensorOrientationInteger == null ? 0 : sensorOrientationInteger;
+            Boolean flashAvailable = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+            this.hasFlash = flashAvailable != null && flashAvailable;
+
+            StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            this.previewSizes = map.getOutputSizes(SurfaceTexture.class);
+            this.analysisSizes = map.getOutputSizes(ImageFormat.YUV_420_888);
+        }
+
+        /**
+         * @return the size previously selected for key, or the result of select (which is then remembered).
+         */
+        Size selectSize(String key, Function<String, Size> select) {
+            return selectedSizes.computeIfAbsent(key, select);
+        }
+    }
+
+    /**
+     * @return the first camera facing the requested way, or null if there is none.
+     */
+    static CameraInfo get(CameraManager manager, CameraOrientation orientation) throws CameraAccessException {
+        CameraInfo info = cameras.get(orientation);
+        if(info != null) {
+            return info;
+        }
+
+        final int requestedFacing = getLensFacing(orientation);
+        for(String id : manager.getCameraIdList()) {
+            CameraCharacteristics characteristics = manager.getCameraCharacteristics(id);
+            Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
+            if(lensFacing != null && lensFacing == requestedFacing) {
+                info = new CameraInfo(id, characteristics);
+                cameras.put(orientation, info);
+                return info;
+            }
+        }
+        return null;
+    }
+
+    private static int getLensFacing(CameraOrientation orientation) {
+        switch(orientation) {
+            case AWAY_FROM_USER:
+                return LENS_FACING_BACK;
+            case TOWARDS_USER:
+                return LENS_FACING_FRONT;
+            default:
+                throw new NoSuchElementException(orientation.name());
+        }
+    }
+}
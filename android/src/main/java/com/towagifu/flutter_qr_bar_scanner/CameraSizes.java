@@ -0,0 +1,129 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.util.Log;
+
+/**
+ * Picks the sizes a camera streams at from the sizes it supports. Sizes are given as {width, height} pairs in sensor
+ * orientation, and requested sizes in display orientation, so these are swapped for sensors mounted sideways.
+ * <p>
+ * Sizes are plain ints rather than Sizes so that the choice can be tested and benchmarked on the JVM, where
+ * android.jar only has stubs.
+ */
+class CameraSizes {
+    private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX + CameraSizes.class.getSimpleName();
+    private static final float ASPECT_RATIO_TOLERANCE = 0.05f;
+
+    private CameraSizes() {
+    }
+
+    /**
+     * Picks the preview size: the smallest size that covers the target size, or the first size if none does.
+     *
+     * @param sizes - sizes supported for the preview, never empty.
+     * @return the index of the size picked.
+     */
+    static int preview(int[][] sizes, int sensorOrientation, int targetWidth, int targetHeight) {
+        if(sizes.length == 1) {
+            Log.d(TAG, "selected camera size: " + toString(sizes[0]));
+            return 0;
+        }
+
+        final int idealWidth = (sensorOrientation % 180 == 0) ? targetWidth : targetHeight;
+        final int idealHeight = (sensorOrientation % 180 == 0) ? targetHeight : targetWidth;
+        Log.d(TAG, "ideal camera size: " + idealWidth + " x " + idealHeight);
+
+        int ret = -1;
+        for(int i = 0; i < sizes.length; ++i) {
+            if(covers(sizes[i], idealWidth, idealHeight) && (ret < 0 || area(sizes[i]) < area(sizes[ret]))) {
+                ret = i;
+            }
+        }
+        if(ret < 0) {
+            ret = 0;
+        }
+        Log.d(TAG, "selected camera size: " + toString(sizes[ret]));
+        return ret;
+    }
+
+    /**
+     * Picks the size of frames sent for detection from the sizes supported for YUV_420_888 output. Sizes over the
+     * pixel limit are skipped (unless all are), and sizes with the same aspect ratio as the preview are preferred so
+     * that bounding boxes map onto the preview without distortion. Of those, the smallest size that covers the
+     * requested resolution is used, or the largest one if none does.
+     *
+     * @param sizes - sizes supported for analysis, never empty.
+     * @return the index of the size picked.
+     */
+    static int analysis(
+        int[][] sizes, int sensorOrientation, AnalysisResolution resolution, int previewWidth, int previewHeight
+    ) {
+        if(sizes.length == 1) {
+            Log.d(TAG, "selected analysis size: " + toString(sizes[0]));
+            return 0;
+        }
+
+        final int idealWidth = (sensorOrientation % 180 == 0) ? resolution.width : resolution.height;
+        final int idealHeight = (sensorOrientation % 180 == 0) ? resolution.height : resolution.width;
+        final int maxPixels = resolution.maxPixels;
+        Log.d(TAG, "ideal analysis size: " + idealWidth + " x " + idealHeight + " (max pixels: " + maxPixels + ")");
+
+        final boolean[] candidate = new boolean[sizes.length];
+        boolean anyCandidate = false;
+        for(int i = 0; i < sizes.length; ++i) {
+            candidate[i] = maxPixels <= 0 || area(sizes[i]) <= maxPixels;
+            anyCandidate |= candidate[i];
+        }
+        if(!anyCandidate) {
+            int ret = 0;
+            for(int i = 1; i < sizes.length; ++i) {
+                if(area(sizes[i]) < area(sizes[ret])) {
+                    ret = i;
+                }
+            }
+            Log.d(TAG, "selected analysis size (none within max pixels): " + toString(sizes[ret]));
+            return ret;
+        }
+
+        final float previewRatio = (float)previewWidth / previewHeight;
+        final boolean[] preferred = new boolean[sizes.length];
+        boolean anySameRatio = false;
+        for(int i = 0; i < sizes.length; ++i) {
+            preferred[i] = candidate[i]
+                && Math.abs((float)sizes[i][0] / sizes[i][1] - previewRatio) < ASPECT_RATIO_TOLERANCE;
+            anySameRatio |= preferred[i];
+        }
+        if(!anySameRatio) {
+            System.arraycopy(candidate, 0, preferred, 0, candidate.length);
+        }
+
+        int smallestCovering = -1, largest = -1;
+        for(int i = 0; i < sizes.length; ++i) {
+            if(!preferred[i]) {
+                continue;
+            }
+            if(covers(sizes[i], idealWidth, idealHeight)
+                && (smallestCovering < 0 || area(sizes[i]) < area(sizes[smallestCovering])))
+            {
+                smallestCovering = i;
+            }
+            if(largest < 0 || area(sizes[i]) > area(sizes[largest])) {
+                largest = i;
+            }
+        }
+        final int ret = smallestCovering >= 0 ? smallestCovering : largest;
+        Log.d(TAG, "selected analysis size: " + toString(sizes[ret]));
+        return ret;
+    }
+
+    private static boolean covers(int[] size, int width, int height) {
+        return size[0] >= width && size[1] >= height;
+    }
+
+    private static int area(int[] size) {
+        return size[0] * size[1];
+    }
+
+    private static String toString(int[] size) {
+        return size[0] + "x" + size[1];
+    }
+}
@@ -0,0 +1,83 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+
+/**
+ * Finds barcodes in frames for a QrDetector. The detector sends at most one frame at a time, and closes the frame
+ * once the engine has called back.
+ */
+interface DetectionEngine {
+    enum Kind {
+        /** ML Kit barcode scanning. */
+        ML_KIT,
+        /** ZXing, on the luma plane. */
+        ZXING,
+        /** ZXing if it handles all of the requested formats well, otherwise ML Kit. */
+        AUTO;
+
+        static Kind parse(String value) throws NoSuchElementException {
+            if(value == null) {
+                return ML_KIT;
+            }
+            switch(value) {
+                case "mlKit":
+                    return ML_KIT;
+                case "zxing":
+                    return ZXING;
+                case "auto":
+                    return AUTO;
+                default:
+                    throw new NoSuchElementException(value);
+            }
+        }
+    }
+
+    interface Callback {
+        /**
+         * @param barcodes - barcodes found, with bounding boxes in full (upright) frame coordinates.
+         */
+        void onDetected(List<QrBarcode> barcodes);
+
+        void onFailed(Exception e);
+    }
+
+    /**
+     * Starts detecting barcodes in frame. Exactly one of the callback's methods is called, on executor, unless this
+     * throws.
+     *
+     * @throws IllegalStateException if the frame or engine has been closed.
+     */
+    void detect(QrDetector.Frame frame, Executor executor, Callback callback);
+
+    /**
+     * Releases the engine. Detection already started still calls back.
+     */
+    void close();
+
+    /**
+     * Releases an engine that stopped calling back, without reusing anything it holds.
+     */
+    default void discard() {
+        close();
+    }
+
+    /**
+     * @param formats - barcode formats to detect.
+     */
+    static DetectionEngine create(Kind kind, List<String> formats) {
+        switch(kind) {
+            case ZXING:
+                return new ZxingEngine(formats);
+            case AUTO:
+                if(ZxingEngine.preferredFor(formats)) {
+                    return new ZxingEngine(formats);
+                }
+                // fall through
+            case ML_KIT:
+            default:
+                return new MlKitEngine(formats);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.util.Log;
+
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.BarcodeScanning;
+import com.google.mlkit.vision.common.InputImage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pool of idle ML Kit barcode scanner clients, keyed by the requested formats. Clients are created ahead of time by
+ * prewarm, or handed back by readers when they stop, so that the next reader for the same formats does not create
+ * (and load the model for) a new one.
+ * <p>
+ * A client from prewarm has already run one detection, so the model is loaded by the time the reader sends it the
+ * first camera frame. Each idle client is handed to at most one reader at a time, and at most one is kept per key.
+ */
+class DetectorClients {
+    private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX
+        + DetectorClients.class.getSimpleName();
+    private static final int WARM_UP_SIZE = 64;
+
+    private static final Map<Integer, BarcodeScanner> idle = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a client for formats (unless one is already waiting) and runs a detection on a blank image with it.
+     */
+    static void warm(List<String> formats) {
+        final int key = BarcodeFormats.intFromStringList(formats);
+        if(idle.containsKey(key)) {
+            return;
+        }
+        BarcodeScanner client = BarcodeScanning.getClient(BarcodeFormats.optionsFromStringList(formats));
+        if(idle.putIfAbsent(key, client) != null) {
+            client.close();
+            return;
+        }
+        client.process(InputImage.fromByteArray(
+            new byte[WARM_UP_SIZE * WARM_UP_SIZE * 3 / 2], WARM_UP_SIZE, WARM_UP_SIZE, 0,
+            InputImage.IMAGE_FORMAT_NV21
+        )).addOnFailureListener(e -> Log.w(TAG, "Warm up detection failed.", e));
+    }
+
+    /**
+     * @return the idle client for formats, or a new one if there is none. The caller must close it or give it back.
+     */
+    static BarcodeScanner take(List<String> formats) {
+        BarcodeScanner client = idle.remove(BarcodeFormats.intFromStringList(formats));
+        return client != null ? client : BarcodeScanning.getClient(BarcodeFormats.optionsFromStringList(formats));
+    }
+
+    /**
+     * Returns a client taken for formats to the pool, or closes it if there already is an idle one.
+     */
+    static void give(List<String> formats, BarcodeScanner client) {
+        if(idle.putIfAbsent(BarcodeFormats.intFromStringList(formats), client) != null) {
+            client.close();
+        }
+    }
+
+    /**
+     * Closes all idle clients.
+     */
+    static void clear() {
+        for(Integer key : idle.keySet()) {
+            BarcodeScanner client = idle.remove(key);
+            if(client != null) {
+                client.close();
+            }
+        }
+    }
+}
@@ -2,25 +2,36 @@ package com.towagifu.flutter_qr_bar_scanner;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.Context;
 import android.content.pm.PackageManager;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraManager;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
 
-import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
-
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryCodec;
 import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
@@ -31,23 +42,58 @@ import io.flutter.view.TextureRegistry;
 
 /**
  * FlutterQrBarScannerPlugin
+ * <p>
+ * Each start creates a session, identified by the id returned from start, which every other method takes. Only one
+ * session uses the camera at a time: starting or resuming a session releases the camera of the others. A running
+ * session displaced that way waits for the camera, and resumes when the session that displaced it stops or is paused
+ * with yieldCamera (which is what happens when the scanner screen on top of it is popped), which closes its camera.
  */
 public class FlutterQrBarScannerPlugin
-    implements MethodCallHandler, QrReaderCallbacks, QrReader.QRReaderStartedCallback,
-    PluginRegistry.RequestPermissionsResultListener, FlutterPlugin, ActivityAware
+    implements MethodCallHandler, PluginRegistry.RequestPermissionsResultListener, FlutterPlugin, ActivityAware
 {
     public static final String LOG_TAG_PREFIX = "ctg.fqbrs.";
 
     private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX
         + FlutterQrBarScannerPlugin.class.getSimpleName();
     private static final int REQUEST_PERMISSION = 1;
+    /** how long a prewarmed camera is kept open waiting for start to be called. */
+    private static final long PREWARM_TIMEOUT_MS = 10000;
+    /** how long a paused reader is kept before it is stopped, unless pause says otherwise. */
+    private static final int DEFAULT_PAUSE_TIMEOUT_MS = 30000;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final QrResultEncoder resultEncoder = new QrResultEncoder();
     private MethodChannel channel;
+    private BasicMessageChannel<ByteBuffer> resultsChannel;
+    private BasicMessageChannel<ByteBuffer> tracksChannel;
     private Activity activity;
     private TextureRegistry textures;
-    private Integer lastHeartbeatTimeout;
-    private boolean waitingForPermissionResult;
     private boolean permissionDenied;
-    private ReadingInstance readingInstance;
+    /** session whose start is waiting for the camera permission request, if any. */
+    private Session permissionSession;
+    /** sessions by id, in the order they were started. */
+    private final Map<Integer, Session> sessions = new LinkedHashMap<>();
+    private int nextSessionId = 1;
+    private Executor detectionExecutor;
+    /** image batches being decoded, by the batch id chosen by Dart. */
+    private final Map<Integer, StaticImageDecoder> batches = new HashMap<>();
+    private PrewarmedCamera prewarmedCamera;
+    private final Runnable prewarmTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Log.i(TAG, "Prewarmed camera was not used, closing it.");
+            releasePrewarmedCamera();
+        }
+    };
+
+    /**
+     * Sets the executor that barcode detection results are handled on. Applies to readers started after this call.
+     * By default results are handled on a dedicated analysis thread owned by each reader.
+     *
+     * @param executor - executor to use, or null to restore the default.
+     */
+    public void setDetectionExecutor(@Nullable Executor executor) {
+        detectionExecutor = executor;
+    }
 
     @Override
     public void onAttachedToEngine(@NonNull FlutterPluginBinding binding) {
@@ -56,14 +102,32 @@ public class FlutterQrBarScannerPlugin
         textures = binding.getTextureRegistry();
         channel = new MethodChannel(binding.getBinaryMessenger(), "com.towagifu/flutter_qr_bar_scanner");
         channel.setMethodCallHandler(this);
+        resultsChannel = new BasicMessageChannel<>(
+            binding.getBinaryMessenger(), "com.towagifu/flutter_qr_bar_scanner/results", BinaryCodec.INSTANCE_DIRECT
+        );
+        tracksChannel = new BasicMessageChannel<>(
+            binding.getBinaryMessenger(), "com.towagifu/flutter_qr_bar_scanner/tracks", BinaryCodec.INSTANCE_DIRECT
+        );
     }
 
     @Override
     public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
         if(channel != null) {
             channel.setMethodCallHandler(null);
+            for(Session session : new ArrayList<>(sessions.values())) {
+                stopSession(session);
+            }
+            for(StaticImageDecoder decoder : batches.values()) {
+                decoder.cancel();
+            }
+            batches.clear();
+            releasePrewarmedCamera();
+            DetectorClients.clear();
+            ImageReaders.clear();
             textures = null;
             channel = null;
+            resultsChannel = null;
+            tracksChannel = null;
         }
     }
 
@@ -97,32 +161,183 @@ public class FlutterQrBarScannerPlugin
     @Override
     public boolean onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
         if(requestCode == REQUEST_PERMISSION) {
-            waitingForPermissionResult = false;
+            Session session = permissionSession;
+            permissionSession = null;
             if(grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
                 Log.i(TAG, "Permissions request granted.");
-                stopReader();
             } else {
                 Log.i(TAG, "Permissions request denied.");
                 permissionDenied = true;
-                startingFailed(new QrReader.Exception(QrReader.Exception.Reason.noPermissions));
-                stopReader();
+                if(session != null) {
+                    session.startingFailed(new QrReader.Exception(QrReader.Exception.Reason.noPermissions));
+                }
+            }
+            if(session != null) {
+                stopSession(session);
             }
             return true;
         }
         return false;
     }
 
-    private void stopReader() {
-        if(readingInstance != null) {
-            if(readingInstance.reader != null) {
-                readingInstance.reader.stop();
+    /**
+     * @return the session named by the sessionId argument, or null if there is none.
+     */
+    private Session session(MethodCall methodCall) {
+        Integer id = methodCall.argument("sessionId");
+        return id == null ? null : sessions.get(id);
+    }
+
+    private void stopSession(Session session) {
+        sessions.remove(session.id);
+        mainHandler.removeCallbacks(session.statsReporter);
+        mainHandler.removeCallbacks(session.pauseTimeout);
+        if(session.reader != null) {
+            session.reader.stop();
+        }
+        session.textureEntry.release();
+        wakeSuspended(session);
+    }
+
+    /**
+     * Stops producing frames, keeping the session (and, unless it yields it, the camera).
+     *
+     * @param yieldCamera - true if the session is leaving the screen: the camera is closed, so that a session it
+     *                    displaced (or another app) can have it, and opened again on resume.
+     */
+    private void pauseSession(Session session, int idleTimeoutMs, boolean yieldCamera) {
+        if(session.startedResponse == null || (session.suspendedBy != null && !yieldCamera)) {
+            // not started yet, or already waiting for the camera
+            return;
+        }
+        if(!session.paused) {
+            mainHandler.removeCallbacks(session.statsReporter);
+            session.reader.pause();
+            session.paused = true;
+        }
+        if(yieldCamera && !session.cameraReleased) {
+            session.reader.releaseCamera();
+            session.cameraReleased = true;
+        }
+        session.suspendedBy = null;
+        mainHandler.removeCallbacks(session.pauseTimeout);
+        if(idleTimeoutMs > 0) {
+            mainHandler.postDelayed(session.pauseTimeout, idleTimeoutMs);
+        }
+        if(yieldCamera) {
+            wakeSuspended(session);
+        }
+    }
+
+    private void resumeSession(Session session) {
+        mainHandler.removeCallbacks(session.pauseTimeout);
+        session.suspendedBy = null;
+        suspendOthers(session);
+        session.paused = false;
+        session.cameraReleased = false;
+        session.reader.resume();
+        session.scheduleStats();
+    }
+
+    /**
+     * Releases the camera of every session but active. Sessions that were running wait for active to stop or yield
+     * the camera, rather than timing out.
+     */
+    private void suspendOthers(Session active) {
+        for(Session other : sessions.values()) {
+            if(other == active || !other.holdsCamera()) {
+                continue;
+            }
+            mainHandler.removeCallbacks(other.statsReporter);
+            other.reader.releaseCamera();
+            other.cameraReleased = true;
+            if(!other.paused) {
+                other.paused = true;
+                other.suspendedBy = active.id;
+            }
+        }
+    }
+
+    /**
+     * Resumes the sessions that session displaced.
+     */
+    private void wakeSuspended(Session session) {
+        for(Session other : new ArrayList<>(sessions.values())) {
+            if(other.suspendedBy != null && other.suspendedBy == session.id) {
+                resumeSession(other);
             }
-            if(readingInstance.textureEntry != null) {
-                readingInstance.textureEntry.release();
+        }
+    }
+
+    /**
+     * Opens the camera facing orientation ahead of start, if camera permission has already been granted (prewarm
+     * never asks for it).
+     *
+     * @return true if the camera is being opened.
+     */
+    private boolean prewarmCamera(CameraOrientation orientation) {
+        for(Session session : sessions.values()) {
+            if(session.holdsCamera()) {
+                return false;
+            }
+        }
+        if(prewarmedCamera != null) {
+            if(prewarmedCamera.orientation == orientation) {
+                return true;
+            }
+            releasePrewarmedCamera();
+        }
+        if(activity.checkCallingOrSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            return false;
+        }
+
+        CameraManager manager = (CameraManager)activity.getSystemService(Context.CAMERA_SERVICE);
+        try {
+            CameraInfoCache.CameraInfo camera = manager == null ? null : CameraInfoCache.get(manager, orientation);
+            if(camera == null) {
+                return false;
             }
+            prewarmedCamera = PrewarmedCamera.open(manager, camera.cameraId, orientation);
+        } catch(CameraAccessException | RuntimeException e) {
+            Log.w(TAG, "Error prewarming camera.", e);
+            return false;
         }
-        readingInstance = null;
-        lastHeartbeatTimeout = null;
+        mainHandler.postDelayed(prewarmTimeout, PREWARM_TIMEOUT_MS);
+        return true;
+    }
+
+    /**
+     * @return the prewarmed camera if it faces orientation, or null (releasing any prewarmed camera).
+     */
+    private PrewarmedCamera takePrewarmedCamera(CameraOrientation orientation) {
+        mainHandler.removeCallbacks(prewarmTimeout);
+        PrewarmedCamera camera = prewarmedCamera;
+        prewarmedCamera = null;
+        if(camera != null && camera.orientation != orientation) {
+            camera.release();
+            return null;
+        }
+        return camera;
+    }
+
+    private void releasePrewarmedCamera() {
+        mainHandler.removeCallbacks(prewarmTimeout);
+        if(prewarmedCamera != null) {
+            prewarmedCamera.release();
+            prewarmedCamera = null;
+        }
+    }
+
+    /**
+     * @return a paused session (that is not waiting for the camera) started with arguments, or null.
+     */
+    private Session findReusableSession(Object arguments) {
+        for(Session session : sessions.values()) {
+            if(session.paused && session.suspendedBy == null && session.startArguments.equals(arguments)) {
+                return session;
+            }
+        }
+        return null;
     }
 
     @Override
@@ -142,76 +357,331 @@ public class FlutterQrBarScannerPlugin
                 if(permissionDenied) {
                     permissionDenied = false;
                     result.error("QRREADER_ERROR", "noPermission", null);
-                } else if(readingInstance != null) {
-                    result.error("ALREADY_RUNNING", "Start cannot be called when already running", "");
-                } else {
-                    lastHeartbeatTimeout = methodCall.argument("heartbeatTimeout");
-                    Integer targetWidth = methodCall.argument("targetWidth");
-                    Integer targetHeight = methodCall.argument("targetHeight");
-                    List<String> formatStrings = methodCall.argument("formats");
-                    CameraOrientation orientation = CameraOrientation.parse(methodCall.argument("orientation"));
-
-                    if(targetWidth == null || targetHeight == null) {
-                        result.error(
-                            "INVALID_ARGUMENT", "Missing a required argument",
-                            "Expecting targetWidth, targetHeight, and optionally heartbeatTimeout"
-                        );
-                        break;
-                    }
+                    break;
+                }
+                Session reusable = findReusableSession(methodCall.arguments);
+                if(reusable != null) {
+                    // started again the same way while paused (e.g. the scanner was rebuilt): reuse the session
+                    resumeSession(reusable);
+                    result.success(reusable.startedResponse);
+                    break;
+                }
 
-                    BarcodeScannerOptions options = BarcodeFormats.optionsFromStringList(formatStrings);
+                Integer targetWidth = methodCall.argument("targetWidth");
+                Integer targetHeight = methodCall.argument("targetHeight");
+                List<String> formatStrings = methodCall.argument("formats");
+                CameraOrientation orientation = CameraOrientation.parse(methodCall.argument("orientation"));
+                AnalysisResolution.Mode analysisMode = AnalysisResolution.Mode.parse(
+                    methodCall.argument("analysisMode")
+                );
+                DetectionEngine.Kind engine = DetectionEngine.Kind.parse(methodCall.argument("engine"));
+
+                if(targetWidth == null || targetHeight == null) {
+                    result.error(
+                        "INVALID_ARGUMENT", "Missing a required argument",
+                        "Expecting targetWidth and targetHeight"
+                    );
+                    break;
+                }
 
-                    TextureRegistry.SurfaceTextureEntry textureEntry = textures.createSurfaceTexture();
-                    QrReader reader = new QrReader(
-                        targetWidth, targetHeight, activity, options,
-                        this, this, textureEntry.surfaceTexture()
+                AnalysisResolution analysisResolution = AnalysisResolution.resolve(
+                    analysisMode, methodCall.argument("analysisWidth"), methodCall.argument("analysisHeight"),
+                    methodCall.argument("analysisMaxPixels"), targetWidth, targetHeight, formatStrings
+                );
+                QrReaderConfig config = new QrReaderConfig(targetWidth, targetHeight, analysisResolution)
+                    .formats(formatStrings)
+                    .engine(engine)
+                    .tiling(TiledEngine.Options.create(
+                        methodCall.argument("tiled"), methodCall.argument("tileSize"),
+                        methodCall.argument("tileParallelism")
+                    ))
+                    .stabilization(new ResultStabilizer.Options(
+                        methodCall.argument("confirmFrames"), methodCall.argument("reportOnceUntilGoneMs"),
+                        methodCall.argument("reportOnChangeOnly"), methodCall.argument("dedupCacheSize"),
+                        methodCall.argument("dedupCacheTtlMs")
+                    ))
+                    .frameRate(new FrameRateGovernor.Options(
+                        methodCall.argument("targetFps"), methodCall.argument("idleFps"),
+                        methodCall.argument("idleAfterMs"), methodCall.argument("cameraFps")
+                    ))
+                    .frameGate(FrameQualityGate.Options.create(
+                        methodCall.argument("frameGate"), methodCall.argument("frameGateMinSharpness"),
+                        methodCall.argument("frameGateSharpnessRatio"), methodCall.argument("frameGateMaxMotion"),
+                        methodCall.argument("frameGateMaxSkipMs")
+                    ))
+                    .buffers(new FrameBufferPool.Options(
+                        methodCall.argument("frameBufferMode"), methodCall.argument("frameBufferCount")
+                    ))
+                    .control(new CameraControl.Options(
+                        methodCall.argument("macroFocus"), methodCall.argument("refocusAfterFrames"),
+                        methodCall.argument("meterScanRegion")
+                    ))
+                    .autoTorch(new AutoTorch.Options(
+                        methodCall.argument("autoTorch"), methodCall.argument("autoTorchDarkLevel"),
+                        methodCall.argument("autoTorchHoldMs")
+                    ))
+                    .aggregation(BarcodeAggregator.Options.create(
+                        methodCall.argument("aggregate"), methodCall.argument("aggregateWindowFrames"),
+                        methodCall.argument("aggregateMinSightings"),
+                        methodCall.argument("aggregateCompleteAfterCodes"),
+                        methodCall.argument("aggregateCompleteAfterMs")
+                    ))
+                    .tracking(BarcodeTracker.Options.create(
+                        methodCall.argument("track"), methodCall.argument("trackLostAfterMs"),
+                        methodCall.argument("trackUpdateFps")
+                    ))
+                    .watchdog(new Watchdog.Options(
+                        methodCall.argument("cameraStallTimeoutMs"), methodCall.argument("detectionTimeoutMs"),
+                        methodCall.argument("heartbeatTimeout")
+                    ))
+                    .replay(ReplayCamera.Options.create(
+                        methodCall.argument("replayDirectory"), methodCall.argument("replaySpeed"),
+                        methodCall.argument("replayLoop")
+                    ))
+                    .recording(FrameRecorder.Options.create(
+                        methodCall.argument("recordDirectory"), methodCall.argument("recordMaxFrames")
+                    ));
+                try {
+                    config.filter(BarcodeFilter.Options.create(
+                        methodCall.argument("filterPattern"), methodCall.argument("filterMinLength"),
+                        methodCall.argument("filterMaxLength"), methodCall.argument("filterPrefixes"),
+                        methodCall.argument("filterValidateChecksum"), methodCall.argument("filterGs1"),
+                        methodCall.argument("filterGs1Ais")
+                    ));
+                } catch(IllegalArgumentException e) {
+                    result.error("INVALID_ARGUMENT", "Invalid filter pattern", e.getMessage());
+                    break;
+                }
+                Integer statsInterval = methodCall.argument("statsIntervalMs");
+
+                Session session = new Session(
+                    nextSessionId++, textures.createSurfaceTexture(), result, methodCall.arguments,
+                    statsInterval == null ? 0 : statsInterval
+                );
+                suspendOthers(session);
+                sessions.put(session.id, session);
+                session.reader = new QrReader(
+                    config, session, activity, session.textureEntry.surfaceTexture(), detectionExecutor,
+                    takePrewarmedCamera(orientation)
+                );
+                try {
+                    session.reader.start(orientation);
+                } catch(IOException e) {
+                    e.printStackTrace();
+                    result.error(
+                        "IOException", "Error starting camera because of IOException: " + e.getLocalizedMessage(),
+                        null
                     );
+                    stopSession(session);
+                } catch(QrReader.Exception e) {
+                    e.printStackTrace();
+                    result.error(e.reason().name(), "Error starting camera for reason: " + e.reason().name(), null);
+                    stopSession(session);
+                } catch(NoPermissionException e) {
+                    permissionSession = session;
+                    ActivityCompat.requestPermissions(
+                        activity,
+                        new String[] {
+                            Manifest.permission.CAMERA
+                        },
+                        REQUEST_PERMISSION
+                    );
+                }
+                break;
+            }
+            case "prewarm": {
+                List<String> formatStrings = methodCall.argument("formats");
+                CameraOrientation orientation = CameraOrientation.parse(methodCall.argument("orientation"));
+                DetectorClients.warm(formatStrings);
+                result.success(prewarmCamera(orientation));
+                break;
+            }
+            case "decodeImage": {
+                String path = methodCall.argument("path");
+                byte[] bytes = methodCall.argument("bytes");
+                if(path == null && bytes == null) {
+                    result.error("INVALID_ARGUMENT", "Missing a required argument", "Expecting path or bytes");
+                    break;
+                }
+                StaticImageDecoder decoder;
+                try {
+                    decoder = newDecoder(methodCall, 1);
+                } catch(IllegalArgumentException e) {
+                    result.error("INVALID_ARGUMENT", "Invalid filter pattern", e.getMessage());
+                    break;
+                }
+                decoder.decode(
+                    Collections.singletonList(StaticImageDecoder.Source.fromChannelArg(path != null ? path : bytes)),
+                    new StaticImageDecoder.Listener() {
+                        @Override
+                        public void onDecoded(int index, List<QrBarcode> barcodes) {
+                            result.success(resultEncoder.encodeToBytes(0, barcodes));
+                        }
+
+                        @Override
+                        public void onFailed(int index, String error) {
+                            result.error("DECODE_ERROR", error, null);
+                        }
+
+                        @Override
+                        public void onFinished() {
+                        }
+                    }
+                );
+                break;
+            }
+            case "decodeBatch": {
+                Integer batchId = methodCall.argument("batchId");
+                List<Object> images = methodCall.argument("images");
+                if(batchId == null || images == null) {
+                    result.error("INVALID_ARGUMENT", "Missing a required argument", "Expecting batchId and images");
+                    break;
+                }
+                List<StaticImageDecoder.Source> sources = new ArrayList<>(images.size());
+                try {
+                    for(Object image : images) {
+                        sources.add(StaticImageDecoder.Source.fromChannelArg(image));
+                    }
+                } catch(IllegalArgumentException e) {
+                    result.error("INVALID_ARGUMENT", e.getMessage(), null);
+                    break;
+                }
+                Integer parallelism = methodCall.argument("parallelism");
+                StaticImageDecoder decoder;
+                try {
+                    decoder = newDecoder(
+                        methodCall, parallelism == null ? StaticImageDecoder.DEFAULT_PARALLELISM : parallelism
+                    );
+                } catch(IllegalArgumentException e) {
+                    result.error("INVALID_ARGUMENT", "Invalid filter pattern", e.getMessage());
+                    break;
+                }
+                batches.put(batchId, decoder);
+                decoder.decode(sources, new StaticImageDecoder.Listener() {
+                    @Override
+                    public void onDecoded(int index, List<QrBarcode> barcodes) {
+                        sendDecodeResult(batchId, index, resultEncoder.encodeToBytes(batchId, barcodes), null);
+                    }
+
+                    @Override
+                    public void onFailed(int index, String error) {
+                        sendDecodeResult(batchId, index, null, error);
+                    }
 
-                    readingInstance = new ReadingInstance(reader, textureEntry, result);
-                    try {
-                        reader.start(
-                            lastHeartbeatTimeout == null ? 0 : lastHeartbeatTimeout,
-                            orientation
-                        );
-                    } catch(IOException e) {
-                        e.printStackTrace();
-                        result.error(
-                            "IOException", "Error starting camera because of IOException: " + e.getLocalizedMessage(),
-                            null
-                        );
-                    } catch(QrReader.Exception e) {
-                        e.printStackTrace();
-                        result.error(e.reason().name(), "Error starting camera for reason: " + e.reason().name(), null);
-                    } catch(NoPermissionException e) {
-                        waitingForPermissionResult = true;
-                        ActivityCompat.requestPermissions(
-                            activity,
-                            new String[] {
-                                Manifest.permission.CAMERA
-                            },
-                            REQUEST_PERMISSION
-                        );
+                    @Override
+                    public void onFinished() {
+                        batches.remove(batchId);
+                        if(channel != null) {
+                            Map<String, Object> done = new HashMap<>();
+                            done.put("batchId", batchId);
+                            channel.invokeMethod("decodeDone", done);
+                        }
                     }
+                });
+                result.success(null);
+                break;
+            }
+            case "cancelDecodeBatch": {
+                StaticImageDecoder decoder = batches.get(methodCall.<Integer>argument("batchId"));
+                if(decoder != null) {
+                    decoder.cancel();
                 }
+                result.success(null);
                 break;
             }
             case "setTorchState": {
-                if(readingInstance != null && !waitingForPermissionResult) {
-                    readingInstance.reader.qrCamera.setTorchState(methodCall.argument("isOn"));
+                Session session = session(methodCall);
+                if(session != null && session != permissionSession) {
+                    session.reader.qrCamera.setTorchState(methodCall.argument("isOn"));
+                }
+                result.success(null);
+                break;
+            }
+            case "setScanRegion": {
+                Double left = methodCall.argument("left");
+                Double top = methodCall.argument("top");
+                Double right = methodCall.argument("right");
+                Double bottom = methodCall.argument("bottom");
+                ScanRegion region = null;
+                if(left != null && top != null && right != null && bottom != null) {
+                    region = ScanRegion.create(left, top, right, bottom);
+                }
+                Session session = session(methodCall);
+                if(session != null && session != permissionSession) {
+                    session.reader.qrCamera.setScanRegion(region);
+                }
+                result.success(null);
+                break;
+            }
+            case "setZoom": {
+                Double zoom = methodCall.argument("zoom");
+                Session session = session(methodCall);
+                if(zoom != null && session != null && session != permissionSession) {
+                    session.reader.qrCamera.setZoom(zoom.floatValue());
+                }
+                result.success(null);
+                break;
+            }
+            case "pauseDetection": {
+                Boolean paused = methodCall.argument("paused");
+                Session session = session(methodCall);
+                if(session != null && session != permissionSession) {
+                    session.reader.setDetectionPaused(paused != null && paused);
+                }
+                result.success(null);
+                break;
+            }
+            case "pause": {
+                Session session = session(methodCall);
+                if(session != null) {
+                    Integer idleTimeout = methodCall.argument("idleTimeoutMs");
+                    Boolean yieldCamera = methodCall.argument("yieldCamera");
+                    pauseSession(
+                        session, idleTimeout == null ? DEFAULT_PAUSE_TIMEOUT_MS : idleTimeout,
+                        yieldCamera != null && yieldCamera
+                    );
                 }
                 result.success(null);
                 break;
             }
+            case "resume": {
+                Session session = session(methodCall);
+                if(session == null || session.startedResponse == null) {
+                    result.success(false);
+                    break;
+                }
+                // a session waiting for the camera resumes when the session holding it lets go
+                if(session.paused && session.suspendedBy == null) {
+                    resumeSession(session);
+                }
+                result.success(true);
+                break;
+            }
             case "stop": {
-                if(readingInstance != null && !waitingForPermissionResult) {
-                    stopReader();
+                Session session = session(methodCall);
+                if(session != null && session != permissionSession) {
+                    stopSession(session);
+                }
+                result.success(null);
+                break;
+            }
+            case "getStats": {
+                Session session = session(methodCall);
+                result.success(session == null ? null : session.reader.stats.toMap());
+                break;
+            }
+            case "resetAggregation": {
+                Session session = session(methodCall);
+                if(session != null && session != permissionSession) {
+                    session.reader.resetAggregation();
                 }
                 result.success(null);
                 break;
             }
             case "heartbeat": {
-                if(readingInstance != null) {
-                    readingInstance.reader.heartBeat();
+                Session session = session(methodCall);
+                if(session != null) {
+                    session.reader.heartBeat();
                 }
                 result.success(null);
                 break;
@@ -221,23 +691,33 @@ public class FlutterQrBarScannerPlugin
         }
     }
 
-    @Override
-    public void qrRead(Stream<QrBarcode> data) {
-        channel.invokeMethod(
-            "qrRead",
-            data.map(d -> d.getForChannel())
-                .collect(Collectors.toCollection(ArrayList::new))
+    /**
+     * @throws IllegalArgumentException if the filter pattern is not a valid regular expression.
+     */
+    private StaticImageDecoder newDecoder(MethodCall methodCall, int parallelism) {
+        Integer maxDimension = methodCall.argument("maxDimension");
+        BarcodeFilter.Options filter = BarcodeFilter.Options.create(
+            methodCall.argument("filterPattern"), methodCall.argument("filterMinLength"),
+            methodCall.argument("filterMaxLength"), methodCall.argument("filterPrefixes"),
+            methodCall.argument("filterValidateChecksum"), methodCall.argument("filterGs1"),
+            methodCall.argument("filterGs1Ais")
+        );
+        return new StaticImageDecoder(
+            methodCall.argument("formats"), filter, parallelism,
+            maxDimension == null ? StaticImageDecoder.DEFAULT_MAX_DIMENSION : maxDimension, mainHandler
         );
     }
 
-    @Override
-    public void started() {
-        Map<String, Object> response = new HashMap<>();
-        response.put("surfaceWidth", readingInstance.reader.qrCamera.getWidth());
-        response.put("surfaceHeight", readingInstance.reader.qrCamera.getHeight());
-        response.put("surfaceOrientation", readingInstance.reader.qrCamera.getOrientation());
-        response.put("textureId", readingInstance.textureEntry.id());
-        readingInstance.startResult.success(response);
+    private void sendDecodeResult(int batchId, int index, byte[] results, String error) {
+        if(channel == null) {
+            return;
+        }
+        Map<String, Object> args = new HashMap<>();
+        args.put("batchId", batchId);
+        args.put("index", index);
+        args.put("results", results);
+        args.put("error", error);
+        channel.invokeMethod("decodeResult", args);
     }
 
     private List<String> stackTraceAsString(StackTraceElement[] stackTrace) {
@@ -252,28 +732,182 @@ public class FlutterQrBarScannerPlugin
         return stackTraceStrings;
     }
 
-    @Override
-    public void startingFailed(Throwable t) {
-        Log.w(TAG, "Starting QR Mobile Vision failed", t);
-        List<String> stackTraceStrings = stackTraceAsString(t.getStackTrace());
-
-        if(t instanceof QrReader.Exception) {
-            QrReader.Exception qrException = (QrReader.Exception)t;
-            readingInstance.startResult.error("QRREADER_ERROR", qrException.reason().name(), stackTraceStrings);
-        } else {
-            readingInstance.startResult.error("UNKNOWN_ERROR", t.getMessage(), stackTraceStrings);
-        }
-    }
-
-    private class ReadingInstance {
-        final QrReader reader;
+    /**
+     * A reader with its preview texture, and its state as seen by the channel. Only used on the main thread.
+     */
+    private class Session implements QrReader.Listener {
+        final int id;
+        QrReader reader;
         final TextureRegistry.SurfaceTextureEntry textureEntry;
         final Result startResult;
+        /** arguments start was called with, to tell whether a later start can reuse this session. */
+        final Object startArguments;
+        final int statsIntervalMs;
+        /** reply sent to start, or null until the reader has started. */
+        Map<String, Object> startedResponse;
+        boolean paused;
+        /** true while the camera is released for another session. */
+        boolean cameraReleased;
+        /** id of the session that took the camera from this (running) session, which resumes when that one goes. */
+        Integer suspendedBy;
+
+        final Runnable statsReporter = new Runnable() {
+            @Override
+            public void run() {
+                if(channel != null) {
+                    Map<String, Object> stats = reader.stats.toMap();
+                    stats.put("sessionId", id);
+                    channel.invokeMethod("stats", stats);
+                    mainHandler.postDelayed(this, statsIntervalMs);
+                }
+            }
+        };
 
-        private ReadingInstance(QrReader reader, TextureRegistry.SurfaceTextureEntry textureEntry, Result startResult) {
-            this.reader = reader;
+        final Runnable pauseTimeout = new Runnable() {
+            @Override
+            public void run() {
+                Log.i(TAG, "Session " + id + " paused for too long, stopping it.");
+                stopSession(Session.this);
+            }
+        };
+
+        private Session(
+            int id, TextureRegistry.SurfaceTextureEntry textureEntry, Result startResult, Object startArguments,
+            int statsIntervalMs
+        ) {
+            this.id = id;
             this.textureEntry = textureEntry;
             this.startResult = startResult;
+            this.startArguments = startArguments;
+            this.statsIntervalMs = statsIntervalMs;
+        }
+
+        boolean holdsCamera() {
+            return startedResponse != null && !cameraReleased;
+        }
+
+        void scheduleStats() {
+            mainHandler.removeCallbacks(statsReporter);
+            if(statsIntervalMs > 0) {
+                mainHandler.postDelayed(statsReporter, statsIntervalMs);
+            }
+        }
+
+        @Override
+        public void qrRead(Stream<QrBarcode> data) {
+            // called on the main thread, which is also the only thread the encoder (and its reused buffer) is used
+            // from.
+            if(resultsChannel != null) {
+                final long startNs = PipelineStats.now();
+                ByteBuffer message = resultEncoder.encode(id, data.collect(Collectors.toCollection(ArrayList::new)));
+                reader.stats.encode.recordNanos(PipelineStats.now() - startNs);
+                resultsChannel.send(message);
+            }
+        }
+
+        /**
+         * Sends changes to the aggregated barcodes to Dart as one list of barcodes (encoded like the results channel)
+         * with, for each, the change (0 added, 1 moved, 2 removed, 3 collected) and the number of frames it was seen
+         * in.
+         */
+        @Override
+        public void onAggregate(
+            List<BarcodeAggregator.Sighting> added, List<BarcodeAggregator.Sighting> moved,
+            List<BarcodeAggregator.Sighting> removed, List<BarcodeAggregator.Sighting> collected
+        ) {
+            final List<QrBarcode> barcodes = new ArrayList<>();
+            final List<Integer> changes = new ArrayList<>();
+            final List<Integer> counts = new ArrayList<>();
+            int change = 0;
+            for(List<BarcodeAggregator.Sighting> sightings : Arrays.asList(added, moved, removed, collected)) {
+                if(sightings != null) {
+                    for(BarcodeAggregator.Sighting sighting : sightings) {
+                        barcodes.add(sighting.barcode);
+                        changes.add(change);
+                        counts.add(sighting.count);
+                    }
+                }
+                ++change;
+            }
+            mainHandler.post(() -> {
+                if(channel == null) {
+                    return;
+                }
+                Map<String, Object> args = new HashMap<>();
+                args.put("sessionId", id);
+                args.put("results", resultEncoder.encodeToBytes(id, barcodes));
+                args.put("changes", changes);
+                args.put("counts", counts);
+                args.put("complete", collected != null);
+                channel.invokeMethod("aggregate", args);
+            });
+        }
+
+        /**
+         * Sends the predicted positions of tracked barcodes over the tracks channel. Called on the main thread, like
+         * qrRead(), which the encoder is shared with.
+         */
+        @Override
+        public void onTrack(List<BarcodeTracker.Position> positions) {
+            if(tracksChannel != null) {
+                tracksChannel.send(resultEncoder.encodeTracks(id, positions));
+            }
+        }
+
+        /**
+         * Tells Dart about a stall the reader recovered from, and stops the session if Dart stopped sending
+         * heartbeats.
+         */
+        @Override
+        public void onHealthIssue(Watchdog.Issue issue, long stalledMs) {
+            if(channel != null) {
+                Map<String, Object> event = new HashMap<>();
+                event.put("sessionId", id);
+                event.put("issue", issue.name());
+                event.put("action", issue.action.name());
+                event.put("stalledMs", stalledMs);
+                channel.invokeMethod("health", event);
+            }
+            if(issue.action == Watchdog.Action.stop) {
+                stopSession(this);
+            }
+        }
+
+        @Override
+        public void started() {
+            Map<String, Object> response = new HashMap<>();
+            response.put("sessionId", id);
+            response.put("surfaceWidth", reader.qrCamera.getWidth());
+            response.put("surfaceHeight", reader.qrCamera.getHeight());
+            response.put("surfaceOrientation", reader.qrCamera.getOrientation());
+            response.put("analysisWidth", reader.qrCamera.getAnalysisWidth());
+            response.put("analysisHeight", reader.qrCamera.getAnalysisHeight());
+            response.put("maxZoom", (double)reader.qrCamera.getMaxZoom());
+            response.put("textureId", textureEntry.id());
+            startedResponse = response;
+            scheduleStats();
+            startResult.success(response);
+        }
+
+        @Override
+        public void startingFailed(Throwable t) {
+            Log.w(TAG, "Starting QR Mobile Vision failed", t);
+            List<String> stackTraceStrings = stackTraceAsString(t.getStackTrace());
+
+            if(t instanceof QrReader.Exception) {
+                QrReader.Exception qrException = (QrReader.Exception)t;
+                startResult.error("QRREADER_ERROR", qrException.reason().name(), stackTraceStrings);
+            } else {
+                startResult.error("UNKNOWN_ERROR", t.getMessage(), stackTraceStrings);
+            }
+            if(permissionSession != this) {
+                // let start return before tearing the reader down
+                mainHandler.post(() -> {
+                    if(sessions.get(id) == Session.this) {
+                        stopSession(Session.this);
+                    }
+                });
+            }
         }
     }
 }
@@ -0,0 +1,141 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+
+/**
+ * Fixed set of direct buffers that camera frames are copied into (as NV21) before detection, so that each Image goes
+ * back to the ImageReader as soon as it has been copied rather than once detection completes. A slow detection then
+ * no longer holds on to the reader's images, and native memory used for frames waiting on detection is capped at
+ * count buffers.
+ * <p>
+ * Buffers are acquired on the analysis thread and released on whichever thread closes the frame.
+ */
+class FrameBufferPool {
+    private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX
+        + FrameBufferPool.class.getSimpleName();
+    /** chroma value of a grey pixel. */
+    private static final byte NEUTRAL_CHROMA = (byte)128;
+    private static final int DEFAULT_COUNT = 3;
+    /** one frame being detected and one waiting in the detector's mailbox. */
+    private static final int MIN_COUNT = 2;
+
+    enum Mode {
+        /** detect on the camera's Image directly, holding it until detection completes. */
+        IMAGE,
+        /** copy the frame into a pooled buffer and close the Image straight away. */
+        COPY,
+        /** like COPY, but only copy the luma plane; chroma is left grey, which barcode detection does not use. */
+        LUMA;
+
+        static Mode parse(String value) throws NoSuchElementException {
+            if(value == null) {
+                return IMAGE;
+            }
+            switch(value) {
+                case "image":
+                    return IMAGE;
+                case "copy":
+                    return COPY;
+                case "luma":
+                    return LUMA;
+                default:
+                    throw new NoSuchElementException(value);
+            }
+        }
+    }
+
+    static class Options {
+        final Mode mode;
+        /** number of buffers in the pool. */
+        final int count;
+
+        Options(String mode, Integer count) {
+            this.mode = Mode.parse(mode);
+            this.count = count == null ? DEFAULT_COUNT : Math.max(MIN_COUNT, count);
+        }
+    }
+
+    /**
+     * A pooled buffer, and the part of it known to hold neutral chroma (so that luma only copies of the same size do
+     * not have to fill it again).
+     */
+    static class Buffer {
+        final ByteBuffer data;
+        private int neutralStart = -1;
+        private int neutralEnd = -1;
+
+        private Buffer(int capacity) {
+            data = ByteBuffer.allocateDirect(capacity);
+        }
+
+        /**
+         * Fills the chroma part of a width x height NV21 frame with grey, unless it still is from the previous frame.
+         */
+        void fillNeutralChroma(int width, int height) {
+            final int start = width * height, end = start + start / 2;
+            if(start == neutralStart && end == neutralEnd) {
+                return;
+            }
+            final byte[] grey = new byte[end - start];
+            Arrays.fill(grey, NEUTRAL_CHROMA);
+            data.clear();
+            data.position(start);
+            data.put(grey);
+            neutralStart = start;
+            neutralEnd = end;
+        }
+
+        /**
+         * Marks the chroma part as overwritten by a full copy.
+         */
+        void chromaWritten() {
+            neutralStart = neutralEnd = -1;
+        }
+    }
+
+    final Mode mode;
+    private final int count;
+    private final int capacity;
+    private final Deque<Buffer> free = new ArrayDeque<>();
+    private int allocated;
+
+    /**
+     * @param width  - width of the largest frame copied.
+     * @param height - height of the largest frame copied.
+     */
+    FrameBufferPool(Options options, int width, int height) {
+        this.mode = options.mode;
+        this.count = options.count;
+        this.capacity = width * height + width * height / 2;
+        Log.d(TAG, "up to " + count + " buffers of " + capacity + " bytes");
+    }
+
+    /**
+     * @return a free buffer, or null if all are in use (in which case the frame should be dropped).
+     */
+    Buffer acquire() {
+        synchronized(free) {
+            Buffer buffer = free.pollFirst();
+            if(buffer != null) {
+                return buffer;
+            }
+            if(allocated < count) {
+                ++allocated;
+                return new Buffer(capacity);
+            }
+            return null;
+        }
+    }
+
+    void release(Buffer buffer) {
+        synchronized(free) {
+            free.addFirst(buffer);
+        }
+    }
+}
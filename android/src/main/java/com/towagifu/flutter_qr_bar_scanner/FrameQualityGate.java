@@ -0,0 +1,127 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.graphics.Rect;
+import android.os.SystemClock;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps blurred and moving frames from detection, where they would take as long as any other frame only to yield
+ * nothing, as is typical while the camera is being aimed.
+ * <p>
+ * Sharpness is the variance of the Laplacian (4 times a sample less its four direct neighbours, at full resolution)
+ * over a grid of luma samples inside the crop detection runs on, which drops as the image gets blurred. Motion is
+ * measured by the camera's MotionEstimator, which the FrameRateGovernor uses as well.
+ * As sharpness also depends on the scene, a frame must be both sharper than an absolute minimum and not much less
+ * sharp than the sharpest recent frame. A frame is let through regardless once frames have been skipped for the
+ * maximum skip time, so that a scene that never measures up is still analysed now and then.
+ * <p>
+ * Only used from the analysis thread.
+ */
+class FrameQualityGate {
+    private static final int GRID_COLUMNS = 48;
+    private static final int GRID_ROWS = 36;
+    /** how fast the sharpest recent score is forgotten. */
+    private static final double PEAK_HALF_LIFE_MS = 1000;
+
+    static class Options {
+        /** Laplacian variance below which a frame counts as blurred, or 0. */
+        final float minSharpness;
+        /** fraction of the sharpest recent frame's score below which a frame counts as blurred, or 0. */
+        final float sharpnessRatio;
+        /** mean absolute luma difference (0-255) from the previous frame above which it counts as moving, or 0. */
+        final int maxMotion;
+        /** let a frame through once frames have been skipped for this long, or 0 to skip for as long as it takes. */
+        final long maxSkipMs;
+
+        private Options(Double minSharpness, Double sharpnessRatio, Integer maxMotion, Integer maxSkipMs) {
+            this.minSharpness = minSharpness == null ? 50f : (float)Math.max(0, minSharpness);
+            this.sharpnessRatio = sharpnessRatio == null ? 0.5f : (float)Math.max(0, Math.min(1, sharpnessRatio));
+            this.maxMotion = maxMotion == null ? 16 : Math.max(0, maxMotion);
+            this.maxSkipMs = maxSkipMs == null ? 500 : Math.max(0, maxSkipMs);
+        }
+
+        /**
+         * @return the options, or null if frames are not gated.
+         */
+        static Options create(
+            Boolean gate, Double minSharpness, Double sharpnessRatio, Integer maxMotion, Integer maxSkipMs
+        ) {
+            if(gate == null || !gate) {
+                return null;
+            }
+            return new Options(minSharpness, sharpnessRatio, maxMotion, maxSkipMs);
+        }
+    }
+
+    private final Options options;
+    private final PipelineStats stats;
+    private float peakSharpness;
+    private long peakMs;
+    private long lastPassedMs;
+
+    FrameQualityGate(Options options, PipelineStats stats) {
+        this.options = options;
+        this.stats = stats;
+    }
+
+    /**
+     * @return true if shouldAnalyse() needs the motion of frames measured.
+     */
+    boolean watchesMotion() {
+        return options.maxMotion > 0;
+    }
+
+    /**
+     * Called for every frame that would otherwise be analysed.
+     *
+     * @param motion - motion of the frame from MotionEstimator, or MotionEstimator.UNKNOWN.
+     * @return true if the frame should be sent for detection.
+     */
+    boolean shouldAnalyse(LumaPlane luma, float motion) {
+        final long now = SystemClock.elapsedRealtime();
+        final Rect crop = luma.crop;
+        if(crop.width() < 3 || crop.height() < 3) {
+            return true;
+        }
+
+        final ByteBuffer y = luma.buffer;
+        final int rowStride = luma.rowStride, pixelStride = luma.pixelStride;
+        final int width = crop.width() - 2, height = crop.height() - 2;
+        long sum = 0, sumOfSquares = 0;
+        for(int row = 0; row < GRID_ROWS; ++row) {
+            final int rowStart = (crop.top + 1 + (2 * row + 1) * height / (2 * GRID_ROWS)) * rowStride;
+            for(int col = 0; col < GRID_COLUMNS; ++col) {
+                final int at = rowStart + (crop.left + 1 + (2 * col + 1) * width / (2 * GRID_COLUMNS)) * pixelStride;
+                final int centre = y.get(at) & 0xFF;
+                final int laplacian = 4 * centre
+                    - (y.get(at - pixelStride) & 0xFF) - (y.get(at + pixelStride) & 0xFF)
+                    - (y.get(at - rowStride) & 0xFF) - (y.get(at + rowStride) & 0xFF);
+                sum += laplacian;
+                sumOfSquares += laplacian * laplacian;
+            }
+        }
+
+        final int count = GRID_COLUMNS * GRID_ROWS;
+        final float mean = (float)sum / count;
+        final float sharpness = (float)sumOfSquares / count - mean * mean;
+        peakSharpness = Math.max(
+            sharpness, (float)(peakSharpness * Math.pow(0.5, (now - peakMs) / PEAK_HALF_LIFE_MS))
+        );
+        peakMs = now;
+
+        final boolean moving = options.maxMotion > 0 && motion > options.maxMotion;
+        final boolean blurred = sharpness < options.minSharpness
+            || sharpness < options.sharpnessRatio * peakSharpness;
+        if((!moving && !blurred) || (options.maxSkipMs > 0 && now - lastPassedMs >= options.maxSkipMs)) {
+            lastPassedMs = now;
+            return true;
+        }
+        if(moving) {
+            stats.frameMoving();
+        } else {
+            stats.frameBlurred();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,149 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.os.SystemClock;
+import android.util.Range;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Decides which camera frames are sent for detection.
+ * <p>
+ * Frames are analysed at up to the target rate. When no barcode has been seen (and no motion detected) for a while,
+ * the rate backs off to the idle rate, and it returns to the target rate as soon as a barcode is seen or the
+ * picture changes, as measured by the camera's MotionEstimator.
+ */
+class FrameRateGovernor {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    /** mean absolute luma difference (0-255) from the previous frame above which the picture counts as changed. */
+    private static final int MOTION_THRESHOLD = 12;
+
+    static class Options {
+        /** maximum rate frames are analysed at, or 0 for every frame. */
+        final int targetFps;
+        /** rate frames are analysed at once idle. */
+        final int idleFps;
+        /** how long without barcodes or motion before backing off to the idle rate, or 0 to never back off. */
+        final int idleAfterMs;
+        /** preferred camera frame rate, used to pick the AE target fps range, or 0 for the device default. */
+        final int cameraFps;
+
+        Options(Integer targetFps, Integer idleFps, Integer idleAfterMs, Integer cameraFps) {
+            this.targetFps = targetFps == null ? 0 : Math.max(0, targetFps);
+            this.idleFps = idleFps == null ? 0 : Math.max(0, idleFps);
+            this.idleAfterMs = idleAfterMs == null || this.idleFps == 0 ? 0 : Math.max(0, idleAfterMs);
+            this.cameraFps = cameraFps == null ? 0 : Math.max(0, cameraFps);
+        }
+    }
+
+    final Options options;
+    private long lastAnalysedNs;
+    private boolean idle;
+    private volatile long lastActivityNs;
+
+    FrameRateGovernor(Options options) {
+        this.options = options;
+        this.lastActivityNs = SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * @return true if shouldAnalyse() needs the motion of frames measured.
+     */
+    boolean watchesMotion() {
+        return options.idleAfterMs > 0;
+    }
+
+    /**
+     * Called from the analysis thread for every frame the camera produces.
+     *
+     * @param motion - motion of the frame from MotionEstimator, or MotionEstimator.UNKNOWN (e.g. if not measured).
+     * @return true if the frame should be sent for detection.
+     */
+    boolean shouldAnalyse(float motion) {
+        final long now = SystemClock.elapsedRealtimeNanos();
+        if(options.idleAfterMs > 0) {
+            if(motion > MOTION_THRESHOLD) {
+                lastActivityNs = now;
+            }
+            final boolean wasIdle = idle;
+            idle = now - lastActivityNs > options.idleAfterMs * NANOS_PER_MILLI;
+            if(wasIdle && !idle) {
+                // burst: analyse straight away rather than waiting out the idle interval
+                lastAnalysedNs = now;
+                return true;
+            }
+        }
+
+        final int fps = idle ? options.idleFps : options.targetFps;
+        if(fps <= 0) {
+            lastAnalysedNs = now;
+            return true;
+        }
+        final long interval = NANOS_PER_SECOND / fps;
+        // allow for jitter in frame arrival, so that e.g. 15fps out of 30fps does not become 10fps
+        if(now - lastAnalysedNs >= interval - interval / 10) {
+            lastAnalysedNs = now;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called when a detection has found barcodes. May be called from any thread.
+     */
+    void onBarcodesSeen() {
+        lastActivityNs = SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Called when analysis resumes after a pause, so that it does not start out idle. May be called from any thread.
+     */
+    void onResumed() {
+        lastActivityNs = SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * @return callbacks that report seen barcodes to this governor before passing them on to downstream.
+     */
+    QrReaderCallbacks watch(final QrReaderCallbacks downstream) {
+        return data -> {
+            List<QrBarcode> barcodes = data.collect(Collectors.toCollection(ArrayList::new));
+            if(!barcodes.isEmpty()) {
+                onBarcodesSeen();
+            }
+            downstream.qrRead(barcodes.stream());
+        };
+    }
+
+    /**
+     * Picks the AE target fps range for the requested camera frame rate: the range with the lowest upper bound that
+     * still reaches the rate, preferring the lowest lower bound (which allows longer exposures in dim light).
+     *
+     * @return the range, or null if there are no ranges.
+     */
+    static Range<Integer> selectFpsRange(Range<Integer>[] ranges, int fps) {
+        if(ranges == null || ranges.length == 0) {
+            return null;
+        }
+        Range<Integer> best = null;
+        for(Range<Integer> range : ranges) {
+            if(range.getUpper() < fps) {
+                continue;
+            }
+            if(best == null
+                || range.getUpper() < best.getUpper()
+                || (range.getUpper().equals(best.getUpper()) && range.getLower() < best.getLower()))
+            {
+                best = range;
+            }
+        }
+        if(best != null) {
+            return best;
+        }
+        // nothing reaches the requested rate, so use the fastest
+        return Stream.of(ranges).max((a, b) -> Integer.compare(a.getUpper(), b.getUpper())).get();
+    }
+}
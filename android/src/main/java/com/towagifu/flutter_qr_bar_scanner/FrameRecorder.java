@@ -0,0 +1,133 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.graphics.Rect;
+import android.media.Image;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dumps camera frames to a directory, for replaying with ReplayCamera. Each frame is written as a raw NV21 file
+ * (frame_00000.nv21, ...) and described by a line of the manifest:
+ *
+ * <pre>
+ * file,width,height,rotation,timestampMs
+ * </pre>
+ *
+ * where timestampMs is the time since the first recorded frame. Frames are copied on the analysis thread and written
+ * on a thread of their own; frames arriving while too many are waiting to be written are not recorded.
+ */
+class FrameRecorder {
+    private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX + FrameRecorder.class.getSimpleName();
+    static final String MANIFEST = "manifest.csv";
+    private static final int MAX_PENDING_WRITES = 4;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    static class Options {
+        final File directory;
+        /** number of frames recorded before recording stops. */
+        final int maxFrames;
+
+        private Options(File directory, int maxFrames) {
+            this.directory = directory;
+            this.maxFrames = maxFrames;
+        }
+
+        /**
+         * @return the options, or null if no directory is given.
+         */
+        static Options create(String directory, Integer maxFrames) {
+            if(directory == null) {
+                return null;
+            }
+            return new Options(new File(directory), maxFrames == null || maxFrames <= 0 ? 300 : maxFrames);
+        }
+    }
+
+    private final Options options;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "QrRecord")
+    );
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    /** confined to the analysis thread. */
+    private int recorded;
+    private long firstTimestampNs = -1;
+    /** confined to the writer thread. */
+    private Writer manifest;
+
+    FrameRecorder(Options options) {
+        this.options = options;
+    }
+
+    /**
+     * Copies image (which the caller still owns) for writing. Called on the analysis thread.
+     */
+    void record(Image image, int rotation) {
+        if(recorded >= options.maxFrames || pendingWrites.get() >= MAX_PENDING_WRITES) {
+            return;
+        }
+        final int width = image.getWidth() & ~1, height = image.getHeight() & ~1;
+        final byte[] nv21 = new byte[width * height * 3 / 2];
+        QrCameraC2.Frame.copyToNv21(image, new Rect(0, 0, width, height), ByteBuffer.wrap(nv21), true);
+        if(firstTimestampNs < 0) {
+            firstTimestampNs = image.getTimestamp();
+        }
+        final String line = String.format(
+            Locale.US, "frame_%05d.nv21,%d,%d,%d,%.3f", recorded, width, height, rotation,
+            (image.getTimestamp() - firstTimestampNs) / (double)NANOS_PER_MILLI
+        );
+        final String file = line.substring(0, line.indexOf(','));
+        ++recorded;
+        pendingWrites.incrementAndGet();
+        writer.execute(() -> {
+            try {
+                write(file, nv21, line);
+            } catch(IOException e) {
+                Log.w(TAG, "Error recording frame " + file, e);
+            } finally {
+                pendingWrites.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Finishes writing the frames recorded so far in the background.
+     */
+    void close() {
+        writer.execute(() -> {
+            if(manifest != null) {
+                try {
+                    manifest.close();
+                } catch(IOException e) {
+                    Log.w(TAG, "Error closing manifest", e);
+                }
+                manifest = null;
+            }
+        });
+        writer.shutdown();
+    }
+
+    private void write(String file, byte[] nv21, String line) throws IOException {
+        if(manifest == null) {
+            if(!options.directory.isDirectory() && !options.directory.mkdirs()) {
+                throw new IOException("Unable to create " + options.directory);
+            }
+            manifest = new FileWriter(new File(options.directory, MANIFEST));
+        }
+        try(FileOutputStream out = new FileOutputStream(new File(options.directory, file))) {
+            out.write(nv21);
+        }
+        manifest.write(line);
+        manifest.write('\n');
+        manifest.flush();
+    }
+}
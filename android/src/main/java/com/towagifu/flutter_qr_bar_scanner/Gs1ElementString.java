@@ -0,0 +1,196 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parses GS1 element strings: the (application identifier, value) pairs carried by GS1-128, GS1 DataMatrix and GS1
+ * QR codes. Accepts the raw form, where a value of variable length ends with a group separator (FNC1), optionally
+ * preceded by a symbology identifier such as "]C1", and the bracketed human readable form "(01)09501101020917(10)AB1".
+ * <p>
+ * Application identifiers are told apart by their first two digits, as in the GS1 General Specifications: these give
+ * the length of the identifier and, for some, the predefined length of the value.
+ */
+final class Gs1ElementString {
+    private static final char GROUP_SEPARATOR = '\u001D';
+    private static final String[] SYMBOLOGY_IDENTIFIERS = { "]C1", "]e0", "]d2", "]Q3", "]J1" };
+
+    private Gs1ElementString() {
+    }
+
+    /**
+     * @return the values by application identifier, in the order they appear, or null if content is not a well formed
+     * GS1 element string.
+     */
+    static Map<String, String> parse(String content) {
+        if(content == null || content.isEmpty()) {
+            return null;
+        }
+        for(String identifier : SYMBOLOGY_IDENTIFIERS) {
+            if(content.startsWith(identifier)) {
+                content = content.substring(identifier.length());
+                break;
+            }
+        }
+        return content.startsWith("(") ? parseBracketed(content) : parseRaw(content);
+    }
+
+    private static Map<String, String> parseRaw(String content) {
+        final Map<String, String> elements = new LinkedHashMap<>();
+        int pos = 0;
+        final int end = content.length();
+        while(pos < end) {
+            if(content.charAt(pos) == GROUP_SEPARATOR) {
+                // leading FNC1, or one after a value of predefined length
+                ++pos;
+                continue;
+            }
+            final int aiLength = identifierLength(content, pos);
+            if(aiLength == 0 || pos + aiLength > end || !isDigits(content, pos, pos + aiLength)) {
+                return null;
+            }
+            final String ai = content.substring(pos, pos + aiLength);
+            pos += aiLength;
+
+            final int valueLength = predefinedLength(ai);
+            final int valueEnd;
+            if(valueLength > 0) {
+                valueEnd = pos + valueLength;
+                if(valueEnd > end) {
+                    return null;
+                }
+            } else {
+                final int separator = content.indexOf(GROUP_SEPARATOR, pos);
+                valueEnd = separator < 0 ? end : separator;
+            }
+            if(valueEnd == pos || !add(elements, ai, content.substring(pos, valueEnd))) {
+                return null;
+            }
+            pos = valueEnd;
+        }
+        return elements.isEmpty() ? null : Collections.unmodifiableMap(elements);
+    }
+
+    private static Map<String, String> parseBracketed(String content) {
+        final Map<String, String> elements = new LinkedHashMap<>();
+        int pos = 0;
+        final int end = content.length();
+        while(pos < end) {
+            final int close = content.indexOf(')', pos);
+            if(content.charAt(pos) != '(' || close < 0) {
+                return null;
+            }
+            final String ai = content.substring(pos + 1, close);
+            if(ai.isEmpty() || identifierLength(ai, 0) != ai.length() || !isDigits(ai, 0, ai.length())) {
+                return null;
+            }
+            final int next = content.indexOf('(', close);
+            final int valueEnd = next < 0 ? end : next;
+            final String value = content.substring(close + 1, valueEnd);
+            final int valueLength = predefinedLength(ai);
+            if(value.isEmpty() || (valueLength > 0 && value.length() != valueLength) || !add(elements, ai, value)) {
+                return null;
+            }
+            pos = valueEnd;
+        }
+        return elements.isEmpty() ? null : Collections.unmodifiableMap(elements);
+    }
+
+    /**
+     * @return false if the identifier was already present, which makes the element string malformed.
+     */
+    private static boolean add(Map<String, String> elements, String ai, String value) {
+        return elements.put(ai, value) == null;
+    }
+
+    /**
+     * @return the number of digits of the application identifier starting at pos, or 0 if unknown.
+     */
+    private static int identifierLength(String s, int pos) {
+        if(pos + 2 > s.length() || !isDigits(s, pos, pos + 2)) {
+            return 0;
+        }
+        final int prefix = Integer.parseInt(s.substring(pos, pos + 2));
+        if(prefix <= 22 || prefix == 30 || prefix == 37 || prefix >= 90) {
+            return 2;
+        }
+        if((prefix >= 23 && prefix <= 25) || (prefix >= 40 && prefix <= 42) || prefix == 71) {
+            return 3;
+        }
+        if((prefix >= 31 && prefix <= 36) || prefix == 39 || prefix == 43 || prefix == 70 || prefix == 72
+            || (prefix >= 80 && prefix <= 82))
+        {
+            return 4;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the length of the value of ai if predefined, otherwise 0 (the value then ends with a group separator).
+     */
+    private static int predefinedLength(String ai) {
+        final int prefix = Integer.parseInt(ai.substring(0, 2));
+        switch(prefix) {
+            case 0:
+                return 18;
+            case 1:
+            case 2:
+            case 3:
+                return 14;
+            case 4:
+                return 16;
+            case 20:
+                return 2;
+            case 41:
+                return 13;
+            default:
+                if((prefix >= 11 && prefix <= 19) || (prefix >= 31 && prefix <= 36)) {
+                    return 6;
+                }
+                return 0;
+        }
+    }
+
+    /**
+     * @return false if an identifier that carries a GS1 key (SSCC, GTIN, GLN) has a value that is not all digits or
+     * whose check digit is wrong. Other values are not checked.
+     */
+    static boolean checkDigitsValid(Map<String, String> elements) {
+        for(Map.Entry<String, String> element : elements.entrySet()) {
+            final String ai = element.getKey();
+            if((ai.equals("00") || ai.equals("01") || ai.equals("02") || ai.startsWith("41"))
+                && !mod10Valid(element.getValue()))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if digits is all digits, and its last digit is the GS1 (mod 10) check digit of the others.
+     */
+    static boolean mod10Valid(String digits) {
+        final int length = digits.length();
+        if(length < 2 || !isDigits(digits, 0, length)) {
+            return false;
+        }
+        int sum = 0;
+        // weights alternate 3, 1, ... starting from the digit before the check digit
+        for(int i = length - 2, weight = 3; i >= 0; --i, weight = 4 - weight) {
+            sum += (digits.charAt(i) - '0') * weight;
+        }
+        return (10 - sum % 10) % 10 == digits.charAt(length - 1) - '0';
+    }
+
+    static boolean isDigits(String s, int start, int end) {
+        for(int i = start; i < end; ++i) {
+            final char c = s.charAt(i);
+            if(c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
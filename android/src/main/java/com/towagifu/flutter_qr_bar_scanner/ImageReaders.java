@@ -0,0 +1,163 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.media.Image;
+import android.media.ImageReader;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of ImageReaders left over from stopped readers, so that a reader started with the same analysis size reuses
+ * the reader (and its buffers) rather than allocating new ones. Only a couple are kept, as each holds several frames.
+ * <p>
+ * Only readers whose images have all been closed are pooled. A reader given back while an image acquired from it is
+ * still open (being detected, or leaked) is closed instead, once that image is closed: closing it straight away
+ * would free the buffer of an image that may still be read.
+ */
+class ImageReaders {
+    private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX + ImageReaders.class.getSimpleName();
+    private static final int MAX_IDLE = 2;
+
+    /**
+     * A reader taken from the pool, with the number of images acquired from it that have not been closed yet.
+     */
+    static class Lease {
+        final ImageReader reader;
+        private final AtomicInteger openImages = new AtomicInteger();
+        /** true once the reader is to be closed when its last open image is closed. Guarded by this. */
+        private boolean closeOnIdle;
+        private boolean closed;
+
+        private Lease(ImageReader reader) {
+            this.reader = reader;
+        }
+
+        void imageAcquired() {
+            openImages.incrementAndGet();
+        }
+
+        void imageClosed() {
+            if(openImages.decrementAndGet() == 0) {
+                synchronized(this) {
+                    if(closeOnIdle) {
+                        close();
+                    }
+                }
+            }
+        }
+
+        int openImages() {
+            return openImages.get();
+        }
+
+        /**
+         * @return true if no image is open, so that the reader can be pooled. Otherwise the reader is closed once the
+         * last one is closed.
+         */
+        synchronized boolean idle() {
+            if(openImages.get() == 0) {
+                return true;
+            }
+            closeOnIdle = true;
+            return false;
+        }
+
+        /**
+         * Closes the reader now if no image is open, or else once the last one is closed.
+         */
+        synchronized void closeWhenIdle() {
+            if(idle()) {
+                close();
+            }
+        }
+
+        /**
+         * Closes the reader straight away, releasing every image acquired from it.
+         */
+        synchronized void close() {
+            if(!closed) {
+                closed = true;
+                reader.close();
+            }
+        }
+    }
+
+    /** most recently returned first. */
+    private static final Deque<Lease> idle = new ArrayDeque<>();
+
+    /**
+     * @return an idle reader with the given configuration, or a new one if there is none.
+     */
+    static Lease take(int width, int height, int format, int maxImages) {
+        synchronized(idle) {
+            for(Iterator<Lease> it = idle.iterator(); it.hasNext(); ) {
+                Lease lease = it.next();
+                ImageReader reader = lease.reader;
+                if(reader.getWidth() == width && reader.getHeight() == height && reader.getImageFormat() == format
+                    && reader.getMaxImages() == maxImages)
+                {
+                    it.remove();
+                    if(!lease.idle()) {
+                        // acquired an image after it was given back; closed once that is closed
+                        continue;
+                    }
+                    drain(reader);
+                    return lease;
+                }
+            }
+        }
+        return new Lease(ImageReader.newInstance(width, height, format, maxImages));
+    }
+
+    /**
+     * Returns a reader to the pool once nothing writes to it any more, closing the least recently used reader if the
+     * pool is full. A reader with images still open is closed once they are closed instead.
+     */
+    static void give(Lease lease) {
+        lease.reader.setOnImageAvailableListener(null, null);
+        if(!lease.idle()) {
+            Log.d(TAG, "Not pooling a reader with " + lease.openImages() + " images open.");
+            return;
+        }
+        Lease evicted = null;
+        synchronized(idle) {
+            idle.addFirst(lease);
+            if(idle.size() > MAX_IDLE) {
+                evicted = idle.removeLast();
+            }
+        }
+        if(evicted != null) {
+            evicted.closeWhenIdle();
+        }
+    }
+
+    /**
+     * Closes the pooled readers. None of them has open images, unless one was acquired after the reader was given
+     * back, in which case the reader is closed once it is closed.
+     */
+    static void clear() {
+        synchronized(idle) {
+            for(Lease lease : idle) {
+                lease.closeWhenIdle();
+            }
+            idle.clear();
+        }
+    }
+
+    /**
+     * Discards frames queued by the previous user of the reader.
+     */
+    private static void drain(ImageReader reader) {
+        try {
+            Image image = reader.acquireLatestImage();
+            if(image != null) {
+                image.close();
+            }
+        } catch(IllegalStateException e) {
+            Log.w(TAG, "Could not drain reused reader.", e);
+        }
+    }
+}
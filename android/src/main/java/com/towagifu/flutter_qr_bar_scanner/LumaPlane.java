@@ -0,0 +1,81 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The luma (Y) plane of a frame, or the part of it inside a crop, for detection engines that work on luminance
+ * directly rather than on an InputImage.
+ * <p>
+ * Only the fields of the crop are read, not its methods, so that planes also work in unit tests and benchmarks on the
+ * JVM, where android.jar only has stubs.
+ */
+class LumaPlane {
+    final ByteBuffer buffer;
+    final int rowStride;
+    final int pixelStride;
+    /** part of the plane to detect in, in frame buffer pixels. */
+    final Rect crop;
+    /** clockwise rotation (0, 90, 180 or 270) that makes the frame upright. */
+    final int rotation;
+
+    LumaPlane(ByteBuffer buffer, int rowStride, int pixelStride, Rect crop, int rotation) {
+        this.buffer = buffer;
+        this.rowStride = rowStride;
+        this.pixelStride = pixelStride;
+        this.crop = crop;
+        this.rotation = rotation;
+    }
+
+    int uprightWidth() {
+        return rotation % 180 == 0 ? cropWidth() : cropHeight();
+    }
+
+    int uprightHeight() {
+        return rotation % 180 == 0 ? cropHeight() : cropWidth();
+    }
+
+    private int cropWidth() {
+        return crop.right - crop.left;
+    }
+
+    private int cropHeight() {
+        return crop.bottom - crop.top;
+    }
+
+    /**
+     * Copies the crop into out, rotated so that it is upright, as uprightHeight() rows of uprightWidth() bytes.
+     * Results detected in it are then in the same coordinates as those of an InputImage with the frame's rotation.
+     */
+    void copyUpright(byte[] out) {
+        final int width = cropWidth(), height = cropHeight();
+        final ByteBuffer source = buffer.duplicate();
+        if(rotation == 0 && pixelStride == 1) {
+            for(int y = 0; y < height; ++y) {
+                source.position((crop.top + y) * rowStride + crop.left);
+                source.get(out, y * width, width);
+            }
+            return;
+        }
+        for(int y = 0; y < height; ++y) {
+            final int rowStart = (crop.top + y) * rowStride + crop.left * pixelStride;
+            for(int x = 0; x < width; ++x) {
+                final byte value = source.get(rowStart + x * pixelStride);
+                switch(rotation) {
+                    case 90:
+                        out[x * height + (height - 1 - y)] = value;
+                        break;
+                    case 180:
+                        out[(height - 1 - y) * width + (width - 1 - x)] = value;
+                        break;
+                    case 270:
+                        out[(width - 1 - x) * height + y] = value;
+                        break;
+                    default:
+                        out[y * width + x] = value;
+                }
+            }
+        }
+    }
+}
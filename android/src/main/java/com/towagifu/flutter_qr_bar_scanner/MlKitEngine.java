@@ -0,0 +1,53 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.graphics.Point;
+
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+/**
+ * Detects with an ML Kit client taken from DetectorClients, which is given back when the engine is closed.
+ */
+class MlKitEngine implements DetectionEngine {
+    private final List<String> formats;
+    private final BarcodeScanner client;
+
+    MlKitEngine(List<String> formats) {
+        this.formats = formats;
+        this.client = DetectorClients.take(formats);
+    }
+
+    @Override
+    public void detect(final QrDetector.Frame frame, Executor executor, final Callback callback) {
+        client.process(frame.toImage()).addOnCompleteListener(executor, task -> {
+            if(task.isSuccessful()) {
+                final Point offset = frame.getOffset();
+                final List<Barcode> barcodes = task.getResult();
+                final List<QrBarcode> results = new ArrayList<>(barcodes.size());
+                for(Barcode barcode : barcodes) {
+                    results.add(new QrBarcode(barcode, offset, frame.getScale()));
+                }
+                callback.onDetected(results);
+            } else if(task.isCanceled()) {
+                callback.onFailed(new CancellationException("Barcode Reading Canceled"));
+            } else {
+                callback.onFailed(task.getException());
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        DetectorClients.give(formats, client);
+    }
+
+    @Override
+    public void discard() {
+        client.close();
+    }
+}
@@ -0,0 +1,69 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Estimates how much the picture changes from frame to frame, as the mean absolute difference (0-255) of a coarse
+ * grid of luma samples inside the crop detection runs on, compared with the samples of the previous frame.
+ * <p>
+ * The camera measures each frame once, and the FrameRateGovernor (which wakes up from idle on motion) and the
+ * FrameQualityGate (which skips frames while the camera moves) each compare the same measurement with a threshold of
+ * their own.
+ * <p>
+ * Only used from the analysis thread.
+ */
+class MotionEstimator {
+    /** measure() result for a frame there is no previous frame in the same crop to compare with. */
+    static final float UNKNOWN = -1;
+
+    private static final int GRID_COLUMNS = 32;
+    private static final int GRID_ROWS = 24;
+
+    private int[] previousSample = new int[GRID_COLUMNS * GRID_ROWS];
+    private int[] sample = new int[GRID_COLUMNS * GRID_ROWS];
+    private boolean hasPreviousSample;
+    /* crop the previous sample was taken in */
+    private int previousLeft;
+    private int previousTop;
+    private int previousRight;
+    private int previousBottom;
+
+    /**
+     * @return the mean absolute luma difference from the previous frame measured, or UNKNOWN.
+     */
+    float measure(LumaPlane luma) {
+        final Rect crop = luma.crop;
+        final ByteBuffer y = luma.buffer;
+        final int rowStride = luma.rowStride, pixelStride = luma.pixelStride;
+        final int width = crop.right - crop.left, height = crop.bottom - crop.top;
+        if(width <= 0 || height <= 0) {
+            return UNKNOWN;
+        }
+
+        long difference = 0;
+        int i = 0;
+        for(int row = 0; row < GRID_ROWS; ++row) {
+            final int rowStart = (crop.top + (2 * row + 1) * height / (2 * GRID_ROWS)) * rowStride;
+            for(int col = 0; col < GRID_COLUMNS; ++col, ++i) {
+                final int x = crop.left + (2 * col + 1) * width / (2 * GRID_COLUMNS);
+                sample[i] = y.get(rowStart + x * pixelStride) & 0xFF;
+                difference += Math.abs(sample[i] - previousSample[i]);
+            }
+        }
+
+        int[] swap = previousSample;
+        previousSample = sample;
+        sample = swap;
+
+        final boolean comparable = hasPreviousSample && previousLeft == crop.left && previousTop == crop.top
+            && previousRight == crop.right && previousBottom == crop.bottom;
+        hasPreviousSample = true;
+        previousLeft = crop.left;
+        previousTop = crop.top;
+        previousRight = crop.right;
+        previousBottom = crop.bottom;
+        return comparable ? (float)difference / (GRID_COLUMNS * GRID_ROWS) : UNKNOWN;
+    }
+}
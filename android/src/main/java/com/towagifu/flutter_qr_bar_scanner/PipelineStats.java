@@ -0,0 +1,168 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Counters and latency histograms for one reading session, from frames arriving at the ImageReader to results being
+ * dispatched to Flutter on the main thread. Everything here may be updated from any thread without locking.
+ * <p>
+ * Stages:
+ * <ul>
+ * <li>queue: frame handed to the detector until its detection starts</li>
+ * <li>detection: detection start until ML Kit completes</li>
+ * <li>dispatch: ML Kit completion until the results are delivered on the main thread</li>
+ * <li>total: frame handed to the detector until its results are delivered</li>
+ * </ul>
+ * Work done outside of those stages is timed separately:
+ * <ul>
+ * <li>copy: copying a frame into a pooled buffer (only with frame buffers), on the analysis thread</li>
+ * <li>encode: encoding the results of a frame for the results channel, on the main thread</li>
+ * </ul>
+ */
+class PipelineStats {
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesBlurred = new AtomicLong();
+    private final AtomicLong framesMoving = new AtomicLong();
+    private final AtomicLong framesAnalysed = new AtomicLong();
+    private final AtomicLong framesWithResults = new AtomicLong();
+    private final AtomicLong startedNs = new AtomicLong();
+    private final AtomicLong firstScanNs = new AtomicLong(-1);
+    /** when the camera last delivered a frame (analysed or not), for the watchdog. */
+    private volatile long lastFrameNs;
+
+    final LatencyHistogram queue = new LatencyHistogram();
+    final LatencyHistogram detection = new LatencyHistogram();
+    final LatencyHistogram dispatch = new LatencyHistogram();
+    final LatencyHistogram total = new LatencyHistogram();
+    final LatencyHistogram copy = new LatencyHistogram();
+    final LatencyHistogram encode = new LatencyHistogram();
+
+    /*
+     * Timestamps of the detection whose results are currently being passed down the callbacks. Only one detection
+     * completes at a time (see QrDetector), and results are passed down synchronously, so these are read by
+     * dispatchOn() (and BarcodeTracker) in the same call that set them.
+     */
+    private volatile long completedQueuedNs;
+    private volatile long completedNs;
+
+    static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    void started() {
+        startedNs.set(now());
+        firstScanNs.set(-1);
+    }
+
+    /**
+     * The camera delivered a frame, whether or not it is going to be analysed.
+     */
+    void frameArrived() {
+        lastFrameNs = now();
+    }
+
+    long lastFrameNs() {
+        return lastFrameNs;
+    }
+
+    void frameReceived() {
+        framesReceived.incrementAndGet();
+    }
+
+    /**
+     * A frame was not analysed, because it was skipped, replaced by a newer frame or could not be converted.
+     */
+    void frameDropped() {
+        framesDropped.incrementAndGet();
+    }
+
+    /**
+     * A frame was not analysed because FrameQualityGate found it blurred.
+     */
+    void frameBlurred() {
+        framesBlurred.incrementAndGet();
+    }
+
+    /**
+     * A frame was not analysed because FrameQualityGate found the camera moving.
+     */
+    void frameMoving() {
+        framesMoving.incrementAndGet();
+    }
+
+    void detectionStarted(long queuedNs, long startedNs) {
+        queue.recordNanos(startedNs - queuedNs);
+    }
+
+    void detectionCompleted(long queuedNs, long startedNs) {
+        final long now = now();
+        framesAnalysed.incrementAndGet();
+        detection.recordNanos(now - startedNs);
+        completedQueuedNs = queuedNs;
+        completedNs = now;
+    }
+
+    /**
+     * @return when the frame of the detection whose results are being passed down was handed to the detector. Only
+     * valid while the results are passed down.
+     */
+    long completedFrameNs() {
+        return completedQueuedNs;
+    }
+
+    /**
+     * @return callbacks that deliver results to downstream on the thread of handler, recording dispatch latency.
+     */
+    QrReaderCallbacks dispatchOn(final Handler handler, final QrReaderCallbacks downstream) {
+        return data -> {
+            final long queuedNs = completedQueuedNs;
+            final long completed = completedNs;
+            final List<QrBarcode> results = data.collect(Collectors.toCollection(ArrayList::new));
+            handler.post(() -> {
+                final long now = now();
+                dispatch.recordNanos(now - completed);
+                total.recordNanos(now - queuedNs);
+                if(!results.isEmpty()) {
+                    framesWithResults.incrementAndGet();
+                    firstScanNs.compareAndSet(-1, now);
+                }
+                downstream.qrRead(results.stream());
+            });
+        };
+    }
+
+    /**
+     * @return the stats for the channel. Durations are in milliseconds.
+     */
+    Map<String, Object> toMap() {
+        final long now = now();
+        final long started = startedNs.get();
+        final long firstScan = firstScanNs.get();
+
+        Map<String, Object> ret = new HashMap<>();
+        ret.put("framesReceived", framesReceived.get());
+        ret.put("framesDropped", framesDropped.get());
+        ret.put("framesBlurred", framesBlurred.get());
+        ret.put("framesMoving", framesMoving.get());
+        ret.put("framesAnalysed", framesAnalysed.get());
+        ret.put("framesWithResults", framesWithResults.get());
+        ret.put("uptimeMs", started == 0 ? 0.0 : (now - started) / 1e6);
+        ret.put("timeToFirstScanMs", firstScan < 0 || started == 0 ? null : (firstScan - started) / 1e6);
+        ret.put("queue", queue.toMap());
+        ret.put("detection", detection.toMap());
+        ret.put("dispatch", dispatch.toMap());
+        ret.put("total", total.toMap());
+        ret.put("copy", copy.toMap());
+        ret.put("encode", encode.toMap());
+        return ret;
+    }
+}
@@ -0,0 +1,144 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+/**
+ * A camera opened ahead of time, on its own camera thread, so that a reader started later does not have to wait for
+ * the camera to open. The reader adopts both the camera and the thread; if no reader does, release() closes them.
+ * <p>
+ * Everything except open() and release() must be called on the camera thread.
+ */
+@TargetApi(21)
+@RequiresApi(21)
+class PrewarmedCamera {
+    private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX
+        + PrewarmedCamera.class.getSimpleName();
+
+    final CameraOrientation orientation;
+    final HandlerThread thread;
+    private final Handler handler;
+
+    private CameraDevice device;
+    private boolean failed;
+    private CameraDevice.StateCallback adopter;
+    private boolean released;
+
+    private final CameraDevice.StateCallback callback = new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(@NonNull CameraDevice openedDevice) {
+            if(released) {
+                openedDevice.close();
+            } else if(adopter != null) {
+                adopter.onOpened(openedDevice);
+            } else {
+                device = openedDevice;
+            }
+        }
+
+        @Override
+        public void onDisconnected(@NonNull CameraDevice disconnectedDevice) {
+            if(adopter != null) {
+                adopter.onDisconnected(disconnectedDevice);
+            } else {
+                Log.i(TAG, "Prewarmed camera disconnected.");
+                fail(disconnectedDevice);
+            }
+        }
+
+        @Override
+        public void onError(@NonNull CameraDevice errorDevice, int error) {
+            if(adopter != null) {
+                adopter.onError(errorDevice, error);
+            } else {
+                Log.w(TAG, "Error opening prewarmed camera: " + error);
+                fail(errorDevice);
+            }
+        }
+    };
+
+    private PrewarmedCamera(CameraOrientation orientation) {
+        this.orientation = orientation;
+        this.thread = new HandlerThread("QrCamera", Process.THREAD_PRIORITY_DISPLAY);
+        this.thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Starts opening the camera. Camera permission must have been granted.
+     */
+    @SuppressLint("MissingPermission")
+    static PrewarmedCamera open(CameraManager manager, String cameraId, CameraOrientation orientation)
+        throws CameraAccessException
+    {
+        PrewarmedCamera camera = new PrewarmedCamera(orientation);
+        try {
+            manager.openCamera(cameraId, camera.callback, camera.handler);
+        } catch(CameraAccessException | RuntimeException e) {
+            camera.thread.quitSafely();
+            throw e;
+        }
+        return camera;
+    }
+
+    private void fail(CameraDevice failedDevice) {
+        failedDevice.close();
+        device = null;
+        failed = true;
+    }
+
+    /**
+     * Hands the camera over. state receives the opened camera on the camera thread, immediately if it is open
+     * already, and all later state changes. The caller becomes responsible for the camera thread.
+     *
+     * @return false if the camera could not be opened, in which case state is not called and the caller should open
+     * the camera itself (the camera thread may still be used).
+     */
+    boolean adopt(final CameraDevice.StateCallback state) {
+        if(failed || released) {
+            return false;
+        }
+        adopter = state;
+        if(device != null) {
+            state.onOpened(device);
+            device = null;
+        }
+        return true;
+    }
+
+    /**
+     * Closes the camera unless it has been adopted. Must be called on the camera thread.
+     */
+    void close() {
+        if(adopter != null) {
+            return;
+        }
+        released = true;
+        if(device != null) {
+            device.close();
+            device = null;
+        }
+    }
+
+    /**
+     * Closes the camera and its thread, unless the camera has been adopted.
+     */
+    void release() {
+        handler.post(() -> {
+            if(adopter == null) {
+                close();
+                thread.quitSafely();
+            }
+        });
+    }
+}
@@ -1,49 +1,85 @@
 package com.towagifu.flutter_qr_bar_scanner;
 
+import android.graphics.Point;
 import android.graphics.Rect;
 import com.google.mlkit.vision.barcode.common.Barcode;
-import java.util.HashMap;
-import java.util.Map;
 
 public class QrBarcode {
-    private final Barcode _barcode;
+    private final String _content;
+    private final byte[] _bytes;
+    private final Rect _boundingBox;
+    private final int _format;
+    private final Point _offset;
+    private final int _scale;
 
     public QrBarcode(Barcode barcode) {
-        _barcode = barcode;
+        this(barcode, null);
+    }
+
+    /**
+     * @param offset - offset of the detected image within the full frame, or null if the full frame was used.
+     */
+    public QrBarcode(Barcode barcode, Point offset) {
+        this(barcode, offset, 1);
+    }
+
+    /**
+     * @param offset - offset of the detected image within the full frame, or null if the full frame was used.
+     * @param scale  - how many times smaller than the full frame the detected image was.
+     */
+    public QrBarcode(Barcode barcode, Point offset, int scale) {
+        this(
+            barcode.getRawValue(), barcode.getRawBytes(), barcode.getBoundingBox(), barcode.getFormat(), offset,
+            scale
+        );
+    }
+
+    /**
+     * @param formatValue - ML Kit format value.
+     * @param boundingBox - bounding box in the detected image, or null if unknown.
+     * @param offset      - offset of the detected image within the full frame, or null if the full frame was used.
+     * @param scale       - how many times smaller than the full frame the detected image was.
+     */
+    QrBarcode(String content, byte[] bytes, Rect boundingBox, int formatValue, Point offset, int scale) {
+        _content = content;
+        _bytes = bytes;
+        _boundingBox = boundingBox;
+        _format = formatValue;
+        _offset = offset;
+        _scale = scale;
     }
 
     public String getContent() {
-        return _barcode.getRawValue();
+        return _content;
     }
 
     public byte[] getBytes() {
-        return _barcode.getRawBytes();
+        return _bytes;
     }
 
+    /**
+     * @return bounding box in full frame coordinates.
+     */
     public Rect getBoundingBox() {
-        return _barcode.getBoundingBox();
+        Rect bb = _boundingBox;
+        if(bb == null || ((_offset == null || (_offset.x == 0 && _offset.y == 0)) && _scale == 1)) {
+            return bb;
+        }
+        Rect ret = new Rect(bb.left * _scale, bb.top * _scale, bb.right * _scale, bb.bottom * _scale);
+        if(_offset != null) {
+            ret.offset(_offset.x, _offset.y);
+        }
+        return ret;
     }
 
     public BarcodeFormats getFormat() {
-        return BarcodeFormats.getFromValue(_barcode.getFormat());
+        return BarcodeFormats.getFromValue(_format);
     }
 
-    public Map<String, Object> getForChannel() {
-        Map<String, Object> ret = new HashMap<>();
-
-        ret.put("content", getContent());
-        ret.put("bytes", getBytes());
-        ret.put("format", getFormat().name());
-
-        Map<String, Integer> boundingBox = new HashMap<>();
-        Rect bb = getBoundingBox();
-        boundingBox.put("bottom", bb.bottom);
-        boundingBox.put("left", bb.left);
-        boundingBox.put("right", bb.right);
-        boundingBox.put("top", bb.top);
-
-        ret.put("bounds", boundingBox);
-
-        return ret;
+    /**
+     * @return the ML Kit format value, which may not correspond to any BarcodeFormats value (e.g. unknown format).
+     */
+    public int getFormatValue() {
+        return _format;
     }
 }
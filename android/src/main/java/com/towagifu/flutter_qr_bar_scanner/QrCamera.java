@@ -3,8 +3,30 @@ package com.towagifu.flutter_qr_bar_scanner;
 interface QrCamera {
     void start(CameraOrientation orientation) throws QrReader.Exception;
     void setTorchState(boolean isOn);
+    void setScanRegion(ScanRegion region);
+    void setZoom(float zoom);
+    float getMaxZoom();
+    void refocus();
+    void pause();
+    void releaseCamera();
+    void resume();
     void stop();
+
+    /**
+     * Closes and opens the camera again, to recover from a stall.
+     *
+     * @param newFrames - also replace whatever frames are delivered through, so that frames which are held do not
+     * keep the camera from delivering more. Held frames stay valid until they are closed.
+     */
+    void restart(boolean newFrames);
+
+    /**
+     * @return true if every frame the camera can deliver is held, so that it cannot deliver more.
+     */
+    boolean imagesExhausted();
     int getOrientation();
     int getWidth();
     int getHeight();
+    int getAnalysisWidth();
+    int getAnalysisHeight();
 }
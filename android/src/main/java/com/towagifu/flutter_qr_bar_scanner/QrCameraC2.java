@@ -1,8 +1,11 @@
 package com.towagifu.flutter_qr_bar_scanner;
 
+import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
@@ -13,10 +16,11 @@ import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.TotalCaptureResult;
 import android.hardware.camera2.params.OutputConfiguration;
-import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.Image;
 import android.media.ImageReader;
+import android.os.Handler;
 import android.util.Log;
+import android.util.Range;
 import android.util.Size;
 import android.util.SparseIntArray;
 import android.view.Surface;
@@ -27,18 +31,10 @@ import androidx.annotation.RequiresApi;
 
 import com.google.mlkit.vision.common.InputImage;
 
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
-import java.util.NoSuchElementException;
-
-import static android.hardware.camera2.CameraMetadata.CONTROL_AF_MODE_AUTO;
-import static android.hardware.camera2.CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE;
-import static android.hardware.camera2.CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_VIDEO;
-import static android.hardware.camera2.CameraMetadata.LENS_FACING_FRONT;
-import static android.hardware.camera2.CameraMetadata.LENS_FACING_BACK;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Implements QrCamera using Camera2 API
@@ -48,6 +44,8 @@ import static android.hardware.camera2.CameraMetadata.LENS_FACING_BACK;
 class QrCameraC2 implements QrCamera {
     private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX + QrCameraC2.class.getSimpleName();
     private static final SparseIntArray ORIENTATIONS = new SparseIntArray();
+    /** how long focus stays locked after a refocus before continuous autofocus takes over again. */
+    private static final long REFOCUS_HOLD_MS = 2000;
 
     static {
         ORIENTATIONS.append(Surface.ROTATION_0, 90);
@@ -60,26 +58,106 @@ class QrCameraC2 implements QrCamera {
     private final int targetHeight;
     private final Context context;
     private final SurfaceTexture texture;
+    private final Handler cameraHandler;
+    private final Handler analysisHandler;
+    private final AnalysisResolution analysisResolution;
+    private final FrameBufferPool.Options bufferOptions;
+    /** buffers frames are copied into, or null when detecting on the Images directly. */
+    private FrameBufferPool buffers;
+    /** dumps received frames, or null when not recording. */
+    private final FrameRecorder recorder;
+    private final CameraControl.Options controlOptions;
+    /** created in start(), then confined to the camera thread. */
+    private CameraControl control;
+    private Integer afMode;
+    private final AutoTorch autoTorch;
+    private final Runnable resumeContinuousAf = () -> triggerAf(CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
     private Size size;
-    private ImageReader reader;
+    private Size analysisSize;
+    /** the reader frames are analysed from, along with the count of its images that are open. */
+    private volatile ImageReaders.Lease reader;
     private CaptureRequest.Builder previewBuilder;
     private CameraCaptureSession previewSession;
-    private Size[] jpegSizes = null;
     private QrDetector detector;
+    private final FrameRateGovernor governor;
+    /** null unless frames are gated on their quality. */
+    private final FrameQualityGate gate;
+    /** measures the motion of frames once for both the governor and the gate. Used on the analysis thread. */
+    private final MotionEstimator motionEstimator = new MotionEstimator();
+    private final PipelineStats stats;
     private int sensorOrientation;
     private CameraDevice cameraDevice;
     private CameraCharacteristics cameraCharacteristics;
-    private Frame latestFrame;
+
+    private volatile ScanRegion scanRegion;
+    /** while true the repeating request is stopped, and frames still in the reader are dropped. */
+    private volatile boolean paused;
 
     private boolean canToggleTorch;
     private boolean torchIsOn;
 
-    QrCameraC2(int width, int height, SurfaceTexture texture, Context context, QrDetector detector) {
-        this.targetWidth = width;
-        this.targetHeight = height;
+    private final PrewarmedCamera prewarmed;
+    private CameraManager manager;
+    private String cameraId;
+    /*
+     * The following are confined to the camera thread. stopped is set once stop() has run, and cameraReleased while
+     * the camera is released by releaseCamera(), so that a camera opening after either is closed straight away.
+     */
+    private boolean stopped;
+    private boolean cameraReleased;
+    private boolean opening;
+
+    private final CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(@NonNull CameraDevice device) {
+            opening = false;
+            if(stopped || cameraReleased) {
+                device.close();
+                return;
+            }
+            cameraDevice = device;
+            startCamera();
+        }
+
+        @Override
+        public void onDisconnected(@NonNull CameraDevice device) {
+            Log.i(TAG, "Camera disconnected.");
+            opening = false;
+            forget(device);
+        }
+
+        @Override
+        public void onError(@NonNull CameraDevice device, int error) {
+            Log.w(TAG, "Error opening camera: " + error);
+            opening = false;
+            forget(device);
+        }
+    };
+
+    /**
+     * @param config - sizes, frame buffers, recording, camera control and auto torch settings. The rest is used by the
+     *               QrReader.
+     */
+    QrCameraC2(
+        QrReaderConfig config, SurfaceTexture texture, Context context, QrDetector detector, FrameRateGovernor governor,
+        FrameQualityGate gate, PipelineStats stats, QrReaderThreads threads, PrewarmedCamera prewarmed
+    ) {
+        this.targetWidth = config.targetWidth;
+        this.targetHeight = config.targetHeight;
+        this.analysisResolution = config.analysisResolution;
+        this.bufferOptions = config.buffers;
+        this.recorder = config.recording == null ? null : new FrameRecorder(config.recording);
+        this.controlOptions = config.control;
+        this.autoTorch = new AutoTorch(config.autoTorch);
         this.context = context;
         this.texture = texture;
         this.detector = detector;
+        this.governor = governor;
+        this.gate = gate;
+        this.stats = stats;
+        this.cameraHandler = threads.cameraHandler;
+        this.analysisHandler = threads.analysisHandler;
+        this.prewarmed = prewarmed;
         this.canToggleTorch = false;
         this.torchIsOn = false;
     }
@@ -94,6 +172,16 @@ class QrCameraC2 implements QrCamera {
         return size.getHeight();
     }
 
+    @Override
+    public int getAnalysisWidth() {
+        return analysisSize.getWidth();
+    }
+
+    @Override
+    public int getAnalysisHeight() {
+        return analysisSize.getHeight();
+    }
+
     @Override
     public int getOrientation() {
         // ignore sensor orientation of devices with 'reverse landscape' orientation of
@@ -129,129 +217,312 @@ class QrCameraC2 implements QrCamera {
 
     @Override
     public void start(final CameraOrientation orientation) throws QrReader.Exception {
-        CameraManager manager = (CameraManager)context.getSystemService(Context.CAMERA_SERVICE);
+        final CameraManager manager = (CameraManager)context.getSystemService(Context.CAMERA_SERVICE);
 
         if(manager == null) {
             throw new RuntimeException("Unable to get camera manager.");
         }
 
-        String cameraId = null;
+        final CameraInfoCache.CameraInfo camera;
         try {
-            String[] cameraIdList = manager.getCameraIdList();
-            final int requestedFacing = getLensFacing(orientation);
-            for(String id : cameraIdList) {
-                CameraCharacteristics cameraCharacteristics = manager.getCameraCharacteristics(id);
-                Integer lensFacing = cameraCharacteristics.get(CameraCharacteristics.LENS_FACING);
-                if(lensFacing != null && lensFacing == requestedFacing) {
-                    cameraId = id;
-                    break;
-                }
-            }
+            camera = CameraInfoCache.get(manager, orientation);
         } catch(CameraAccessException e) {
             Log.w(TAG, "Error getting camera: " + orientation.name(), e);
             throw new RuntimeException(e);
         }
 
-        if(cameraId == null) {
+        if(camera == null) {
             throw new QrReader.Exception(QrReader.Exception.Reason.noMatchingCamera);
         }
 
-        try {
-            cameraCharacteristics = manager.getCameraCharacteristics(cameraId);
-            StreamConfigurationMap map = cameraCharacteristics
-                .get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-            Integer sensorOrientationInteger = cameraCharacteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
-            sensorOrientation = sensorOrientationInteger == null ? 0 : sensorOrientationInteger;
-
-            canToggleTorch = cameraCharacteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
-
-            size = getAppropriateSize(map.getOutputSizes(SurfaceTexture.class));
-            jpegSizes = map.getOutputSizes(ImageFormat.JPEG);
-
-            manager.openCamera(cameraId, new CameraDevice.StateCallback() {
-                @Override
-                public void onOpened(@NonNull CameraDevice device) {
-                    cameraDevice = device;
-                    startCamera();
-                }
-
-                @Override
-                public void onDisconnected(@NonNull CameraDevice device) {
-                }
+        cameraCharacteristics = camera.characteristics;
+        control = new CameraControl(controlOptions, cameraCharacteristics);
+        sensorOrientation = camera.sensorOrientation;
+        canToggleTorch = camera.hasFlash;
+
+        size = camera.selectSize(
+            "preview:" + targetWidth + "x" + targetHeight,
+            key -> camera.previewSizes[CameraSizes.preview(
+                dimensions(camera.previewSizes), sensorOrientation, targetWidth, targetHeight
+            )]
+        );
+        analysisSize = camera.selectSize(
+            "analysis:" + analysisResolution.width + "x" + analysisResolution.height + "/"
+                + analysisResolution.maxPixels + "/" + size,
+            key -> camera.analysisSizes[CameraSizes.analysis(
+                dimensions(camera.analysisSizes), sensorOrientation, analysisResolution, size.getWidth(),
+                size.getHeight()
+            )]
+        );
+        if(bufferOptions.mode != FrameBufferPool.Mode.IMAGE) {
+            buffers = new FrameBufferPool(bufferOptions, analysisSize.getWidth(), analysisSize.getHeight());
+        }
 
-                @Override
-                public void onError(@NonNull CameraDevice device, int error) {
-                    Log.w(TAG, "Error opening camera: " + error);
+        this.manager = manager;
+        this.cameraId = camera.cameraId;
+        cameraHandler.post(() -> {
+            if(stopped) {
+                return;
+            }
+            if(prewarmed != null && prewarmed.adopt(stateCallback)) {
+                opening = true;
+            } else {
+                if(prewarmed != null) {
+                    Log.i(TAG, "Prewarmed camera failed, opening it again.");
                 }
-            }, null);
-        } catch(CameraAccessException e) {
-            Log.w(TAG, "Error getting camera configuration.", e);
-        }
+                openCamera();
+            }
+        });
     }
 
-    private Integer afMode(CameraCharacteristics cameraCharacteristics) {
-        int[] afModes = cameraCharacteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
-
-        if(afModes == null) {
-            return null;
-        }
-
-        HashSet<Integer> modes = new HashSet<>(afModes.length * 2);
-        for(int afMode : afModes) {
-            modes.add(afMode);
+    @SuppressLint("MissingPermission")
+    private void openCamera() {
+        try {
+            opening = true;
+            manager.openCamera(cameraId, stateCallback, cameraHandler);
+        } catch(CameraAccessException | RuntimeException e) {
+            opening = false;
+            Log.w(TAG, "Error opening camera.", e);
         }
+    }
 
-        if(modes.contains(CONTROL_AF_MODE_CONTINUOUS_VIDEO)) {
-            return CONTROL_AF_MODE_CONTINUOUS_VIDEO;
-        } else if(modes.contains(CONTROL_AF_MODE_CONTINUOUS_PICTURE)) {
-            return CONTROL_AF_MODE_CONTINUOUS_PICTURE;
-        } else if(modes.contains(CONTROL_AF_MODE_AUTO)) {
-            return CONTROL_AF_MODE_AUTO;
-        } else {
-            return null;
+    private void closeCamera() {
+        if(cameraDevice != null) {
+            cameraDevice.close();
+            cameraDevice = null;
         }
+        previewSession = null;
     }
 
-    private static int getLensFacing(CameraOrientation orientation) {
-        switch(orientation) {
-            case AWAY_FROM_USER:
-                return LENS_FACING_BACK;
-            case TOWARDS_USER:
-                return LENS_FACING_FRONT;
-            default:
-                throw new NoSuchElementException(orientation.name());
+    /**
+     * Closes a device that has been disconnected or failed, so that resume() opens the camera again.
+     */
+    private void forget(CameraDevice device) {
+        device.close();
+        if(cameraDevice == device) {
+            cameraDevice = null;
+            previewSession = null;
         }
     }
 
     static class Frame implements QrDetector.Frame {
+        private static final Point NO_OFFSET = new Point(0, 0);
+
         final Image image;
         final int firebaseOrientation;
-
-        Frame(Image image, int firebaseOrientation) {
+        final ScanRegion region;
+        private final ImageReaders.Lease lease;
+        private final AtomicBoolean imageClosed = new AtomicBoolean();
+        private Point offset = NO_OFFSET;
+
+        /**
+         * @param lease - the reader the image was acquired from, which is told when the image is closed.
+         */
+        Frame(Image image, int firebaseOrientation, ScanRegion region, ImageReaders.Lease lease) {
             this.image = image;
             this.firebaseOrientation = firebaseOrientation;
+            this.region = region;
+            this.lease = lease;
+        }
+
+        private void closeImage() {
+            if(!imageClosed.getAndSet(true)) {
+                image.close();
+                lease.imageClosed();
+            }
         }
 
         @Override
         public InputImage toImage() {
-            return InputImage.fromMediaImage(image, firebaseOrientation);
+            final int width = image.getWidth(), height = image.getHeight();
+            Rect crop = region == null ? null : region.cropFor(width, height, firebaseOrientation);
+            if(crop == null) {
+                offset = NO_OFFSET;
+                return InputImage.fromMediaImage(image, firebaseOrientation);
+            }
+
+            offset = ScanRegion.uprightOffset(crop, width, height, firebaseOrientation);
+            byte[] nv21 = new byte[crop.width() * crop.height() * 3 / 2];
+            copyToNv21(image, crop, ByteBuffer.wrap(nv21), true);
+            // the crop is a copy, so the image can go back to the reader now rather than after detection.
+            closeImage();
+            return InputImage.fromByteArray(
+                nv21, crop.width(), crop.height(), firebaseOrientation, InputImage.IMAGE_FORMAT_NV21
+            );
+        }
+
+        @Override
+        public LumaPlane toLuma() {
+            final int width = image.getWidth(), height = image.getHeight();
+            Rect crop = region == null ? null : region.cropFor(width, height, firebaseOrientation);
+            if(crop == null) {
+                crop = new Rect(0, 0, width, height);
+                offset = NO_OFFSET;
+            } else {
+                offset = ScanRegion.uprightOffset(crop, width, height, firebaseOrientation);
+            }
+            final Image.Plane plane = image.getPlanes()[0];
+            return new LumaPlane(
+                plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(), crop, firebaseOrientation
+            );
+        }
+
+        @Override
+        public Point getOffset() {
+            return offset;
+        }
+
+        /**
+         * Copies the part of a YUV_420_888 image inside crop (which must have even edges) into out, in NV21 layout
+         * starting at position 0.
+         *
+         * @param chroma - whether to copy the chroma planes too, or only the luma plane.
+         */
+        static void copyToNv21(Image image, Rect crop, ByteBuffer out, boolean chroma) {
+            final int width = crop.width(), height = crop.height();
+            final Image.Plane[] planes = image.getPlanes();
+            out.clear();
+
+            final ByteBuffer yBuffer = planes[0].getBuffer().duplicate();
+            final int yRowStride = planes[0].getRowStride();
+            final int yPixelStride = planes[0].getPixelStride();
+            if(yPixelStride == 1 && yRowStride == width && crop.left == 0 && crop.top == 0) {
+                // rows are contiguous: copy the plane in one go
+                yBuffer.clear();
+                yBuffer.limit(width * height);
+                out.put(yBuffer);
+            } else {
+                for(int row = crop.top; row < crop.bottom; ++row) {
+                    final int rowStart = row * yRowStride + crop.left * yPixelStride;
+                    if(yPixelStride == 1) {
+                        yBuffer.clear();
+                        yBuffer.position(rowStart);
+                        yBuffer.limit(rowStart + width);
+                        out.put(yBuffer);
+                    } else {
+                        for(int col = 0; col < width; ++col) {
+                            out.put(yBuffer.get(rowStart + col * yPixelStride));
+                        }
+                    }
+                }
+            }
+            if(!chroma) {
+                return;
+            }
+
+            final ByteBuffer uBuffer = planes[1].getBuffer();
+            final ByteBuffer vBuffer = planes[2].getBuffer();
+            final int uvRowStride = planes[1].getRowStride();
+            final int uvPixelStride = planes[1].getPixelStride();
+            for(int row = crop.top / 2; row < crop.bottom / 2; ++row) {
+                final int rowStart = row * uvRowStride + (crop.left / 2) * uvPixelStride;
+                for(int col = 0; col < width / 2; ++col) {
+                    final int index = rowStart + col * uvPixelStride;
+                    out.put(vBuffer.get(index));
+                    out.put(uBuffer.get(index));
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            closeImage();
+        }
+    }
+
+    /**
+     * A frame copied into a pooled buffer, so that its Image has already gone back to the reader.
+     */
+    static class PooledFrame implements QrDetector.Frame {
+        private final FrameBufferPool pool;
+        private final FrameBufferPool.Buffer buffer;
+        private final int width;
+        private final int height;
+        private final int firebaseOrientation;
+        private final Point offset;
+
+        private PooledFrame(
+            FrameBufferPool pool, FrameBufferPool.Buffer buffer, int width, int height, int firebaseOrientation,
+            Point offset
+        ) {
+            this.pool = pool;
+            this.buffer = buffer;
+            this.width = width;
+            this.height = height;
+            this.firebaseOrientation = firebaseOrientation;
+            this.offset = offset;
+        }
+
+        /**
+         * Copies the part of image inside region into buffer and closes image.
+         */
+        static PooledFrame copy(
+            Image image, int firebaseOrientation, ScanRegion region, FrameBufferPool pool,
+            FrameBufferPool.Buffer buffer
+        ) {
+            try {
+                final int width = image.getWidth(), height = image.getHeight();
+                Rect crop = region == null ? null : region.cropFor(width, height, firebaseOrientation);
+                final Point offset;
+                if(crop == null) {
+                    crop = new Rect(0, 0, width & ~1, height & ~1);
+                    offset = Frame.NO_OFFSET;
+                } else {
+                    offset = ScanRegion.uprightOffset(crop, width, height, firebaseOrientation);
+                }
+                final boolean chroma = pool.mode != FrameBufferPool.Mode.LUMA;
+                if(!chroma) {
+                    buffer.fillNeutralChroma(crop.width(), crop.height());
+                }
+                Frame.copyToNv21(image, crop, buffer.data, chroma);
+                if(chroma) {
+                    buffer.chromaWritten();
+                }
+                return new PooledFrame(pool, buffer, crop.width(), crop.height(), firebaseOrientation, offset);
+            } catch(RuntimeException e) {
+                pool.release(buffer);
+                throw e;
+            } finally {
+                image.close();
+            }
+        }
+
+        @Override
+        public InputImage toImage() {
+            ByteBuffer data = buffer.data;
+            data.clear();
+            data.limit(width * height * 3 / 2);
+            return InputImage.fromByteBuffer(data, width, height, firebaseOrientation, InputImage.IMAGE_FORMAT_NV21);
+        }
+
+        @Override
+        public LumaPlane toLuma() {
+            return new LumaPlane(buffer.data, width, 1, new Rect(0, 0, width, height), firebaseOrientation);
+        }
+
+        @Override
+        public Point getOffset() {
+            return offset;
         }
 
         @Override
         public void close() {
-            image.close();
+            pool.release(buffer);
         }
     }
 
     private void startCamera() {
         List<OutputConfiguration> outputConfigs = new ArrayList<>();
+        autoTorch.reset();
 
-        Size jpegSize = getAppropriateSize(jpegSizes);
-
-        final int width = jpegSize.getWidth(), height = jpegSize.getHeight();
-        reader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, 5);
+        final int width = analysisSize.getWidth(), height = analysisSize.getHeight();
+        if(reader == null) {
+            // frames copied into pooled buffers are closed straight away, so the reader needs fewer of them
+            reader = ImageReaders.take(width, height, ImageFormat.YUV_420_888, buffers == null ? 5 : 3);
+        }
 
-        outputConfigs.add(new OutputConfiguration(reader.getSurface()));
+        outputConfigs.add(new OutputConfiguration(reader.reader.getSurface()));
+        final ImageReaders.Lease lease = reader;
 
         ImageReader.OnImageAvailableListener imageAvailableListener = new ImageReader.OnImageAvailableListener() {
             @Override
@@ -261,16 +532,56 @@ class QrCameraC2 implements QrCamera {
                     if(image == null) {
                         return;
                     }
-                    Log.d(TAG, "frame size: " + image.getWidth() + " x " + image.getHeight());
-                    latestFrame = new Frame(image, getFrameOrientation());
-                    detector.detect(latestFrame);
+                    stats.frameArrived();
+                    lease.imageAcquired();
+                    // closing the frame closes the image
+                    final Frame frame = new Frame(image, getFrameOrientation(), scanRegion, lease);
+                    if(paused || detector.isPaused()) {
+                        frame.close();
+                        return;
+                    }
+                    stats.frameReceived();
+                    if(recorder != null) {
+                        recorder.record(image, getFrameOrientation());
+                    }
+                    final boolean measureMotion = governor.watchesMotion() || (gate != null && gate.watchesMotion());
+                    final LumaPlane luma = gate != null || measureMotion ? frame.toLuma() : null;
+                    final float motion = measureMotion ? motionEstimator.measure(luma) : MotionEstimator.UNKNOWN;
+                    if(gate != null && !gate.shouldAnalyse(luma, motion)) {
+                        frame.close();
+                        return;
+                    }
+                    if(!governor.shouldAnalyse(motion)) {
+                        frame.close();
+                        stats.frameDropped();
+                        return;
+                    }
+                    if(buffers == null) {
+                        detector.detect(frame);
+                        return;
+                    }
+                    FrameBufferPool.Buffer buffer = buffers.acquire();
+                    if(buffer == null) {
+                        frame.close();
+                        stats.frameDropped();
+                        return;
+                    }
+                    final long copyStartNs = PipelineStats.now();
+                    final PooledFrame copy;
+                    try {
+                        copy = PooledFrame.copy(image, getFrameOrientation(), scanRegion, buffers, buffer);
+                    } finally {
+                        frame.close();
+                    }
+                    stats.copy.recordNanos(PipelineStats.now() - copyStartNs);
+                    detector.detect(copy);
                 } catch(Throwable t) {
                     t.printStackTrace();
                 }
             }
         };
 
-        reader.setOnImageAvailableListener(imageAvailableListener, null);
+        reader.reader.setOnImageAvailableListener(imageAvailableListener, analysisHandler);
 
         texture.setDefaultBufferSize(size.getWidth(), size.getHeight());
         outputConfigs.add(new OutputConfiguration(new Surface(texture)));
@@ -278,7 +589,7 @@ class QrCameraC2 implements QrCamera {
             previewBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
             outputConfigs.forEach((c) -> previewBuilder.addTarget(c.getSurface()));
 
-            Integer afMode = afMode(cameraCharacteristics);
+            afMode = control.afMode();
 
             previewBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
             previewBuilder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON);
@@ -286,6 +597,16 @@ class QrCameraC2 implements QrCamera {
                 previewBuilder.set(CaptureRequest.CONTROL_AF_MODE, afMode);
                 Log.i(TAG, "Setting af mode to: " + afMode);
             }
+            if(governor.options.cameraFps > 0) {
+                Range<Integer> fpsRange = FrameRateGovernor.selectFpsRange(
+                    cameraCharacteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES),
+                    governor.options.cameraFps
+                );
+                if(fpsRange != null) {
+                    previewBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+                    Log.i(TAG, "Setting ae target fps range to: " + fpsRange);
+                }
+            }
         } catch(java.lang.Exception e) {
             e.printStackTrace();
             return;
@@ -301,92 +622,246 @@ class QrCameraC2 implements QrCamera {
                         startPreview();
                     }
 
-                    @Override
-                    public void onReady(@NonNull CameraCaptureSession session) {
-                        startPreview();
-                    }
-
                     @Override
                     public void onConfigureFailed(@NonNull CameraCaptureSession session) {
                         System.out.println("### Configuration Fail ###");
                     }
                 },
-                null
+                cameraHandler
             );
         } catch(Throwable t) {
             t.printStackTrace();
         }
     }
 
+    /**
+     * Starts the repeating request, or replaces it with one reflecting the current settings (torch, zoom and
+     * metering). Replacing it does not stop the preview or frames for analysis.
+     */
     private void startPreview() {
-        if(cameraDevice == null) {
+        if(cameraDevice == null || previewSession == null || paused) {
             return;
         }
-        Log.d(TAG, "start preview (canToggleTorch: " + canToggleTorch + "): torchIsOn = " + torchIsOn);
+        Log.d(
+            TAG, "start preview (canToggleTorch: " + canToggleTorch + "): torchIsOn = " + torchIsOn + ", auto = "
+                + autoTorch.isOn()
+        );
         try {
+            control.apply(previewBuilder, scanRegion, getFrameOrientation());
             previewBuilder.set(
                 CaptureRequest.FLASH_MODE,
-                canToggleTorch && torchIsOn ? CameraMetadata.FLASH_MODE_TORCH : CameraMetadata.FLASH_MODE_OFF
-            );
-            previewSession.setRepeatingRequest(
-                previewBuilder.build(),
-                new CameraCaptureSession.CaptureCallback() {},
-                null
+                canToggleTorch && (torchIsOn || autoTorch.isOn())
+                    ? CameraMetadata.FLASH_MODE_TORCH : CameraMetadata.FLASH_MODE_OFF
             );
+            previewSession.setRepeatingRequest(previewBuilder.build(), captureCallback, cameraHandler);
         } catch(java.lang.Exception e) {
             e.printStackTrace();
         }
     }
 
+    private final CameraCaptureSession.CaptureCallback captureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(
+            @NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+            @NonNull TotalCaptureResult result
+        ) {
+            if(autoTorch.update(result)) {
+                Log.i(TAG, "auto torch: " + autoTorch.isOn());
+                if(!torchIsOn) {
+                    startPreview();
+                }
+            }
+        }
+    };
+
     @Override
-    public void setTorchState(boolean isOn) {
-        Log.i(TAG, "set torch requested (canToggle: " + canToggleTorch + "): " + torchIsOn + " => " + isOn);
-        if(canToggleTorch) {
-            final boolean curIsOn = torchIsOn;
-            torchIsOn = isOn;
-            if(curIsOn != isOn && previewSession != null) {
+    public void setScanRegion(ScanRegion region) {
+        scanRegion = region;
+        if(controlOptions.meterScanRegion) {
+            // meter on the new region
+            cameraHandler.post(this::startPreview);
+        }
+    }
+
+    @Override
+    public void setZoom(float zoom) {
+        cameraHandler.post(() -> {
+            if(control != null) {
+                Log.d(TAG, "zoom: " + control.setZoom(zoom));
+                startPreview();
+            }
+        });
+    }
+
+    @Override
+    public float getMaxZoom() {
+        return control == null ? 1f : control.getMaxZoom();
+    }
+
+    /**
+     * Triggers an autofocus scan, then after a while cancels the trigger so that continuous autofocus resumes.
+     */
+    @Override
+    public void refocus() {
+        cameraHandler.post(() -> {
+            if(!triggerAf(CameraMetadata.CONTROL_AF_TRIGGER_CANCEL)
+                || !triggerAf(CameraMetadata.CONTROL_AF_TRIGGER_START))
+            {
+                return;
+            }
+            Log.d(TAG, "refocus");
+            cameraHandler.removeCallbacks(resumeContinuousAf);
+            cameraHandler.postDelayed(resumeContinuousAf, REFOCUS_HOLD_MS);
+        });
+    }
+
+    /**
+     * Sends a single request with the given autofocus trigger. Called on the camera thread.
+     *
+     * @return false if there is nothing to trigger (no session, paused, or no autofocus).
+     */
+    private boolean triggerAf(int trigger) {
+        if(previewSession == null || paused || afMode == null) {
+            return false;
+        }
+        try {
+            previewBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, trigger);
+            previewSession.capture(previewBuilder.build(), null, cameraHandler);
+            return true;
+        } catch(java.lang.Exception e) {
+            Log.w(TAG, "Error triggering autofocus", e);
+            return false;
+        } finally {
+            previewBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_IDLE);
+        }
+    }
+
+    /**
+     * Stops the repeating request, keeping the camera and session open so that resume() only has to restart it.
+     */
+    @Override
+    public void pause() {
+        cameraHandler.post(() -> {
+            paused = true;
+            if(previewSession != null) {
                 try {
                     previewSession.stopRepeating();
                 } catch(Throwable t) {
                     t.printStackTrace();
                 }
             }
-        }
+        });
     }
 
+    /**
+     * Pauses and closes the camera so that another reader can open it, keeping everything else (such as the
+     * ImageReader and preview texture) for resume(), which opens the camera again.
+     */
+    @Override
+    public void releaseCamera() {
+        cameraHandler.post(() -> {
+            paused = true;
+            cameraReleased = true;
+            closeCamera();
+        });
+    }
+
+    @Override
+    public void resume() {
+        cameraHandler.post(() -> {
+            paused = false;
+            cameraReleased = false;
+            if(stopped) {
+                return;
+            }
+            if(cameraDevice == null) {
+                if(!opening) {
+                    openCamera();
+                }
+            } else {
+                startPreview();
+            }
+        });
+    }
+
+    /**
+     * Switches the torch, which also stops auto torch from switching it for the rest of the session: otherwise a torch
+     * that auto torch turned on could not be turned off.
+     */
+    @Override
+    public void setTorchState(boolean isOn) {
+        cameraHandler.post(() -> {
+            Log.i(TAG, "set torch requested (canToggle: " + canToggleTorch + "): " + torchIsOn + " => " + isOn);
+            if(canToggleTorch) {
+                final boolean curIsOn = torchIsOn || autoTorch.isOn();
+                torchIsOn = isOn;
+                autoTorch.override();
+                if(curIsOn != isOn) {
+                    startPreview();
+                }
+            }
+        });
+    }
+
+    /**
+     * Closes the camera on the camera thread and returns the ImageReader to the pool. The owning QrReader shuts the
+     * camera thread down afterwards, which waits for this to complete.
+     */
     @Override
     public void stop() {
-        canToggleTorch = false;
-        if(cameraDevice != null) {
-            cameraDevice.close();
-            cameraDevice = null;
-        }
-        if(reader != null) {
-            if(latestFrame != null) {
-                latestFrame.close();
+        cameraHandler.post(() -> {
+            stopped = true;
+            canToggleTorch = false;
+            if(prewarmed != null) {
+                prewarmed.close();
             }
-            latestFrame = null;
-            reader.close();
-            reader = null;
-        }
+            closeCamera();
+            if(reader != null) {
+                ImageReaders.give(reader);
+                reader = null;
+            }
+            if(recorder != null) {
+                recorder.close();
+            }
+        });
     }
 
-    private Size getAppropriateSize(Size[] sizes) {
-        // assume sizes is never 0
-        if(sizes.length == 1) {
-            Log.d(TAG, "selected camera size: " + sizes[0].toString());
-            return sizes[0];
-        }
+    /**
+     * Closes and reopens the camera. With newFrames the camera delivers to another ImageReader, and the old one is
+     * closed once every image acquired from it is closed: an image may still be read by a detection that is only slow,
+     * so its buffer is not freed under it. Leaked images keep the old reader open.
+     */
+    @Override
+    public void restart(boolean newFrames) {
+        cameraHandler.post(() -> {
+            if(stopped || paused || opening) {
+                return;
+            }
+            Log.w(TAG, "Restarting camera" + (newFrames ? " with a new ImageReader." : "."));
+            closeCamera();
+            if(newFrames && reader != null) {
+                reader.reader.setOnImageAvailableListener(null, null);
+                reader.closeWhenIdle();
+                reader = null;
+            }
+            openCamera();
+        });
+    }
 
-        final int idealWidth = (sensorOrientation % 180 == 0) ? targetWidth : targetHeight;
-        final int idealHeight = (sensorOrientation % 180 == 0) ? targetHeight : targetWidth;
-        Log.d(TAG, "ideal camera size: " + idealWidth + " x " + idealHeight);
+    @Override
+    public boolean imagesExhausted() {
+        final ImageReaders.Lease reader = this.reader;
+        return reader != null && reader.openImages() >= reader.reader.getMaxImages();
+    }
 
-        Size ret = Arrays.stream(sizes)
-            .filter(s -> s.getHeight() >= idealHeight && s.getWidth() >= idealWidth)
-            .min(Comparator.comparing(s -> s.getHeight() * s.getWidth()))
-            .orElse(sizes[0]);
-        Log.d(TAG, "selected camera size: " + ret.toString());
+    /**
+     * @return sizes as the {width, height} pairs that CameraSizes picks from.
+     */
+    private static int[][] dimensions(Size[] sizes) {
+        final int[][] ret = new int[sizes.length][];
+        for(int i = 0; i < sizes.length; ++i) {
+            ret[i] = new int[] { sizes[i].getWidth(), sizes[i].getHeight() };
+        }
         return ret;
     }
 }
@@ -1,91 +1,275 @@
 package com.towagifu.flutter_qr_bar_scanner;
 
+import android.graphics.Point;
 import android.util.Log;
 
-import androidx.annotation.GuardedBy;
-import androidx.annotation.NonNull;
-
-import com.google.android.gms.tasks.OnFailureListener;
-import com.google.android.gms.tasks.OnSuccessListener;
-import com.google.mlkit.vision.barcode.common.Barcode;
-import com.google.mlkit.vision.barcode.BarcodeScanner;
-import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
-import com.google.mlkit.vision.barcode.BarcodeScanning;
 import com.google.mlkit.vision.common.InputImage;
 
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Allows QrCamera classes to send frames to a Detector
+ * <p>
+ * Frames are passed through a single slot mailbox: a newly arrived frame replaces (and closes) any frame that is
+ * still waiting, and at most one frame is being detected at a time. Every frame handed to {@link #detect(Frame)} is
+ * closed exactly once, either when it is replaced, when its detection completes (successfully or not), or when the
+ * detector is closed.
+ * <p>
+ * A detection that does not complete can be abandoned by replacing the engine: detection carries on with the next
+ * frame, and whatever the abandoned detection reports later is discarded (its frame is still closed then).
  */
-class QrDetector implements OnSuccessListener<List<Barcode>>, OnFailureListener {
+class QrDetector {
     private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX + QrDetector.class.getSimpleName();
     private final QrReaderCallbacks communicator;
-    private final BarcodeScanner detector;
+    private volatile DetectionEngine engine;
+    private final Executor executor;
+    private final PipelineStats stats;
 
     public interface Frame {
+        /**
+         * @return the frame (or the part of it inside the scan region) for ML Kit.
+         */
         InputImage toImage();
 
+        /**
+         * @return the luma plane of the frame (and the part of it inside the scan region) for engines that read
+         * luminance directly.
+         */
+        LumaPlane toLuma();
+
+        /**
+         * @return offset of the image returned by toImage() or toLuma() within the full (upright) frame.
+         */
+        Point getOffset();
+
+        /**
+         * @return how many times smaller than the full frame the image returned by toImage() or toLuma() is.
+         */
+        default int getScale() {
+            return 1;
+        }
+
         void close();
     }
 
-    @GuardedBy("this")
-    private Frame latestFrame;
+    private static class Pending {
+        final Frame frame;
+        final long queuedNs;
+
+        Pending(Frame frame, long queuedNs) {
+            this.frame = frame;
+            this.queuedNs = queuedNs;
+        }
+    }
+
+    /** the most recent frame that has not been picked up for detection yet. */
+    private final AtomicReference<Pending> pendingFrame = new AtomicReference<>();
+
+    private static class Detection {
+        final long startedNs = PipelineStats.now();
+    }
+
+    /** the detection running, or null. */
+    private final AtomicReference<Detection> running = new AtomicReference<>();
 
-    @GuardedBy("this")
-    private Frame processingFrame;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
 
-    QrDetector(QrReaderCallbacks communicator, BarcodeScannerOptions options) {
+    /** true while nobody consumes the results, in which case frames are not detected. */
+    private volatile boolean paused;
+
+    private volatile Runnable idleListener;
+
+    /**
+     * @param engine   - engine to detect with. It is not closed along with this detector, so that its owner can close
+     *                 it once detection has stopped.
+     * @param executor - executor that detection results are handled on.
+     */
+    QrDetector(QrReaderCallbacks communicator, DetectionEngine engine, Executor executor, PipelineStats stats) {
         this.communicator = communicator;
-        this.detector = BarcodeScanning.getClient(options);
+        this.engine = engine;
+        this.executor = executor;
+        this.stats = stats;
     }
 
+    /**
+     * Queues a frame for detection, taking ownership of it. May be called from any thread.
+     */
     void detect(Frame frame) {
-        if(latestFrame != null) {
-            latestFrame.close();
+        if(closed.get() || paused) {
+            frame.close();
+            return;
         }
-        latestFrame = frame;
 
-        if(processingFrame == null) {
-            processLatest();
+        Pending dropped = pendingFrame.getAndSet(new Pending(frame, PipelineStats.now()));
+        if(dropped != null) {
+            dropped.frame.close();
+            stats.frameDropped();
+        }
+
+        // close() may have run between the check above and the swap
+        if(closed.get()) {
+            clearPending();
+            return;
         }
+
+        processLatest();
     }
 
-    private synchronized void processLatest() {
-        if(processingFrame != null) {
-            processingFrame.close();
+    /**
+     * Pauses or resumes detection without stopping the camera. While paused, frames are closed on arrival, and the
+     * frame waiting in the mailbox (if any) is closed. A detection already running still reports its results.
+     */
+    void setPaused(boolean paused) {
+        this.paused = paused;
+        if(paused) {
+            clearPending();
+        } else {
+            notifyIfIdle();
         }
-        processingFrame = latestFrame;
-        latestFrame = null;
-        if(processingFrame != null) {
-            processFrame(processingFrame);
+    }
+
+    /**
+     * @param listener - called (on whichever thread finished with the last frame) each time the detector has no
+     *                 frame to detect any more, or null. Lets a frame source feed frames no faster than they are
+     *                 detected.
+     */
+    void setIdleListener(Runnable listener) {
+        idleListener = listener;
+    }
+
+    boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * @return how long the running detection has been going on, or 0 if none is.
+     */
+    long detectingForNs() {
+        final Detection detection = running.get();
+        return detection == null ? 0 : PipelineStats.now() - detection.startedNs;
+    }
+
+    /**
+     * Detects with engine from now on, abandoning the running detection (if any). The caller owns both engines.
+     */
+    void replaceEngine(DetectionEngine engine) {
+        this.engine = engine;
+        if(running.getAndSet(null) != null) {
+            Log.w(TAG, "Abandoned a detection that did not complete.");
         }
+        processLatest();
     }
 
-    private void processFrame(Frame frame) {
-        InputImage image;
-        try {
-            image = frame.toImage();
-        } catch(IllegalStateException ex) {
-            // ignore state exception from making frame to image
-            // as the image may be closed already.
+    /**
+     * Stops accepting frames and closes any frame that is waiting. A frame that is currently being detected is closed
+     * when its detection completes, and its results are discarded.
+     */
+    void close() {
+        if(closed.getAndSet(true)) {
             return;
         }
+        clearPending();
+    }
+
+    private void clearPending() {
+        Pending pending = pendingFrame.getAndSet(null);
+        if(pending != null) {
+            pending.frame.close();
+            stats.frameDropped();
+        }
+    }
 
-        detector.process(image)
-            .addOnSuccessListener(this)
-            .addOnFailureListener(this);
+    /**
+     * Starts detection of the pending frame unless a detection is already running. Loops rather than giving up so
+     * that a frame which arrives while the running detection is being ended is not left in the mailbox.
+     */
+    private void processLatest() {
+        while(!closed.get() && pendingFrame.get() != null) {
+            final Detection detection = new Detection();
+            if(!running.compareAndSet(null, detection)) {
+                break;
+            }
+            Pending pending = pendingFrame.getAndSet(null);
+            if(pending != null && processFrame(pending, detection)) {
+                return;
+            }
+            running.compareAndSet(detection, null);
+        }
+        notifyIfIdle();
     }
 
-    @Override
-    public void onSuccess(List<Barcode> barcodes) {
-        communicator.qrRead(barcodes.stream().map(b -> new QrBarcode(b)));
+    private void notifyIfIdle() {
+        final Runnable listener = idleListener;
+        if(listener != null && !closed.get() && !paused && running.get() == null
+            && pendingFrame.get() == null) {
+            listener.run();
+        }
+    }
 
-        processLatest();
+    /**
+     * @return true if detection was started; completion will then close the frame and end the detection. Otherwise
+     * the frame has been closed already.
+     */
+    private boolean processFrame(final Pending pending, final Detection detection) {
+        final Frame frame = pending.frame;
+        try {
+            final long startedNs = detection.startedNs;
+            stats.detectionStarted(pending.queuedNs, startedNs);
+            engine.detect(frame, executor, new DetectionEngine.Callback() {
+                @Override
+                public void onDetected(List<QrBarcode> barcodes) {
+                    onComplete(detection, frame, barcodes, null, pending.queuedNs);
+                }
+
+                @Override
+                public void onFailed(Exception e) {
+                    onComplete(detection, frame, null, e, pending.queuedNs);
+                }
+            });
+            return true;
+        } catch(IllegalStateException ex) {
+            // ignore state exception from reading the frame as the image may be closed already,
+            // or from processing as the engine may be closed already.
+            frame.close();
+            stats.frameDropped();
+            return false;
+        } catch(RuntimeException ex) {
+            Log.w(TAG, "Unable to start barcode detection: ", ex);
+            frame.close();
+            stats.frameDropped();
+            return false;
+        }
     }
 
-    @Override
-    public void onFailure(@NonNull Exception e) {
-        Log.w(TAG, "Barcode Reading Failure: ", e);
+    private void onComplete(
+        Detection detection, Frame frame, List<QrBarcode> barcodes, Exception error, long queuedNs
+    ) {
+        try {
+            if(running.get() != detection) {
+                // abandoned
+                return;
+            }
+            stats.detectionCompleted(queuedNs, detection.startedNs);
+            if(barcodes != null) {
+                if(!closed.get()) {
+                    communicator.qrRead(barcodes.stream());
+                }
+            } else if(error instanceof CancellationException) {
+                Log.d(TAG, "Barcode Reading Canceled");
+            } else {
+                Log.w(TAG, "Barcode Reading Failure: ", error);
+            }
+        } catch(RuntimeException ex) {
+            Log.w(TAG, "Error handling barcode reading result: ", ex);
+        } finally {
+            frame.close();
+            if(running.compareAndSet(detection, null)) {
+                processLatest();
+            }
+        }
     }
 }
@@ -7,54 +7,178 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.SurfaceTexture;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
-import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
-
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 class QrReader {
     private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX + QrReader.class.getSimpleName();
     final QrCamera qrCamera;
+    private final QrDetector detector;
     private final Activity context;
     private final QRReaderStartedCallback startedCallback;
-    private Heartbeat heartbeat;
+    private final QrReaderThreads threads;
+    private final FrameRateGovernor governor;
+    private final DetectionEngine.Kind engineKind;
+    private final List<String> formats;
+    /** null unless detecting in tiles. */
+    private final TiledEngine.Options tiling;
+    /** engine detecting now. Replaced (on the main thread) when detection gets stuck. */
+    private DetectionEngine engine;
+    final PipelineStats stats = new PipelineStats();
+    /** null if nothing is watched. */
+    private final Watchdog watchdog;
+    /** null unless aggregating. */
+    private final BarcodeAggregator aggregator;
+    /** null unless tracking. */
+    private final BarcodeTracker tracker;
 
+    /**
+     * @param config    - what to detect, and how. An ML Kit client is taken from the pool, and given back when the
+     *                  reader stops.
+     * @param listener  - told when the reader has started, and of results, tracked positions and health issues.
+     * @param prewarmed - camera opened ahead of time, facing the way start() will ask for, or null. The reader adopts
+     *                  its camera thread.
+     */
     QrReader(
-        int width, int height, Activity context, BarcodeScannerOptions options,
-        final QRReaderStartedCallback startedCallback, final QrReaderCallbacks communicator,
-        final SurfaceTexture texture
+        QrReaderConfig config, final Listener listener, Activity context, final SurfaceTexture texture,
+        final Executor detectionExecutor, final PrewarmedCamera prewarmed
     ) {
         this.context = context;
-        this.startedCallback = startedCallback;
+        this.startedCallback = listener;
+        this.engineKind = config.engine;
+        this.formats = config.formats;
+        this.tiling = config.tiling;
+        this.engine = createEngine();
+        this.threads = new QrReaderThreads(detectionExecutor, prewarmed == null ? null : prewarmed.thread);
+
+        this.governor = new FrameRateGovernor(config.frameRate);
+        QrReaderCallbacks callbacks;
+        if(config.aggregation != null) {
+            this.aggregator = new BarcodeAggregator(config.aggregation, listener);
+            callbacks = aggregator;
+        } else {
+            this.aggregator = null;
+            // results are delivered to the communicator on the main thread, as Flutter channels require
+            callbacks = stats.dispatchOn(new Handler(Looper.getMainLooper()), listener);
+            if(config.stabilization.isEnabled()) {
+                callbacks = new ResultStabilizer(callbacks, config.stabilization);
+            }
+        }
+        if(config.tracking != null) {
+            this.tracker = new BarcodeTracker(
+                callbacks, config.tracking, stats, new Handler(Looper.getMainLooper()), listener
+            );
+            callbacks = tracker;
+        } else {
+            this.tracker = null;
+        }
+        if(config.filter != null) {
+            callbacks = new BarcodeFilter(callbacks, config.filter);
+        }
+        if(config.frameRate.idleAfterMs > 0) {
+            // sees every detection result, before filtering and stabilization drop any
+            callbacks = governor.watch(callbacks);
+        }
+        if(config.control.refocusAfterFrames > 0) {
+            callbacks = refocusOnMisses(callbacks, config.control.refocusAfterFrames);
+        }
+        this.detector = new QrDetector(callbacks, this.engine, threads.detectionExecutor, stats);
+        final FrameQualityGate gate = config.frameGate == null ? null : new FrameQualityGate(config.frameGate, stats);
 
-        if(android.os.Build.VERSION.SDK_INT >= 21) {
+        if(config.replay != null) {
+            Log.i(TAG, "Replaying frames from " + config.replay.directory);
+            qrCamera = new ReplayCamera(config.replay, detector, gate, stats, threads);
+        } else if(android.os.Build.VERSION.SDK_INT >= 21) {
             Log.i(TAG, "Using new camera API.");
-            qrCamera = new QrCameraC2(width, height, texture, context, new QrDetector(communicator, options));
+            qrCamera = new QrCameraC2(config, texture, context, detector, governor, gate, stats, threads, prewarmed);
         } else {
             Log.wtf(TAG, "Using old camera API.");
+            detector.close();
+            threads.quit();
+            this.engine.close();
             throw new RuntimeException("min sdk 21 > " + android.os.Build.VERSION.SDK_INT);
         }
+
+        this.watchdog = !config.watchdog.isEnabled() ? null : new Watchdog(
+            config.watchdog, stats, detector, qrCamera, config.replay == null, (issue, stalledMs) -> {
+                recover(issue);
+                listener.onHealthIssue(issue, stalledMs);
+            }
+        );
     }
 
-    void start(final int heartBeatTimeout, final CameraOrientation orientation)
-        throws IOException, NoPermissionException, Exception
-    {
-        checkStartConditions();
-        try {
-            if(heartBeatTimeout > 0) {
-                if(heartbeat != null) {
-                    heartbeat.stop();
-                }
-                heartbeat = new Heartbeat(heartBeatTimeout, new Runnable() {
-                    @Override
-                    public void run() {
-                        stop();
-                    }
-                });
+    /**
+     * Recovers from a stall the watchdog found, except for a missed heartbeat: the listener stops the reader then.
+     */
+    private void recover(Watchdog.Issue issue) {
+        switch(issue.action) {
+            case restartCamera:
+                qrCamera.restart(issue == Watchdog.Issue.imagesLeaked);
+                break;
+            case restartDetector:
+                restartDetector();
+                break;
+            case stop:
+                break;
+        }
+    }
+
+    private DetectionEngine createEngine() {
+        return tiling == null ? DetectionEngine.create(engineKind, formats)
+            : new TiledEngine(tiling, engineKind, formats);
+    }
+
+    /**
+     * Abandons the stuck detection and carries on with a new engine. The stuck engine is discarded rather than closed,
+     * so that its ML Kit client does not go back to the pool.
+     */
+    private void restartDetector() {
+        final DetectionEngine stuck = engine;
+        engine = createEngine();
+        detector.replaceEngine(engine);
+        stuck.discard();
+    }
+
+    /**
+     * @return callbacks that trigger autofocus each time frames consecutive detection results are empty, then pass
+     * results on to downstream.
+     */
+    private QrReaderCallbacks refocusOnMisses(final QrReaderCallbacks downstream, final int frames) {
+        final AtomicInteger misses = new AtomicInteger();
+        return data -> {
+            List<QrBarcode> barcodes = data.collect(Collectors.toCollection(ArrayList::new));
+            if(!barcodes.isEmpty()) {
+                misses.set(0);
+            } else if(misses.incrementAndGet() >= frames) {
+                misses.set(0);
+                refocus();
             }
+            downstream.qrRead(barcodes.stream());
+        };
+    }
 
+    private void refocus() {
+        qrCamera.refocus();
+    }
+
+    void start(final CameraOrientation orientation) throws IOException, NoPermissionException, Exception {
+        if(!(qrCamera instanceof ReplayCamera)) {
+            checkStartConditions();
+        }
+        try {
+            stats.started();
             qrCamera.start(orientation);
+            if(watchdog != null) {
+                watchdog.start();
+            }
             startedCallback.started();
         } catch(Throwable t) {
             startedCallback.startingFailed(t);
@@ -71,17 +195,73 @@ class QrReader {
         }
     }
 
+    /**
+     * Stops reading. The watchdog and tracker are stopped first, then the camera is closed on the camera thread, the
+     * detector releases any waiting frame, and finally the camera and analysis threads are shut down (in that order)
+     * so that no camera output is produced once this returns. The engine is closed last (giving an ML Kit client back
+     * to the pool).
+     */
     void stop() {
-        if(heartbeat != null) {
-            heartbeat.stop();
+        if(watchdog != null) {
+            watchdog.stop();
+        }
+        if(tracker != null) {
+            tracker.stop();
         }
 
         qrCamera.stop();
+        detector.close();
+        threads.quit();
+        engine.close();
+    }
+
+    /**
+     * Stops producing and analysing frames, keeping the camera, its session and the preview texture open.
+     */
+    void pause() {
+        if(watchdog != null) {
+            watchdog.stop();
+        }
+        qrCamera.pause();
+    }
+
+    /**
+     * Pauses and closes the camera, so that another reader can use it. resume() opens it again.
+     */
+    void releaseCamera() {
+        if(watchdog != null) {
+            watchdog.stop();
+        }
+        qrCamera.releaseCamera();
+    }
+
+    void resume() {
+        governor.onResumed();
+        qrCamera.resume();
+        if(watchdog != null) {
+            watchdog.start();
+        }
+    }
+
+    /**
+     * Stops or restarts sending frames for detection, leaving the camera preview running.
+     */
+    void setDetectionPaused(boolean paused) {
+        detector.setPaused(paused);
+    }
+
+    /**
+     * Empties the aggregated set of barcodes, starting a new collection.
+     */
+    void resetAggregation() {
+        if(aggregator != null) {
+            aggregator.reset();
+        }
     }
 
     void heartBeat() {
-        if(heartbeat != null) {
-            heartbeat.beat();
+        if(watchdog != null) {
+            watchdog.beat();
         }
     }
 
@@ -111,6 +291,16 @@ class QrReader {
         void startingFailed(Throwable t);
     }
 
+    /**
+     * Everything a reader reports to. Results go to qrRead() unless aggregating, in which case they go to
+     * onAggregate().
+     */
+    interface Listener
+        extends QRReaderStartedCallback, QrReaderCallbacks, BarcodeAggregator.Listener, BarcodeTracker.Listener,
+        Watchdog.Listener
+    {
+    }
+
     static class Exception extends java.lang.Exception {
         private Reason reason;
 
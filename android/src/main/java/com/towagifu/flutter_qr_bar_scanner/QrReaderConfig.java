@@ -0,0 +1,121 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import java.util.List;
+
+/**
+ * What a QrReader detects, and how. Every setting other than the preview and analysis sizes is set by name, and
+ * keeps its default (the feature turned off, or its options with every argument left out) unless set.
+ */
+class QrReaderConfig {
+    final int targetWidth;
+    final int targetHeight;
+    final AnalysisResolution analysisResolution;
+    /** barcode formats to detect, or null for every format. */
+    List<String> formats;
+    DetectionEngine.Kind engine = DetectionEngine.Kind.ML_KIT;
+    /** null unless detecting in a coarse pass and then in tiles. */
+    TiledEngine.Options tiling;
+    /** null to report every barcode. */
+    BarcodeFilter.Options filter;
+    ResultStabilizer.Options stabilization = new ResultStabilizer.Options(null, null, null, null, null);
+    FrameRateGovernor.Options frameRate = new FrameRateGovernor.Options(null, null, null, null);
+    /** null to detect in every frame, however blurred or moving. */
+    FrameQualityGate.Options frameGate;
+    FrameBufferPool.Options buffers = new FrameBufferPool.Options(null, null);
+    CameraControl.Options control = new CameraControl.Options(null, null, null);
+    AutoTorch.Options autoTorch = new AutoTorch.Options(null, null, null);
+    /** frames to replay instead of using the camera, or null. */
+    ReplayCamera.Options replay;
+    /** where to record camera frames to, or null. */
+    FrameRecorder.Options recording;
+    /** null unless results are aggregated across frames (and reported to the aggregate listener instead). */
+    BarcodeAggregator.Options aggregation;
+    /** null unless barcodes are tracked between detections. */
+    BarcodeTracker.Options tracking;
+    Watchdog.Options watchdog = new Watchdog.Options(null, null, null);
+
+    /**
+     * @param targetWidth  - requested preview width.
+     * @param targetHeight - requested preview height.
+     */
+    QrReaderConfig(int targetWidth, int targetHeight, AnalysisResolution analysisResolution) {
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.analysisResolution = analysisResolution;
+    }
+
+    QrReaderConfig formats(List<String> formats) {
+        this.formats = formats;
+        return this;
+    }
+
+    QrReaderConfig engine(DetectionEngine.Kind engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    QrReaderConfig tiling(TiledEngine.Options tiling) {
+        this.tiling = tiling;
+        return this;
+    }
+
+    QrReaderConfig filter(BarcodeFilter.Options filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    QrReaderConfig stabilization(ResultStabilizer.Options stabilization) {
+        this.stabilization = stabilization;
+        return this;
+    }
+
+    QrReaderConfig frameRate(FrameRateGovernor.Options frameRate) {
+        this.frameRate = frameRate;
+        return this;
+    }
+
+    QrReaderConfig frameGate(FrameQualityGate.Options frameGate) {
+        this.frameGate = frameGate;
+        return this;
+    }
+
+    QrReaderConfig buffers(FrameBufferPool.Options buffers) {
+        this.buffers = buffers;
+        return this;
+    }
+
+    QrReaderConfig control(CameraControl.Options control) {
+        this.control = control;
+        return this;
+    }
+
+    QrReaderConfig autoTorch(AutoTorch.Options autoTorch) {
+        this.autoTorch = autoTorch;
+        return this;
+    }
+
+    QrReaderConfig replay(ReplayCamera.Options replay) {
+        this.replay = replay;
+        return this;
+    }
+
+    QrReaderConfig recording(FrameRecorder.Options recording) {
+        this.recording = recording;
+        return this;
+    }
+
+    QrReaderConfig aggregation(BarcodeAggregator.Options aggregation) {
+        this.aggregation = aggregation;
+        return this;
+    }
+
+    QrReaderConfig tracking(BarcodeTracker.Options tracking) {
+        this.tracking = tracking;
+        return this;
+    }
+
+    QrReaderConfig watchdog(Watchdog.Options watchdog) {
+        this.watchdog = watchdog;
+        return this;
+    }
+}
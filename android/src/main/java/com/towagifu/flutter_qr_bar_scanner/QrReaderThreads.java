@@ -0,0 +1,69 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Background threads owned by a QrReader.
+ * <p>
+ * Camera control (device, session and repeating request callbacks) runs on its own thread, and frame analysis
+ * (ImageReader callbacks and detection completion) runs on another, so that neither competes with the main
+ * thread that Flutter uses for platform messages.
+ */
+class QrReaderThreads {
+    private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX
+        + QrReaderThreads.class.getSimpleName();
+    private static final long JOIN_TIMEOUT_MS = 1000;
+
+    private final HandlerThread cameraThread;
+    private final HandlerThread analysisThread;
+    final Handler cameraHandler;
+    final Handler analysisHandler;
+    final Executor detectionExecutor;
+
+    /**
+     * @param detectionExecutor - executor that detection results are delivered on, or null to deliver them on the
+     *                          analysis thread.
+     * @param cameraThread      - running thread to use as the camera thread (such as that of a prewarmed camera),
+     *                          or null to start a new one. Either way it is quit along with the other threads.
+     */
+    QrReaderThreads(@Nullable Executor detectionExecutor, @Nullable HandlerThread cameraThread) {
+        if(cameraThread == null) {
+            cameraThread = new HandlerThread("QrCamera", Process.THREAD_PRIORITY_DISPLAY);
+            cameraThread.start();
+        }
+        this.cameraThread = cameraThread;
+        cameraHandler = new Handler(cameraThread.getLooper());
+
+        analysisThread = new HandlerThread("QrAnalysis", Process.THREAD_PRIORITY_DEFAULT);
+        analysisThread.start();
+        analysisHandler = new Handler(analysisThread.getLooper());
+
+        this.detectionExecutor = detectionExecutor != null ? detectionExecutor : analysisHandler::post;
+    }
+
+    /**
+     * Stops the camera thread first so that anything already posted to it (such as closing the camera) completes
+     * before frame analysis is shut down. Blocks until both threads have finished, or the timeout is reached.
+     */
+    void quit() {
+        quit(cameraThread);
+        quit(analysisThread);
+    }
+
+    private static void quit(HandlerThread thread) {
+        thread.quitSafely();
+        try {
+            thread.join(JOIN_TIMEOUT_MS);
+        } catch(InterruptedException e) {
+            Log.w(TAG, "Interrupted while waiting for " + thread.getName() + " to finish.", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Encodes detected barcodes into the binary format sent over the results channel. Decoded by {@code QrChannelReader}
+ * (session id) and {@code ScanResult.decodeList} (the rest) on the Dart side.
+ * <p>
+ * All values are little endian:
+ *
+ * <pre>
+ * int32 session id (batch id for decoded images)
+ * int32 count
+ * count times:
+ *   int32 format (BarcodeFormats ordinal, -1 if unknown)
+ *   int32 left, top, right, bottom
+ *   int32 raw bytes length (-1 if none), followed by the raw bytes
+ *   int32 content length in UTF-8 bytes (-1 if none), followed by the UTF-8 content
+ * </pre>
+ *
+ * Positions of tracked barcodes are sent over the tracks channel, and decoded by {@code TrackedBarcode.decodeList}:
+ *
+ * <pre>
+ * int32 session id
+ * int32 count
+ * count times:
+ *   int32 track id
+ *   float32 left, top, right, bottom
+ *   int32 content length in UTF-8 bytes, followed by the UTF-8 content, for a barcode reported for the first time
+ *     (-1 otherwise, or if it has no content)
+ * </pre>
+ *
+ * The same direct buffer is reused for every message, so an encoder must only be used from one thread, and the
+ * returned buffer must be sent before encoding again. Flutter copies a message when it is sent.
+ */
+class QrResultEncoder {
+    private static final int INITIAL_CAPACITY = 4096;
+    /** session id and count. */
+    private static final int HEADER_SIZE = 8;
+    /** format, bounds, bytes length and content length. */
+    private static final int FIXED_BARCODE_SIZE = 4 * 7;
+    /** id, bounds and content length. */
+    private static final int FIXED_TRACK_SIZE = 4 * 6;
+    /** most UTF-8 bytes a single UTF-16 char can encode to. */
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer buffer = allocate(INITIAL_CAPACITY);
+
+    /**
+     * @return a buffer holding the message, positioned at its end (which is how Flutter determines the message
+     * length).
+     */
+    ByteBuffer encode(int sessionId, List<QrBarcode> barcodes) {
+        ensureCapacity(maxSize(barcodes));
+
+        buffer.clear();
+        buffer.putInt(sessionId);
+        buffer.putInt(barcodes.size());
+        for(int i = 0, l = barcodes.size(); i < l; ++i) {
+            write(barcodes.get(i));
+        }
+        return buffer;
+    }
+
+    /**
+     * @return the message in a new array, for sending as a method call argument.
+     */
+    byte[] encodeToBytes(int sessionId, List<QrBarcode> barcodes) {
+        ByteBuffer message = encode(sessionId, barcodes);
+        byte[] ret = new byte[message.position()];
+        message.flip();
+        message.get(ret);
+        return ret;
+    }
+
+    /**
+     * @return a buffer holding the message for the tracks channel, positioned at its end.
+     */
+    ByteBuffer encodeTracks(int sessionId, List<BarcodeTracker.Position> positions) {
+        int size = HEADER_SIZE;
+        for(int i = 0, l = positions.size(); i < l; ++i) {
+            final BarcodeTracker.Position position = positions.get(i);
+            final String content = position.barcode.getContent();
+            size += FIXED_TRACK_SIZE + (position.isNew && content != null ? content.length() * MAX_BYTES_PER_CHAR : 0);
+        }
+        ensureCapacity(size);
+
+        buffer.clear();
+        buffer.putInt(sessionId);
+        buffer.putInt(positions.size());
+        for(int i = 0, l = positions.size(); i < l; ++i) {
+            final BarcodeTracker.Position position = positions.get(i);
+            buffer.putInt(position.id);
+            buffer.putFloat(position.left).putFloat(position.top).putFloat(position.right).putFloat(position.bottom);
+            writeContent(position.isNew ? position.barcode.getContent() : null);
+        }
+        return buffer;
+    }
+
+    private void write(QrBarcode barcode) {
+        buffer.putInt(BarcodeFormats.ordinalOfValue(barcode.getFormatValue()));
+
+        Rect bb = barcode.getBoundingBox();
+        if(bb == null) {
+            buffer.putInt(0).putInt(0).putInt(0).putInt(0);
+        } else {
+            buffer.putInt(bb.left).putInt(bb.top).putInt(bb.right).putInt(bb.bottom);
+        }
+
+        byte[] bytes = barcode.getBytes();
+        if(bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+
+        writeContent(barcode.getContent());
+    }
+
+    private void writeContent(String content) {
+        if(content == null) {
+            buffer.putInt(-1);
+        } else {
+            final int lengthPosition = buffer.position();
+            buffer.putInt(0);
+            final int start = buffer.position();
+            utf8.reset();
+            utf8.encode(CharBuffer.wrap(content), buffer, true);
+            utf8.flush(buffer);
+            buffer.putInt(lengthPosition, buffer.position() - start);
+        }
+    }
+
+    private static int maxSize(List<QrBarcode> barcodes) {
+        int size = HEADER_SIZE;
+        for(int i = 0, l = barcodes.size(); i < l; ++i) {
+            QrBarcode barcode = barcodes.get(i);
+            size += FIXED_BARCODE_SIZE;
+            byte[] bytes = barcode.getBytes();
+            if(bytes != null) {
+                size += bytes.length;
+            }
+            String content = barcode.getContent();
+            if(content != null) {
+                size += content.length() * MAX_BYTES_PER_CHAR;
+            }
+        }
+        return size;
+    }
+
+    private void ensureCapacity(int size) {
+        if(buffer.capacity() < size) {
+            buffer = allocate(Math.max(size, buffer.capacity() * 2));
+        }
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,355 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.mlkit.vision.common.InputImage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implements QrCamera by replaying frames recorded by FrameRecorder (or any NV21 files listed in a manifest of the
+ * same format) into the detector, instead of using a camera. The preview texture is left blank.
+ * <p>
+ * Frames are replayed on the analysis thread either with their recorded timing, or as fast as the detector takes
+ * them: the next frame is sent once detection of the previous one has completed, so that no frame is dropped.
+ */
+class ReplayCamera implements QrCamera {
+    private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX + ReplayCamera.class.getSimpleName();
+
+    static class Options {
+        final File directory;
+        /** true to replay with the recorded timing, false to replay as fast as detection allows. */
+        final boolean realTime;
+        /** true to start over after the last frame. */
+        final boolean loop;
+
+        private Options(File directory, boolean realTime, boolean loop) {
+            this.directory = directory;
+            this.realTime = realTime;
+            this.loop = loop;
+        }
+
+        /**
+         * @return the options, or null if no directory is given.
+         */
+        static Options create(String directory, String speed, Boolean loop) {
+            if(directory == null) {
+                return null;
+            }
+            return new Options(new File(directory), !"max".equals(speed), loop != null && loop);
+        }
+    }
+
+    private static class Entry {
+        final File file;
+        final int width;
+        final int height;
+        final int rotation;
+        final long timestampMs;
+
+        Entry(File file, int width, int height, int rotation, long timestampMs) {
+            this.file = file;
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+            this.timestampMs = timestampMs;
+        }
+    }
+
+    private final Options options;
+    private final QrDetector detector;
+    /** null unless frames are gated on their quality. */
+    private final FrameQualityGate gate;
+    private final PipelineStats stats;
+    private final MotionEstimator motionEstimator = new MotionEstimator();
+    private final Handler analysisHandler;
+    private final List<Entry> entries = new ArrayList<>();
+
+    private volatile ScanRegion scanRegion;
+    /* The following are confined to the analysis thread. */
+    private boolean paused;
+    private boolean stopped;
+    private int next;
+    /** uptime at which the first frame (of the current loop) was due. */
+    private long startedMs;
+
+    private final Runnable playNext = this::playNext;
+
+    ReplayCamera(
+        Options options, QrDetector detector, FrameQualityGate gate, PipelineStats stats, QrReaderThreads threads
+    ) {
+        this.options = options;
+        this.detector = detector;
+        this.gate = gate;
+        this.stats = stats;
+        this.analysisHandler = threads.analysisHandler;
+    }
+
+    @Override
+    public void start(CameraOrientation orientation) throws QrReader.Exception {
+        try {
+            readManifest();
+        } catch(IOException | RuntimeException e) {
+            Log.w(TAG, "Error reading replay manifest in " + options.directory, e);
+            throw new QrReader.Exception(QrReader.Exception.Reason.noMatchingCamera);
+        }
+        if(entries.isEmpty()) {
+            throw new QrReader.Exception(QrReader.Exception.Reason.noMatchingCamera);
+        }
+        if(!options.realTime) {
+            detector.setIdleListener(() -> analysisHandler.post(playNext));
+        }
+        analysisHandler.post(() -> {
+            startedMs = SystemClock.uptimeMillis();
+            playNext();
+        });
+    }
+
+    private void readManifest() throws IOException {
+        try(BufferedReader reader = new BufferedReader(
+            new FileReader(new File(options.directory, FrameRecorder.MANIFEST))
+        )) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                entries.add(new Entry(
+                    new File(options.directory, fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                    Integer.parseInt(fields[3]), fields.length > 4 ? Math.round(Double.parseDouble(fields[4])) : 0
+                ));
+            }
+        }
+    }
+
+    /**
+     * Sends the next frame to the detector, and with real time replay schedules the one after.
+     */
+    private void playNext() {
+        if(paused || stopped) {
+            return;
+        }
+        if(next >= entries.size()) {
+            if(!options.loop) {
+                return;
+            }
+            next = 0;
+            startedMs = SystemClock.uptimeMillis();
+        }
+        final Entry entry = entries.get(next++);
+        try {
+            stats.frameReceived();
+            final ReplayFrame frame = new ReplayFrame(
+                read(entry), entry.width, entry.height, entry.rotation, scanRegion
+            );
+            if(gate == null || gateAllows(frame)) {
+                detector.detect(frame);
+            } else if(!options.realTime) {
+                // the detector will not go idle for a frame it was not given
+                analysisHandler.post(playNext);
+            }
+        } catch(IOException e) {
+            Log.w(TAG, "Error reading replay frame " + entry.file, e);
+            stats.frameDropped();
+            if(!options.realTime) {
+                analysisHandler.post(playNext);
+            }
+        }
+        if(options.realTime && next < entries.size()) {
+            analysisHandler.postAtTime(playNext, startedMs + entries.get(next).timestampMs);
+        } else if(options.realTime && options.loop) {
+            analysisHandler.post(playNext);
+        }
+    }
+
+    private boolean gateAllows(ReplayFrame frame) {
+        final LumaPlane luma = frame.toLuma();
+        return gate.shouldAnalyse(luma, gate.watchesMotion() ? motionEstimator.measure(luma) : MotionEstimator.UNKNOWN);
+    }
+
+    private static byte[] read(Entry entry) throws IOException {
+        final byte[] data = new byte[entry.width * entry.height * 3 / 2];
+        try(InputStream in = new FileInputStream(entry.file)) {
+            int read = 0;
+            while(read < data.length) {
+                final int count = in.read(data, read, data.length - read);
+                if(count < 0) {
+                    throw new IOException("Frame file too short");
+                }
+                read += count;
+            }
+        }
+        return data;
+    }
+
+    /**
+     * A replayed NV21 frame, cropped to the scan region when it is converted.
+     */
+    private static class ReplayFrame implements QrDetector.Frame {
+        private final byte[] nv21;
+        private final int width;
+        private final int height;
+        private final int rotation;
+        private final ScanRegion region;
+        private Point offset = new Point(0, 0);
+
+        ReplayFrame(byte[] nv21, int width, int height, int rotation, ScanRegion region) {
+            this.nv21 = nv21;
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+            this.region = region;
+        }
+
+        private Rect crop() {
+            Rect crop = region == null ? null : region.cropFor(width, height, rotation);
+            offset = crop == null ? new Point(0, 0) : ScanRegion.uprightOffset(crop, width, height, rotation);
+            return crop;
+        }
+
+        @Override
+        public InputImage toImage() {
+            final Rect crop = crop();
+            if(crop == null) {
+                return InputImage.fromByteArray(nv21, width, height, rotation, InputImage.IMAGE_FORMAT_NV21);
+            }
+            final int cropWidth = crop.width(), cropHeight = crop.height();
+            final byte[] out = new byte[cropWidth * cropHeight * 3 / 2];
+            int pos = 0;
+            for(int row = crop.top; row < crop.bottom; ++row, pos += cropWidth) {
+                System.arraycopy(nv21, row * width + crop.left, out, pos, cropWidth);
+            }
+            // interleaved VU rows at half height, starting after the luma plane
+            for(int row = crop.top / 2; row < crop.bottom / 2; ++row, pos += cropWidth) {
+                System.arraycopy(nv21, width * height + row * width + crop.left, out, pos, cropWidth);
+            }
+            return InputImage.fromByteArray(out, cropWidth, cropHeight, rotation, InputImage.IMAGE_FORMAT_NV21);
+        }
+
+        @Override
+        public LumaPlane toLuma() {
+            Rect crop = crop();
+            return new LumaPlane(
+                ByteBuffer.wrap(nv21), width, 1, crop == null ? new Rect(0, 0, width, height) : crop, rotation
+            );
+        }
+
+        @Override
+        public Point getOffset() {
+            return offset;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Override
+    public void setTorchState(boolean isOn) {
+    }
+
+    @Override
+    public void setScanRegion(ScanRegion region) {
+        scanRegion = region;
+    }
+
+    @Override
+    public void setZoom(float zoom) {
+    }
+
+    @Override
+    public float getMaxZoom() {
+        return 1f;
+    }
+
+    @Override
+    public void refocus() {
+    }
+
+    @Override
+    public void pause() {
+        analysisHandler.post(() -> {
+            paused = true;
+            analysisHandler.removeCallbacks(playNext);
+        });
+    }
+
+    @Override
+    public void releaseCamera() {
+        pause();
+    }
+
+    /**
+     * Continues with the frame after the last one replayed. With real time replay, the remaining frames keep their
+     * timing relative to it.
+     */
+    @Override
+    public void resume() {
+        analysisHandler.post(() -> {
+            if(!paused || stopped) {
+                return;
+            }
+            paused = false;
+            if(next < entries.size()) {
+                startedMs = SystemClock.uptimeMillis() - entries.get(next).timestampMs;
+            }
+            playNext();
+        });
+    }
+
+    @Override
+    public void stop() {
+        analysisHandler.post(() -> {
+            stopped = true;
+            analysisHandler.removeCallbacks(playNext);
+        });
+    }
+
+    @Override
+    public void restart(boolean newFrames) {
+    }
+
+    @Override
+    public boolean imagesExhausted() {
+        return false;
+    }
+
+    @Override
+    public int getOrientation() {
+        return entries.get(0).rotation;
+    }
+
+    @Override
+    public int getWidth() {
+        return entries.get(0).width;
+    }
+
+    @Override
+    public int getHeight() {
+        return entries.get(0).height;
+    }
+
+    @Override
+    public int getAnalysisWidth() {
+        return getWidth();
+    }
+
+    @Override
+    public int getAnalysisHeight() {
+        return getHeight();
+    }
+}
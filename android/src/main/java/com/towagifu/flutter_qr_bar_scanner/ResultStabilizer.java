@@ -0,0 +1,139 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Sits between a QrDetector and the callbacks it reports to, and only passes on results that are stable and new
+ * according to its options. Barcodes are tracked by {@link BarcodeKey} in a bounded cache that drops the least
+ * recently seen barcodes, and barcodes that have not been seen for the cache TTL.
+ */
+class ResultStabilizer implements QrReaderCallbacks {
+    static class Options {
+        private static final int DEFAULT_CACHE_SIZE = 64;
+        private static final long DEFAULT_CACHE_TTL_MS = 5000;
+
+        /** number of consecutive frames a barcode must be seen in before it is reported. */
+        final int confirmFrames;
+        /** if positive, a barcode is reported once and then not again until it has been gone for this long. */
+        final long reportOnceUntilGoneMs;
+        /** only report when the set of (confirmed) barcodes in view changes. */
+        final boolean reportOnChangeOnly;
+        final int cacheSize;
+        final long cacheTtlMs;
+
+        Options(
+            Integer confirmFrames, Integer reportOnceUntilGoneMs, Boolean reportOnChangeOnly, Integer cacheSize,
+            Integer cacheTtlMs
+        ) {
+            this.confirmFrames = confirmFrames == null ? 1 : Math.max(1, confirmFrames);
+            this.reportOnceUntilGoneMs = reportOnceUntilGoneMs == null ? 0 : Math.max(0, reportOnceUntilGoneMs);
+            this.reportOnChangeOnly = reportOnChangeOnly != null && reportOnChangeOnly;
+            this.cacheSize = cacheSize == null || cacheSize <= 0 ? DEFAULT_CACHE_SIZE : cacheSize;
+            // a barcode must be remembered at least as long as it is being suppressed for.
+            this.cacheTtlMs = Math.max(
+                cacheTtlMs == null || cacheTtlMs <= 0 ? DEFAULT_CACHE_TTL_MS : cacheTtlMs, this.reportOnceUntilGoneMs
+            );
+        }
+
+        /**
+         * @return false if the options pass every result through unchanged, in which case no stabilizer is needed.
+         */
+        boolean isEnabled() {
+            return confirmFrames > 1 || reportOnceUntilGoneMs > 0 || reportOnChangeOnly;
+        }
+    }
+
+    private static class Entry {
+        long lastSeenMs;
+        long lastSeenFrame;
+        int consecutiveFrames;
+        boolean reported;
+    }
+
+    private final QrReaderCallbacks downstream;
+    private final Options options;
+    private final LinkedHashMap<BarcodeKey, Entry> cache;
+    private Set<BarcodeKey> lastConfirmed = new HashSet<>();
+    private long frame;
+
+    ResultStabilizer(QrReaderCallbacks downstream, final Options options) {
+        this.downstream = downstream;
+        this.options = options;
+        // access ordered, so iteration starts from the least recently seen barcode.
+        this.cache = new LinkedHashMap<BarcodeKey, Entry>(options.cacheSize * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BarcodeKey, Entry> eldest) {
+                return size() > options.cacheSize;
+            }
+        };
+    }
+
+    @Override
+    public synchronized void qrRead(Stream<QrBarcode> data) {
+        final long now = SystemClock.elapsedRealtime();
+        ++frame;
+        evictExpired(now);
+
+        final List<QrBarcode> report = new ArrayList<>();
+        final Set<BarcodeKey> confirmed = new HashSet<>();
+        for(Iterator<QrBarcode> it = data.iterator(); it.hasNext();) {
+            QrBarcode barcode = it.next();
+            BarcodeKey key = BarcodeKey.of(barcode);
+
+            Entry entry = cache.get(key);
+            if(entry == null
+                || (options.reportOnceUntilGoneMs > 0 && now - entry.lastSeenMs > options.reportOnceUntilGoneMs))
+            {
+                entry = new Entry();
+                cache.put(key, entry);
+            }
+            if(entry.lastSeenFrame == frame - 1) {
+                ++entry.consecutiveFrames;
+            } else if(entry.lastSeenFrame != frame) {
+                entry.consecutiveFrames = 1;
+            }
+            entry.lastSeenFrame = frame;
+            entry.lastSeenMs = now;
+
+            if(entry.consecutiveFrames < options.confirmFrames) {
+                continue;
+            }
+            confirmed.add(key);
+
+            if(options.reportOnceUntilGoneMs > 0 && entry.reported) {
+                continue;
+            }
+            entry.reported = true;
+            report.add(barcode);
+        }
+
+        if(options.reportOnChangeOnly) {
+            if(confirmed.equals(lastConfirmed)) {
+                return;
+            }
+            lastConfirmed = confirmed;
+            // reported even if empty, so that the receiver knows barcodes have gone.
+            downstream.qrRead(report.stream());
+        } else if(!report.isEmpty()) {
+            downstream.qrRead(report.stream());
+        }
+    }
+
+    private void evictExpired(long now) {
+        for(Iterator<Entry> it = cache.values().iterator(); it.hasNext();) {
+            if(now - it.next().lastSeenMs <= options.cacheTtlMs) {
+                break;
+            }
+            it.remove();
+        }
+    }
+}
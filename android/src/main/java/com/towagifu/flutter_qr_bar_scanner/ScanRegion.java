@@ -0,0 +1,118 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+
+/**
+ * Part of the frame that barcodes are detected in, as a rectangle normalized to 0..1 in upright frame coordinates
+ * (i.e. after the frame has been rotated by its orientation, which is the coordinate space bounding boxes are
+ * reported in).
+ */
+class ScanRegion {
+    /** crops smaller than this (in pixels, either side) are not worth detecting in, so the full frame is used. */
+    private static final int MIN_CROP_SIZE = 32;
+
+    final float left;
+    final float top;
+    final float right;
+    final float bottom;
+
+    private ScanRegion(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    /**
+     * @return the region clamped to 0..1, or null if it is empty or covers the whole frame.
+     */
+    static ScanRegion create(double left, double top, double right, double bottom) {
+        final float l = clamp(left), t = clamp(top), r = clamp(right), b = clamp(bottom);
+        if(r <= l || b <= t) {
+            return null;
+        }
+        if(l == 0f && t == 0f && r == 1f && b == 1f) {
+            return null;
+        }
+        return new ScanRegion(l, t, r, b);
+    }
+
+    private static float clamp(double value) {
+        return (float)Math.max(0.0, Math.min(1.0, value));
+    }
+
+    /**
+     * Maps the region onto a frame buffer as it comes from the camera. Edges are aligned to even pixels so that the
+     * chroma planes of a YUV 4:2:0 frame can be cropped along with the luma plane.
+     *
+     * @param width    - width of the frame buffer.
+     * @param height   - height of the frame buffer.
+     * @param rotation - clockwise rotation (0, 90, 180 or 270) that makes the frame upright.
+     * @return the crop in frame buffer pixels, or null if the whole frame should be used.
+     */
+    Rect cropFor(int width, int height, int rotation) {
+        float l, t, r, b;
+        switch(rotation) {
+            case 90:
+                l = top;
+                t = 1f - right;
+                r = bottom;
+                b = 1f - left;
+                break;
+            case 180:
+                l = 1f - right;
+                t = 1f - bottom;
+                r = 1f - left;
+                b = 1f - top;
+                break;
+            case 270:
+                l = 1f - bottom;
+                t = left;
+                r = 1f - top;
+                b = right;
+                break;
+            case 0:
+            default:
+                l = left;
+                t = top;
+                r = right;
+                b = bottom;
+        }
+
+        Rect crop = new Rect(
+            evenFloor(l * width), evenFloor(t * height),
+            Math.min(evenCeil(r * width), width & ~1), Math.min(evenCeil(b * height), height & ~1)
+        );
+        if(crop.width() < MIN_CROP_SIZE || crop.height() < MIN_CROP_SIZE) {
+            return null;
+        }
+        return crop;
+    }
+
+    /**
+     * @return the position of the top left corner of the (rotated) crop within the upright frame, which is the
+     * offset needed to map bounding boxes detected in the crop back to full frame coordinates.
+     */
+    static Point uprightOffset(Rect crop, int width, int height, int rotation) {
+        switch(rotation) {
+            case 90:
+                return new Point(height - crop.bottom, crop.left);
+            case 180:
+                return new Point(width - crop.right, height - crop.bottom);
+            case 270:
+                return new Point(crop.top, width - crop.right);
+            case 0:
+            default:
+                return new Point(crop.left, crop.top);
+        }
+    }
+
+    private static int evenFloor(float value) {
+        return ((int)Math.floor(value)) & ~1;
+    }
+
+    private static int evenCeil(float value) {
+        return (((int)Math.ceil(value)) + 1) & ~1;
+    }
+}
@@ -0,0 +1,291 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Point;
+import android.os.Handler;
+import android.os.Process;
+import android.util.Log;
+
+import com.google.mlkit.vision.common.InputImage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes barcodes in still images (image files or encoded image bytes) rather than camera frames, on a fixed number
+ * of worker threads. Each worker decodes one image at a time, downsampled so that neither side exceeds a maximum
+ * dimension, which bounds the memory used to parallelism bitmaps. Bounding boxes are reported in the coordinates of
+ * the original image.
+ * <p>
+ * Images go through the same MlKitEngine and BarcodeFilter as camera frames, with one engine for the whole batch. A
+ * bitmap is recycled once its detection calls back, and the engine is closed (giving its ML Kit client back to
+ * DetectorClients) once every image is done and every detection has called back, so that neither is released while
+ * a detection that timed out is still running.
+ */
+class StaticImageDecoder {
+    private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX
+        + StaticImageDecoder.class.getSimpleName();
+    static final int DEFAULT_PARALLELISM = 2;
+    static final int DEFAULT_MAX_DIMENSION = 2560;
+    private static final long DETECTION_TIMEOUT_S = 30;
+
+    /**
+     * Receives the outcome of each image, on the main thread.
+     */
+    interface Listener {
+        void onDecoded(int index, List<QrBarcode> barcodes);
+
+        void onFailed(int index, String error);
+
+        /**
+         * Called once after every image has been decoded, has failed or was skipped because of cancel().
+         */
+        void onFinished();
+    }
+
+    /**
+     * A decoded image, as a frame for the engine. Closing it recycles the bitmap.
+     */
+    private static class BitmapFrame implements QrDetector.Frame {
+        private final Bitmap bitmap;
+        private final int sampleSize;
+
+        BitmapFrame(Bitmap bitmap, int sampleSize) {
+            this.bitmap = bitmap;
+            this.sampleSize = sampleSize;
+        }
+
+        @Override
+        public InputImage toImage() {
+            return InputImage.fromBitmap(bitmap, 0);
+        }
+
+        @Override
+        public LumaPlane toLuma() {
+            throw new UnsupportedOperationException("Images are decoded with ML Kit");
+        }
+
+        @Override
+        public Point getOffset() {
+            return null;
+        }
+
+        @Override
+        public int getScale() {
+            return sampleSize;
+        }
+
+        @Override
+        public void close() {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Waits for the engine to call back about one image, closing the image's frame when it does.
+     */
+    private class Detection implements DetectionEngine.Callback {
+        private final BitmapFrame frame;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile List<QrBarcode> barcodes;
+        private volatile Exception error;
+
+        Detection(BitmapFrame frame) {
+            this.frame = frame;
+        }
+
+        @Override
+        public void onDetected(List<QrBarcode> barcodes) {
+            this.barcodes = barcodes;
+            complete();
+        }
+
+        @Override
+        public void onFailed(Exception e) {
+            this.error = e;
+            complete();
+        }
+
+        private void complete() {
+            frame.close();
+            releaseEngine();
+            done.countDown();
+        }
+
+        List<QrBarcode> await() throws InterruptedException, ExecutionException, TimeoutException {
+            if(!done.await(DETECTION_TIMEOUT_S, TimeUnit.SECONDS)) {
+                throw new TimeoutException("Detection did not complete in " + DETECTION_TIMEOUT_S + " s");
+            }
+            if(error != null) {
+                throw new ExecutionException(error);
+            }
+            return barcodes;
+        }
+    }
+
+    /**
+     * An image file path, or encoded image bytes (any format BitmapFactory reads).
+     */
+    static class Source {
+        final String path;
+        final byte[] bytes;
+
+        private Source(String path, byte[] bytes) {
+            this.path = path;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @param value - a String path or byte[] from the channel.
+         */
+        static Source fromChannelArg(Object value) {
+            if(value instanceof String) {
+                return new Source((String)value, null);
+            } else if(value instanceof byte[]) {
+                return new Source(null, (byte[])value);
+            }
+            throw new IllegalArgumentException("Expecting an image path or bytes, got " + value);
+        }
+
+        Bitmap decode(BitmapFactory.Options options) {
+            return path != null
+                ? BitmapFactory.decodeFile(path, options)
+                : BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        }
+    }
+
+    private final DetectionEngine engine;
+    private final BarcodeFilter.Options filter;
+    private final ExecutorService workers;
+    private final Handler mainHandler;
+    private final int maxDimension;
+    private final AtomicInteger remaining = new AtomicInteger();
+    /** the batch, until every image is done, and each detection that has not called back yet. */
+    private final AtomicInteger engineUsers = new AtomicInteger(1);
+    private volatile boolean cancelled;
+
+    /**
+     * @param filter       - rules barcodes must match to be reported, or null to report every barcode.
+     * @param parallelism  - number of images decoded at once, capped to the number of processors.
+     * @param maxDimension - images with a larger side are downsampled (by powers of two) before detection.
+     * @param mainHandler  - handler the listener is called on.
+     */
+    StaticImageDecoder(
+        List<String> formats, BarcodeFilter.Options filter, int parallelism, int maxDimension, Handler mainHandler
+    ) {
+        this.engine = new MlKitEngine(formats);
+        this.filter = filter;
+        this.maxDimension = maxDimension;
+        this.mainHandler = mainHandler;
+        final int threads = Math.max(1, Math.min(parallelism, Runtime.getRuntime().availableProcessors()));
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "QrDecode"));
+    }
+
+    /**
+     * Starts decoding sources. May only be called once.
+     */
+    void decode(List<Source> sources, Listener listener) {
+        remaining.set(sources.size());
+        if(sources.isEmpty()) {
+            finish(listener);
+        }
+        for(int i = 0, l = sources.size(); i < l; ++i) {
+            final int index = i;
+            final Source source = sources.get(i);
+            workers.execute(() -> decodeOne(index, source, listener));
+        }
+        // the workers exit once the queued images are done
+        workers.shutdown();
+    }
+
+    /**
+     * Skips images that have not started decoding yet. Images being decoded still report their results.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    private void decodeOne(int index, Source source, Listener listener) {
+        try {
+            if(cancelled) {
+                return;
+            }
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            source.decode(options);
+            if(options.outWidth <= 0 || options.outHeight <= 0) {
+                mainHandler.post(() -> listener.onFailed(index, "Unable to decode image"));
+                return;
+            }
+
+            final int sampleSize = sampleSize(options.outWidth, options.outHeight);
+            options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            Bitmap bitmap = source.decode(options);
+            if(bitmap == null) {
+                mainHandler.post(() -> listener.onFailed(index, "Unable to decode image"));
+                return;
+            }
+
+            final BitmapFrame frame = new BitmapFrame(bitmap, sampleSize);
+            final Detection detection = new Detection(frame);
+            engineUsers.incrementAndGet();
+            try {
+                // calls back on the thread ML Kit completes on, which recycles the bitmap even after a timeout
+                engine.detect(frame, Runnable::run, detection);
+            } catch(RuntimeException e) {
+                frame.close();
+                releaseEngine();
+                throw e;
+            }
+            final List<QrBarcode> results = new ArrayList<>();
+            final QrReaderCallbacks collect = data -> data.forEach(results::add);
+            (filter == null ? collect : new BarcodeFilter(collect, filter)).qrRead(detection.await().stream());
+            mainHandler.post(() -> listener.onDecoded(index, results));
+        } catch(ExecutionException | TimeoutException | RuntimeException e) {
+            Log.w(TAG, "Error decoding image " + index, e);
+            final String error = e.getCause() != null ? e.getCause().toString() : e.toString();
+            mainHandler.post(() -> listener.onFailed(index, error));
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mainHandler.post(() -> listener.onFailed(index, "Interrupted"));
+        } catch(OutOfMemoryError e) {
+            Log.w(TAG, "Out of memory decoding image " + index, e);
+            mainHandler.post(() -> listener.onFailed(index, "Image too large"));
+        } finally {
+            if(remaining.decrementAndGet() == 0) {
+                finish(listener);
+            }
+        }
+    }
+
+    private void finish(Listener listener) {
+        releaseEngine();
+        mainHandler.post(listener::onFinished);
+    }
+
+    private void releaseEngine() {
+        if(engineUsers.decrementAndGet() == 0) {
+            engine.close();
+        }
+    }
+
+    private int sampleSize(int width, int height) {
+        int sampleSize = 1;
+        while(width / sampleSize > maxDimension || height / sampleSize > maxDimension) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
@@ -0,0 +1,376 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.util.Log;
+
+import com.google.mlkit.vision.common.InputImage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Detects in high resolution frames in two passes, so that small and distant barcodes are read without detecting in
+ * every frame at full resolution:
+ * <ol>
+ * <li>a coarse pass on the frame scaled down to at most COARSE_LONG_EDGE pixels, which finds barcodes close by</li>
+ * <li>if the coarse pass finds nothing, a pass over overlapping full resolution tiles of the frame, leaving out tiles
+ * that have no sharp edges in the coarse image (and so no barcode)</li>
+ * </ol>
+ * Tiles are detected by several engines of the requested kind at once, each working through the tiles left. ZXing
+ * engines decode on a thread each; ML Kit clients run on ML Kit's own threads. Barcodes found in the tiles are merged
+ * in full frame coordinates, and a barcode read in two overlapping tiles is reported once.
+ * <p>
+ * Like any engine, it is given one frame at a time: the frame is copied upright when it arrives, and the buffers it is
+ * copied to are reused for the next frame once this frame has been called back.
+ */
+class TiledEngine implements DetectionEngine {
+    private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX + TiledEngine.class.getSimpleName();
+    /** the coarse pass is on the frame scaled down by a whole factor to at most this long an edge. */
+    private static final int COARSE_LONG_EDGE = 960;
+    /** luma difference between neighbouring pixels of the coarse image that counts as a sharp edge. */
+    private static final int EDGE_THRESHOLD = 32;
+    /** number of sharp edge pixels (of the coarse image) a tile needs to be detected in. */
+    private static final int MIN_TILE_EDGES = 16;
+    private static final int MIN_TILE_SIZE = 128;
+
+    static class Options {
+        /** edge of the (square) tiles, in frame pixels. Tiles overlap by a quarter of this. */
+        final int tileSize;
+        /** number of tiles detected at once. */
+        final int parallelism;
+
+        private Options(Integer tileSize, Integer parallelism) {
+            // even, as NV21 images must be
+            this.tileSize = (tileSize == null ? 640 : Math.max(MIN_TILE_SIZE, tileSize)) & ~1;
+            this.parallelism = parallelism == null ? 2 : Math.max(
+                1, Math.min(parallelism, Runtime.getRuntime().availableProcessors())
+            );
+        }
+
+        /**
+         * @return the options, or null if not detecting in tiles.
+         */
+        static Options create(Boolean tiled, Integer tileSize, Integer parallelism) {
+            if(tiled == null || !tiled) {
+                return null;
+            }
+            return new Options(tileSize, parallelism);
+        }
+    }
+
+    /**
+     * An upright grayscale image, as NV21 with neutral chroma, for detecting in part of a frame. Reused from frame to
+     * frame.
+     */
+    private static class LumaImage implements QrDetector.Frame {
+        private byte[] nv21 = new byte[0];
+        private int width;
+        private int height;
+        private final Point offset = new Point();
+        private int scale = 1;
+
+        /**
+         * Makes room for an image of width x height (both even). The luma is left for the caller to fill in.
+         */
+        void resize(int width, int height) {
+            this.width = width;
+            this.height = height;
+            final int size = width * height * 3 / 2;
+            if(nv21.length != size) {
+                nv21 = new byte[size];
+                Arrays.fill(nv21, width * height, size, (byte)128);
+            }
+        }
+
+        @Override
+        public InputImage toImage() {
+            return InputImage.fromByteArray(nv21, width, height, 0, InputImage.IMAGE_FORMAT_NV21);
+        }
+
+        @Override
+        public LumaPlane toLuma() {
+            return new LumaPlane(ByteBuffer.wrap(nv21), width, 1, new Rect(0, 0, width, height), 0);
+        }
+
+        @Override
+        public Point getOffset() {
+            return offset;
+        }
+
+        @Override
+        public int getScale() {
+            return scale;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class Slot {
+        final DetectionEngine engine;
+        final LumaImage tile = new LumaImage();
+
+        Slot(DetectionEngine engine) {
+            this.engine = engine;
+        }
+    }
+
+    /**
+     * The tiles of one frame, and the barcodes found in them so far.
+     */
+    private static class TilePass {
+        final List<Rect> tiles;
+        final Point offset;
+        final Executor executor;
+        final Callback callback;
+        final AtomicInteger next = new AtomicInteger();
+        /** slots still working through the tiles. */
+        final AtomicInteger working;
+        final Map<BarcodeKey, QrBarcode> found = new LinkedHashMap<>();
+        volatile Exception error;
+
+        TilePass(List<Rect> tiles, Point offset, int slots, Executor executor, Callback callback) {
+            this.tiles = tiles;
+            this.offset = offset;
+            this.working = new AtomicInteger(slots);
+            this.executor = executor;
+            this.callback = callback;
+        }
+
+        synchronized void add(List<QrBarcode> barcodes) {
+            for(QrBarcode barcode : barcodes) {
+                found.putIfAbsent(BarcodeKey.of(barcode), barcode);
+            }
+        }
+
+        /**
+         * Called by each slot once it has no tiles left. The last one calls back with what the tiles found.
+         */
+        void slotDone() {
+            if(working.decrementAndGet() > 0) {
+                return;
+            }
+            final List<QrBarcode> barcodes;
+            synchronized(this) {
+                barcodes = new ArrayList<>(found.values());
+            }
+            if(barcodes.isEmpty() && error != null) {
+                callback.onFailed(error);
+            } else {
+                callback.onDetected(barcodes);
+            }
+        }
+    }
+
+    private final Options options;
+    private final List<Slot> slots = new ArrayList<>();
+    private final LumaImage coarse = new LumaImage();
+    /** upright luma of the frame being detected. */
+    private byte[] full = new byte[0];
+    private int fullWidth;
+    private int fullHeight;
+    private volatile boolean closed;
+
+    /**
+     * @param formats - barcode formats to detect.
+     */
+    TiledEngine(Options options, Kind kind, List<String> formats) {
+        this.options = options;
+        for(int i = 0; i < options.parallelism; ++i) {
+            slots.add(new Slot(DetectionEngine.create(kind, formats)));
+        }
+    }
+
+    @Override
+    public void detect(final QrDetector.Frame frame, final Executor executor, final Callback callback) {
+        if(closed) {
+            throw new IllegalStateException("Engine closed");
+        }
+        final LumaPlane plane = frame.toLuma();
+        final int width = plane.uprightWidth(), height = plane.uprightHeight();
+        final DetectionEngine first = slots.get(0).engine;
+        if(width <= options.tileSize && height <= options.tileSize) {
+            // a single tile: nothing to gain over detecting in the frame as it is
+            first.detect(frame, executor, callback);
+            return;
+        }
+
+        if(full.length < width * height) {
+            full = new byte[width * height];
+        }
+        plane.copyUpright(full);
+        fullWidth = width;
+        fullHeight = height;
+        final Point offset = new Point(frame.getOffset());
+
+        final int factor = (Math.max(width, height) + COARSE_LONG_EDGE - 1) / COARSE_LONG_EDGE;
+        scaleDown(factor);
+        coarse.offset.set(offset.x, offset.y);
+        first.detect(coarse, executor, new Callback() {
+            @Override
+            public void onDetected(List<QrBarcode> barcodes) {
+                if(!barcodes.isEmpty() || closed) {
+                    callback.onDetected(barcodes);
+                    return;
+                }
+                detectTiles(offset, executor, callback);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                callback.onFailed(e);
+            }
+        });
+    }
+
+    /**
+     * Scales the frame down into the coarse image, averaging factor x factor pixels into each.
+     */
+    private void scaleDown(int factor) {
+        final int width = (fullWidth / factor) & ~1, height = (fullHeight / factor) & ~1;
+        coarse.resize(width, height);
+        coarse.scale = factor;
+        final byte[] out = coarse.nv21;
+        final int area = factor * factor;
+        for(int y = 0; y < height; ++y) {
+            for(int x = 0; x < width; ++x) {
+                int sum = 0;
+                for(int dy = 0; dy < factor; ++dy) {
+                    final int row = (y * factor + dy) * fullWidth + x * factor;
+                    for(int dx = 0; dx < factor; ++dx) {
+                        sum += full[row + dx] & 0xFF;
+                    }
+                }
+                out[y * width + x] = (byte)(sum / area);
+            }
+        }
+    }
+
+    private void detectTiles(Point offset, Executor executor, Callback callback) {
+        final int tileSize = options.tileSize;
+        final int tileWidth = Math.min(tileSize, fullWidth) & ~1, tileHeight = Math.min(tileSize, fullHeight) & ~1;
+        final List<Rect> tiles = new ArrayList<>();
+        for(int top : positions(fullHeight, tileHeight)) {
+            for(int left : positions(fullWidth, tileWidth)) {
+                final Rect tile = new Rect(left, top, left + tileWidth, top + tileHeight);
+                if(hasEdges(tile)) {
+                    tiles.add(tile);
+                }
+            }
+        }
+        if(tiles.isEmpty()) {
+            callback.onDetected(new ArrayList<>());
+            return;
+        }
+
+        final int working = Math.min(slots.size(), tiles.size());
+        final TilePass pass = new TilePass(tiles, offset, working, executor, callback);
+        for(int i = 0; i < working; ++i) {
+            nextTile(slots.get(i), pass);
+        }
+    }
+
+    /**
+     * @return the starts of tiles of size covering length, spread evenly so that they overlap by at least a quarter.
+     */
+    private static int[] positions(int length, int size) {
+        if(length - size < 2) {
+            return new int[] { 0 };
+        }
+        final int step = size - size / 4;
+        final int count = (length - size + step - 1) / step + 1;
+        final int[] ret = new int[count];
+        for(int i = 0; i < count; ++i) {
+            ret[i] = (int)((long)i * (length - size) / (count - 1));
+        }
+        return ret;
+    }
+
+    /**
+     * @return true if the part of the coarse image covering tile has enough sharp edges to hold a barcode.
+     */
+    private boolean hasEdges(Rect tile) {
+        final int factor = coarse.scale, width = coarse.width;
+        final byte[] image = coarse.nv21;
+        final int right = Math.min(tile.right / factor, coarse.width) - 1;
+        final int bottom = Math.min(tile.bottom / factor, coarse.height) - 1;
+        int edges = 0;
+        for(int y = tile.top / factor; y < bottom; ++y) {
+            for(int x = tile.left / factor; x < right; ++x) {
+                final int at = y * width + x;
+                final int value = image[at] & 0xFF;
+                if(Math.abs(value - (image[at + 1] & 0xFF)) > EDGE_THRESHOLD
+                    || Math.abs(value - (image[at + width] & 0xFF)) > EDGE_THRESHOLD)
+                {
+                    if(++edges >= MIN_TILE_EDGES) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Has slot detect in the next tile of pass that nobody has taken yet, and so on until there are none left.
+     */
+    private void nextTile(final Slot slot, final TilePass pass) {
+        final int index = pass.next.getAndIncrement();
+        if(closed || index >= pass.tiles.size()) {
+            pass.slotDone();
+            return;
+        }
+        final Rect bounds = pass.tiles.get(index);
+        final LumaImage tile = slot.tile;
+        tile.resize(bounds.width(), bounds.height());
+        for(int y = 0; y < bounds.height(); ++y) {
+            System.arraycopy(full, (bounds.top + y) * fullWidth + bounds.left, tile.nv21, y * tile.width, tile.width);
+        }
+        tile.offset.set(pass.offset.x + bounds.left, pass.offset.y + bounds.top);
+
+        try {
+            slot.engine.detect(tile, pass.executor, new Callback() {
+                @Override
+                public void onDetected(List<QrBarcode> barcodes) {
+                    pass.add(barcodes);
+                    nextTile(slot, pass);
+                }
+
+                @Override
+                public void onFailed(Exception e) {
+                    pass.error = e;
+                    nextTile(slot, pass);
+                }
+            });
+        } catch(RuntimeException e) {
+            // the engine cannot detect any more, so this slot stops here
+            Log.w(TAG, "Unable to detect in tile: ", e);
+            pass.error = e;
+            pass.slotDone();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for(Slot slot : slots) {
+            slot.engine.close();
+        }
+    }
+
+    @Override
+    public void discard() {
+        closed = true;
+        for(Slot slot : slots) {
+            slot.engine.discard();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Watches the pipeline of a reader for stalls, and reports each one it finds to a listener, which recovers from it.
+ * Runs on the thread it is created on (the main thread).
+ * <p>
+ * Watched are:
+ * <ul>
+ * <li>camera output: no frame for the stall timeout means the camera (or its session) stopped, or that all frames of
+ * the ImageReader are held and were never closed, in which case the camera cannot deliver more</li>
+ * <li>detection: a detection running for longer than its timeout will not complete</li>
+ * <li>the heartbeat from Dart, when a timeout is set for it</li>
+ * </ul>
+ * When restarting the camera does not bring frames back, each next restart waits twice as long, up to 8 times the
+ * stall timeout, so that a camera that is gone for good is not reopened all the time.
+ */
+class Watchdog {
+    private static final String TAG = FlutterQrBarScannerPlugin.LOG_TAG_PREFIX + Watchdog.class.getSimpleName();
+    private static final long CHECK_INTERVAL_MS = 500;
+    private static final int MAX_BACKOFF_SHIFT = 3;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    enum Action {
+        restartCamera,
+        restartDetector,
+        stop
+    }
+
+    enum Issue {
+        /** the camera delivered no frames. */
+        cameraStalled(Action.restartCamera),
+        /** the camera delivered no frames, as every ImageReader frame is held. */
+        imagesLeaked(Action.restartCamera),
+        /** a detection did not complete. */
+        detectionStuck(Action.restartDetector),
+        /** Dart stopped calling heartbeat. */
+        heartbeatMissed(Action.stop);
+
+        final Action action;
+
+        Issue(Action action) {
+            this.action = action;
+        }
+    }
+
+    interface Listener {
+        /**
+         * @param stalledMs - how long the pipeline had been stalled for.
+         */
+        void onHealthIssue(Issue issue, long stalledMs);
+    }
+
+    static class Options {
+        /** no frame from the camera for this long counts as a stall, or 0 to not watch the camera. */
+        final int cameraStallMs;
+        /** a detection running for this long counts as stuck, or 0 to not watch detection. */
+        final int detectionStuckMs;
+        /** no heartbeat from Dart for this long stops the reader, or 0 to not expect heartbeats. */
+        final int heartbeatTimeoutMs;
+
+        Options(Integer cameraStallMs, Integer detectionStuckMs, Integer heartbeatTimeoutMs) {
+            this.cameraStallMs = cameraStallMs == null ? 3000 : Math.max(0, cameraStallMs);
+            this.detectionStuckMs = detectionStuckMs == null ? 5000 : Math.max(0, detectionStuckMs);
+            this.heartbeatTimeoutMs = heartbeatTimeoutMs == null ? 0 : Math.max(0, heartbeatTimeoutMs);
+        }
+
+        boolean isEnabled() {
+            return cameraStallMs > 0 || detectionStuckMs > 0 || heartbeatTimeoutMs > 0;
+        }
+    }
+
+    private final Handler handler = new Handler(Looper.myLooper());
+    private final Options options;
+    private final PipelineStats stats;
+    private final QrDetector detector;
+    private final QrCamera camera;
+    private final boolean watchCamera;
+    private final Listener listener;
+    private final Runnable checker = this::check;
+
+    /** when the camera was last (re)started or resumed. */
+    private long cameraStartedNs;
+    /** restarts of the camera since it last delivered a frame. */
+    private int cameraRestarts;
+    private long lastBeatNs;
+    private boolean running;
+
+    /**
+     * @param watchCamera - false for frame sources that may legitimately stop delivering frames.
+     */
+    Watchdog(
+        Options options, PipelineStats stats, QrDetector detector, QrCamera camera, boolean watchCamera,
+        Listener listener
+    ) {
+        this.options = options;
+        this.stats = stats;
+        this.detector = detector;
+        this.camera = camera;
+        this.watchCamera = watchCamera;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts (or, after stop(), resumes) watching, with fresh timeouts.
+     */
+    void start() {
+        final long now = PipelineStats.now();
+        cameraStartedNs = now;
+        cameraRestarts = 0;
+        lastBeatNs = now;
+        running = true;
+        handler.removeCallbacks(checker);
+        handler.postDelayed(checker, CHECK_INTERVAL_MS);
+    }
+
+    void stop() {
+        running = false;
+        handler.removeCallbacks(checker);
+    }
+
+    void beat() {
+        lastBeatNs = PipelineStats.now();
+    }
+
+    private void check() {
+        if(!running) {
+            return;
+        }
+        final long now = PipelineStats.now();
+
+        if(options.heartbeatTimeoutMs > 0 && now - lastBeatNs > options.heartbeatTimeoutMs * NANOS_PER_MILLI) {
+            stop();
+            report(Issue.heartbeatMissed, now - lastBeatNs);
+            return;
+        }
+
+        if(options.detectionStuckMs > 0) {
+            final long detectingNs = detector.detectingForNs();
+            if(detectingNs > options.detectionStuckMs * NANOS_PER_MILLI) {
+                report(Issue.detectionStuck, detectingNs);
+            }
+        }
+
+        if(watchCamera && options.cameraStallMs > 0) {
+            final long lastFrameNs = stats.lastFrameNs();
+            if(lastFrameNs > cameraStartedNs) {
+                cameraRestarts = 0;
+            }
+            final long stalledNs = now - Math.max(lastFrameNs, cameraStartedNs);
+            final long timeoutNs = (options.cameraStallMs * NANOS_PER_MILLI) << Math.min(
+                cameraRestarts, MAX_BACKOFF_SHIFT
+            );
+            if(stalledNs > timeoutNs) {
+                ++cameraRestarts;
+                cameraStartedNs = now;
+                report(camera.imagesExhausted() ? Issue.imagesLeaked : Issue.cameraStalled, stalledNs);
+            }
+        }
+
+        if(running) {
+            handler.postDelayed(checker, CHECK_INTERVAL_MS);
+        }
+    }
+
+    private void report(Issue issue, long stalledNs) {
+        final long stalledMs = stalledNs / NANOS_PER_MILLI;
+        Log.w(TAG, issue + " for " + stalledMs + " ms, recovering with " + issue.action);
+        listener.onHealthIssue(issue, stalledMs);
+    }
+}
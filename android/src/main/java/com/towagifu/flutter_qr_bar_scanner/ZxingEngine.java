@@ -0,0 +1,251 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.Process;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.HybridBinarizer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Detects with ZXing on the luma plane of frames, on a thread of its own. Avoids converting frames into InputImages
+ * and loading the ML Kit model, which makes it cheaper for simple workloads such as QR codes and 1D codes held
+ * roughly level. Reads at most one barcode per frame.
+ */
+class ZxingEngine implements DetectionEngine {
+    /** formats that AUTO uses ZXing for. ML Kit copes better with the other 2D formats at an angle or far away. */
+    private static final EnumSet<BarcodeFormats> PREFERRED_FORMATS = EnumSet.of(
+        BarcodeFormats.QR_CODE, BarcodeFormats.CODE_128, BarcodeFormats.CODE_39, BarcodeFormats.CODE_93,
+        BarcodeFormats.CODABAR, BarcodeFormats.EAN_13, BarcodeFormats.EAN_8, BarcodeFormats.ITF,
+        BarcodeFormats.UPC_A, BarcodeFormats.UPC_E
+    );
+
+    private final MultiFormatReader reader = new MultiFormatReader();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT);
+        runnable.run();
+    }, "QrZxing"));
+    /** upright luma of the frame being detected, reused across frames. Confined to the worker thread. */
+    private byte[] luma = new byte[0];
+
+    /**
+     * @param formats - barcode formats to detect. No formats, or ALL_FORMATS, reads every format ZXing supports.
+     */
+    ZxingEngine(List<String> formats) {
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        List<BarcodeFormat> possible = possibleFormats(formats);
+        if(!possible.isEmpty()) {
+            hints.put(DecodeHintType.POSSIBLE_FORMATS, possible);
+        }
+        reader.setHints(hints);
+    }
+
+    /**
+     * @return true if every requested format is one that ZXing reads about as well as ML Kit.
+     */
+    static boolean preferredFor(List<String> formats) {
+        if(formats == null || formats.isEmpty()) {
+            return false;
+        }
+        for(String format : formats) {
+            try {
+                if(!PREFERRED_FORMATS.contains(BarcodeFormats.valueOf(format))) {
+                    return false;
+                }
+            } catch(IllegalArgumentException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void detect(final QrDetector.Frame frame, final Executor executor, final Callback callback) {
+        worker.execute(() -> {
+            final List<QrBarcode> barcodes;
+            try {
+                barcodes = decode(frame);
+            } catch(RuntimeException e) {
+                executor.execute(() -> callback.onFailed(e));
+                return;
+            }
+            executor.execute(() -> callback.onDetected(barcodes));
+        });
+    }
+
+    @Override
+    public void close() {
+        worker.shutdown();
+    }
+
+    @Override
+    public void discard() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * Decodes frame on the calling thread, which must be the worker thread unless the engine is only used this way.
+     */
+    List<QrBarcode> decode(QrDetector.Frame frame) {
+        final LumaPlane plane = frame.toLuma();
+        final int width = plane.uprightWidth(), height = plane.uprightHeight();
+        if(luma.length < width * height) {
+            luma = new byte[width * height];
+        }
+        plane.copyUpright(luma);
+
+        final BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(
+            new PlanarYUVLuminanceSource(luma, width, height, 0, 0, width, height, false)
+        ));
+        try {
+            return Collections.singletonList(
+                toBarcode(reader.decodeWithState(bitmap), frame.getOffset(), frame.getScale())
+            );
+        } catch(NotFoundException e) {
+            return Collections.emptyList();
+        } finally {
+            reader.reset();
+        }
+    }
+
+    /**
+     * @return the barcode read, with the ML Kit format value of its format, or FORMAT_UNKNOWN (as ML Kit reports) for
+     * formats that BarcodeFormats has no value for, such as RSS_14 or MAXICODE.
+     */
+    static QrBarcode toBarcode(Result result, Point offset, int scale) {
+        Rect bounds = null;
+        ResultPoint[] points = result.getResultPoints();
+        if(points != null && points.length > 0) {
+            float left = Float.MAX_VALUE, top = Float.MAX_VALUE, right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+            for(ResultPoint point : points) {
+                if(point == null) {
+                    continue;
+                }
+                left = Math.min(left, point.getX());
+                top = Math.min(top, point.getY());
+                right = Math.max(right, point.getX());
+                bottom = Math.max(bottom, point.getY());
+            }
+            if(left <= right) {
+                bounds = new Rect(
+                    (int)Math.floor(left), (int)Math.floor(top), (int)Math.ceil(right), (int)Math.ceil(bottom)
+                );
+            }
+        }
+        final BarcodeFormats format = fromZxing(result.getBarcodeFormat());
+        return new QrBarcode(
+            result.getText(), byteSegments(result), bounds, format == null ? Barcode.FORMAT_UNKNOWN : format.intValue,
+            offset, scale
+        );
+    }
+
+    /**
+     * @return the bytes of the byte mode segments of the barcode (as ML Kit reports raw bytes), or null if it has
+     * none.
+     */
+    @SuppressWarnings("unchecked")
+    private static byte[] byteSegments(Result result) {
+        Map<ResultMetadataType, Object> metadata = result.getResultMetadata();
+        Object segments = metadata == null ? null : metadata.get(ResultMetadataType.BYTE_SEGMENTS);
+        if(!(segments instanceof List)) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(byte[] segment : (List<byte[]>)segments) {
+            out.write(segment, 0, segment.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the ZXing formats to restrict decoding to, or an empty list to read every format ZXing supports.
+     */
+    static List<BarcodeFormat> possibleFormats(List<String> formats) {
+        List<BarcodeFormat> ret = new ArrayList<>();
+        if(formats == null) {
+            return ret;
+        }
+        for(String string : formats) {
+            final BarcodeFormats format;
+            try {
+                format = BarcodeFormats.valueOf(string);
+            } catch(IllegalArgumentException e) {
+                continue;
+            }
+            if(format == BarcodeFormats.ALL_FORMATS) {
+                return new ArrayList<>();
+            }
+            BarcodeFormat zxing = toZxing(format);
+            if(zxing != null) {
+                ret.add(zxing);
+            }
+        }
+        return ret;
+    }
+
+    private static BarcodeFormat toZxing(BarcodeFormats format) {
+        switch(format) {
+            case CODE_128:
+                return BarcodeFormat.CODE_128;
+            case CODE_39:
+                return BarcodeFormat.CODE_39;
+            case CODE_93:
+                return BarcodeFormat.CODE_93;
+            case CODABAR:
+                return BarcodeFormat.CODABAR;
+            case DATA_MATRIX:
+                return BarcodeFormat.DATA_MATRIX;
+            case EAN_13:
+                return BarcodeFormat.EAN_13;
+            case EAN_8:
+                return BarcodeFormat.EAN_8;
+            case ITF:
+                return BarcodeFormat.ITF;
+            case QR_CODE:
+                return BarcodeFormat.QR_CODE;
+            case UPC_A:
+                return BarcodeFormat.UPC_A;
+            case UPC_E:
+                return BarcodeFormat.UPC_E;
+            case PDF417:
+                return BarcodeFormat.PDF_417;
+            case AZTEC:
+                return BarcodeFormat.AZTEC;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the format, or null if BarcodeFormats has no value for it.
+     */
+    static BarcodeFormats fromZxing(BarcodeFormat format) {
+        for(BarcodeFormats value : BarcodeFormats.values()) {
+            if(value != BarcodeFormats.ALL_FORMATS && toZxing(value) == format) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,64 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class BarcodeAggregatorTest {
+    private static final QrBarcode LABEL = new QrBarcode(
+        "PALLET-0001", null, FakeFrame.rect(100, 100, 400, 200), Barcode.FORMAT_CODE_128, null, 1
+    );
+
+    private final List<BarcodeAggregator.Sighting> added = new ArrayList<>();
+
+    private BarcodeAggregator aggregator(int windowFrames, int minSightings) {
+        return new BarcodeAggregator(
+            BarcodeAggregator.Options.create(true, windowFrames, minSightings, null, null),
+            (added, moved, removed, collected) -> this.added.addAll(added)
+        );
+    }
+
+    /**
+     * Passes frames to aggregator, reading LABEL in those marked true.
+     */
+    private static void frames(BarcodeAggregator aggregator, boolean... seen) {
+        for(boolean labelSeen : seen) {
+            aggregator.qrRead(labelSeen ? Stream.of(LABEL) : Stream.empty());
+        }
+    }
+
+    @Test
+    public void addsOnceSeenInEnoughFrames() {
+        final BarcodeAggregator aggregator = aggregator(30, 3);
+        frames(aggregator, true, true);
+        assertEquals(0, added.size());
+        frames(aggregator, true);
+        assertEquals(1, added.size());
+        assertEquals(3, added.get(0).count);
+    }
+
+    @Test
+    public void onlyCountsSightingsWithinTheWindow() {
+        final BarcodeAggregator aggregator = aggregator(5, 3);
+        // seen every 3 frames: never unseen for the window, but never 3 times within 5 frames
+        for(int i = 0; i < 10; ++i) {
+            frames(aggregator, true, false, false);
+        }
+        assertEquals(0, added.size());
+        frames(aggregator, true, true);
+        assertEquals(1, added.size());
+    }
+
+    @Test
+    public void countsEverySightingWithoutWindow() {
+        final BarcodeAggregator aggregator = aggregator(0, 3);
+        frames(aggregator, true, false, false, false, false, false, true, false, true);
+        assertEquals(1, added.size());
+    }
+}
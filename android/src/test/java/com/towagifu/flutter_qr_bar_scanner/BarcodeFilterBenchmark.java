@@ -0,0 +1,81 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching a barcode against a BarcodeFilter with each kind of rule, and parsing a GS1 element string on its own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BarcodeFilterBenchmark {
+    private static final String GS1 = "]C1010950110102091717251231" + "10AB1\u001D" + "21XYZ123";
+
+    private final QrBarcode url = barcode("https://example.com/products/4000?utm_source=qr", Barcode.FORMAT_QR_CODE);
+    private final QrBarcode ean = barcode("4006381333931", Barcode.FORMAT_EAN_13);
+    private final QrBarcode gs1 = barcode(GS1, Barcode.FORMAT_CODE_128);
+
+    private final BarcodeFilter prefix = filter(BarcodeFilter.Options.create(
+        null, null, null, Arrays.asList("http://", "https://"), null, null, null
+    ));
+    private final BarcodeFilter pattern = filter(BarcodeFilter.Options.create(
+        "https://example\\.com/products/\\d+(\\?.*)?", null, null, null, null, null, null
+    ));
+    private final BarcodeFilter checksum = filter(BarcodeFilter.Options.create(
+        null, null, null, null, true, null, null
+    ));
+    private final BarcodeFilter gs1Ais = filter(BarcodeFilter.Options.create(
+        null, null, null, null, true, true, Collections.singletonList("10")
+    ));
+
+    private static QrBarcode barcode(String content, int format) {
+        return new QrBarcode(content, null, FakeFrame.rect(100, 100, 400, 400), format, null, 1);
+    }
+
+    private static BarcodeFilter filter(BarcodeFilter.Options options) {
+        return new BarcodeFilter(data -> { }, options);
+    }
+
+    @Benchmark
+    public boolean prefix() {
+        return prefix.matches(url);
+    }
+
+    @Benchmark
+    public boolean pattern() {
+        return pattern.matches(url);
+    }
+
+    @Benchmark
+    public boolean checksum() {
+        return checksum.matches(ean);
+    }
+
+    @Benchmark
+    public boolean gs1() {
+        return gs1Ais.matches(gs1);
+    }
+
+    @Benchmark
+    public Map<String, String> gs1Parse() {
+        return Gs1ElementString.parse(GS1);
+    }
+}
@@ -0,0 +1,49 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class BarcodeFormatsTest {
+    /** the Dart enum, relative to the android directory that unit tests run in. */
+    private static final String DART_ENUM = "../lib/barcode_formats.dart";
+
+    @Test
+    public void orderMatchesDartEnum() throws IOException {
+        final String source = new String(Files.readAllBytes(Paths.get(DART_ENUM)), StandardCharsets.UTF_8);
+        final Matcher body = Pattern.compile("enum BarcodeFormats \\{([^}]*)\\}").matcher(source);
+        assertTrue(body.find());
+        final List<String> dart = new ArrayList<>();
+        for(String value : body.group(1).split(",")) {
+            if(!value.trim().isEmpty()) {
+                dart.add(value.trim());
+            }
+        }
+
+        final List<String> java = new ArrayList<>();
+        for(BarcodeFormats format : BarcodeFormats.values()) {
+            java.add(format.name());
+        }
+        assertEquals(dart, java);
+    }
+
+    @Test
+    public void ordinalOfValue() {
+        assertEquals(BarcodeFormats.ALL_FORMATS.ordinal(), BarcodeFormats.ordinalOfValue(Barcode.FORMAT_ALL_FORMATS));
+        assertEquals(BarcodeFormats.QR_CODE.ordinal(), BarcodeFormats.ordinalOfValue(Barcode.FORMAT_QR_CODE));
+        assertEquals(BarcodeFormats.AZTEC.ordinal(), BarcodeFormats.ordinalOfValue(Barcode.FORMAT_AZTEC));
+        assertEquals(-1, BarcodeFormats.ordinalOfValue(Barcode.FORMAT_UNKNOWN));
+    }
+}
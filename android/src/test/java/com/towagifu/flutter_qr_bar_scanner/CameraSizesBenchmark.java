@@ -0,0 +1,42 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picking the preview and analysis sizes from the sizes of a typical back camera, as done on every start unless the
+ * sizes picked are cached already. analysis includes resolving the analysis resolution for a QR code scanner.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CameraSizesBenchmark {
+    private static final List<String> FORMATS = Collections.singletonList("QR_CODE");
+
+    @Benchmark
+    public int preview() {
+        return CameraSizes.preview(CameraSizesTest.SIZES, 90, 1080, 1920);
+    }
+
+    @Benchmark
+    public int analysis() {
+        final AnalysisResolution resolution = AnalysisResolution.resolve(
+            AnalysisResolution.Mode.AUTO, null, null, null, 1080, 1920, FORMATS
+        );
+        return CameraSizes.analysis(CameraSizesTest.SIZES, 90, resolution, 1920, 1080);
+    }
+}
@@ -0,0 +1,58 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class CameraSizesTest {
+    /** YUV sizes of a typical back camera, largest first. */
+    static final int[][] SIZES = {
+        { 4032, 3024 }, { 4000, 3000 }, { 3840, 2160 }, { 3264, 2448 }, { 2560, 1440 }, { 2048, 1536 },
+        { 1920, 1440 }, { 1920, 1080 }, { 1600, 1200 }, { 1440, 1080 }, { 1280, 960 }, { 1280, 720 },
+        { 1024, 768 }, { 960, 720 }, { 800, 600 }, { 720, 480 }, { 640, 480 }, { 640, 360 }, { 352, 288 },
+        { 320, 240 }, { 176, 144 },
+    };
+
+    @Test
+    public void previewIsSmallestCoveringTarget() {
+        assertArrayEquals(new int[] { 1920, 1080 }, SIZES[CameraSizes.preview(SIZES, 0, 1900, 1000)]);
+    }
+
+    @Test
+    public void previewSwapsTargetForSidewaysSensor() {
+        assertArrayEquals(new int[] { 1280, 720 }, SIZES[CameraSizes.preview(SIZES, 90, 720, 1280)]);
+    }
+
+    @Test
+    public void previewFallsBackToFirstSize() {
+        assertArrayEquals(SIZES[0], SIZES[CameraSizes.preview(SIZES, 0, 8000, 6000)]);
+    }
+
+    @Test
+    public void analysisPrefersPreviewAspectRatio() {
+        final AnalysisResolution resolution = AnalysisResolution.resolve(
+            AnalysisResolution.Mode.FIXED, 1000, 700, null, 1920, 1080, null
+        );
+        assertArrayEquals(new int[] { 1280, 720 }, SIZES[CameraSizes.analysis(SIZES, 0, resolution, 1920, 1080)]);
+        assertArrayEquals(new int[] { 1024, 768 }, SIZES[CameraSizes.analysis(SIZES, 0, resolution, 1600, 1200)]);
+    }
+
+    @Test
+    public void analysisKeepsWithinMaxPixels() {
+        final AnalysisResolution resolution = AnalysisResolution.resolve(
+            AnalysisResolution.Mode.AUTO, null, null, 640 * 480, 1920, 1080,
+            Collections.singletonList("QR_CODE")
+        );
+        assertArrayEquals(new int[] { 640, 360 }, SIZES[CameraSizes.analysis(SIZES, 0, resolution, 1920, 1080)]);
+    }
+
+    @Test
+    public void analysisTakesSmallestWhenAllOverMaxPixels() {
+        final AnalysisResolution resolution = AnalysisResolution.resolve(
+            AnalysisResolution.Mode.PREVIEW, null, null, 100, 1920, 1080, null
+        );
+        assertArrayEquals(new int[] { 176, 144 }, SIZES[CameraSizes.analysis(SIZES, 0, resolution, 1920, 1080)]);
+    }
+}
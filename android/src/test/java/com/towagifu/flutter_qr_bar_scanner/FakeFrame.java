@@ -0,0 +1,116 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.common.InputImage;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A frame made of a luma plane only, for driving engines and the detector on the JVM. android.jar is a stub there, so
+ * Rects and Points get their fields set directly.
+ */
+class FakeFrame implements QrDetector.Frame {
+    final byte[] luma;
+    final int width;
+    final int height;
+    final int rotation;
+    final AtomicInteger closed = new AtomicInteger();
+
+    /**
+     * @param width    - width of the frame as stored (before rotation).
+     * @param height   - height of the frame as stored (before rotation).
+     * @param rotation - clockwise rotation that makes the frame upright.
+     */
+    FakeFrame(byte[] luma, int width, int height, int rotation) {
+        this.luma = luma;
+        this.width = width;
+        this.height = height;
+        this.rotation = rotation;
+    }
+
+    /**
+     * @return a frame of a mid-grey background with nothing on it.
+     */
+    static FakeFrame blank(int width, int height) {
+        byte[] luma = new byte[width * height];
+        Arrays.fill(luma, (byte)128);
+        return new FakeFrame(luma, width, height, 0);
+    }
+
+    /**
+     * @return a frame showing a barcode of content and format, size pixels wide, in the middle of a white background.
+     */
+    static FakeFrame withBarcode(String content, BarcodeFormat format, int size, int width, int height) {
+        final BitMatrix matrix;
+        try {
+            matrix = new MultiFormatWriter().encode(content, format, size, format == BarcodeFormat.QR_CODE ? size : 80);
+        } catch(WriterException e) {
+            throw new IllegalArgumentException(e);
+        }
+        byte[] luma = new byte[width * height];
+        Arrays.fill(luma, (byte)255);
+        final int left = (width - matrix.getWidth()) / 2, top = (height - matrix.getHeight()) / 2;
+        for(int y = 0; y < matrix.getHeight(); ++y) {
+            for(int x = 0; x < matrix.getWidth(); ++x) {
+                if(matrix.get(x, y)) {
+                    luma[(top + y) * width + left + x] = 0;
+                }
+            }
+        }
+        return new FakeFrame(luma, width, height, 0);
+    }
+
+    /**
+     * @return this frame as a camera with a sensor rotated by rotation would deliver it, i.e. rotated the other way.
+     */
+    FakeFrame rotated(int rotation) {
+        if(rotation != 90) {
+            throw new IllegalArgumentException("Only 90 is supported");
+        }
+        byte[] out = new byte[luma.length];
+        // stored so that rotating it 90 degrees clockwise gives this frame back
+        for(int y = 0; y < height; ++y) {
+            for(int x = 0; x < width; ++x) {
+                out[(width - 1 - x) * height + y] = luma[y * width + x];
+            }
+        }
+        return new FakeFrame(out, height, width, rotation);
+    }
+
+    static Rect rect(int left, int top, int right, int bottom) {
+        Rect rect = new Rect();
+        rect.left = left;
+        rect.top = top;
+        rect.right = right;
+        rect.bottom = bottom;
+        return rect;
+    }
+
+    @Override
+    public InputImage toImage() {
+        return null;
+    }
+
+    @Override
+    public LumaPlane toLuma() {
+        return new LumaPlane(ByteBuffer.wrap(luma), width, 1, rect(0, 0, width, height), rotation);
+    }
+
+    @Override
+    public Point getOffset() {
+        return new Point();
+    }
+
+    @Override
+    public void close() {
+        closed.incrementAndGet();
+    }
+}
@@ -0,0 +1,54 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording latencies, from one thread and from the four threads that record into PipelineStats at most, and reading
+ * a percentile out of a histogram of a few thousand detections.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LatencyHistogramBenchmark {
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LatencyHistogram filled = new LatencyHistogram();
+
+    @Setup
+    public void setUp() {
+        for(int i = 0; i < 5000; ++i) {
+            filled.recordNanos(ThreadLocalRandom.current().nextLong(1_000_000, 80_000_000));
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        histogram.recordNanos(ThreadLocalRandom.current().nextLong(1_000_000, 80_000_000));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        histogram.recordNanos(ThreadLocalRandom.current().nextLong(1_000_000, 80_000_000));
+    }
+
+    @Benchmark
+    public long percentile() {
+        return filled.percentile(95);
+    }
+}
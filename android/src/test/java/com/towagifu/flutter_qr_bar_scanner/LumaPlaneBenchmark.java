@@ -0,0 +1,56 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per frame work on the luma plane of a 1280x720 frame, stored in a direct buffer as Images are: copying it upright for
+ * ZXing at each rotation, and measuring its motion for the frame rate governor and quality gate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LumaPlaneBenchmark {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    @Param({ "0", "90", "180", "270" })
+    public int rotation;
+
+    private LumaPlane plane;
+    private final byte[] out = new byte[WIDTH * HEIGHT];
+    private final MotionEstimator motionEstimator = new MotionEstimator();
+
+    @Setup
+    public void setUp() {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        buffer.put(FakeFrame.blank(WIDTH, HEIGHT).luma).flip();
+        plane = new LumaPlane(buffer, WIDTH, 1, FakeFrame.rect(0, 0, WIDTH, HEIGHT), rotation);
+    }
+
+    @Benchmark
+    public byte[] copyUpright() {
+        plane.copyUpright(out);
+        return out;
+    }
+
+    @Benchmark
+    public float measureMotion() {
+        return motionEstimator.measure(plane);
+    }
+}
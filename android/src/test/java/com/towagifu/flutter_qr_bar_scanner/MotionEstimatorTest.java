@@ -0,0 +1,43 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class MotionEstimatorTest {
+    @Test
+    public void firstFrameIsUnknown() {
+        assertEquals(MotionEstimator.UNKNOWN, new MotionEstimator().measure(FakeFrame.blank(640, 480).toLuma()), 0);
+    }
+
+    @Test
+    public void stillFrameHasNoMotion() {
+        MotionEstimator estimator = new MotionEstimator();
+        FakeFrame frame = FakeFrame.withBarcode("hello", BarcodeFormat.QR_CODE, 300, 640, 480);
+        estimator.measure(frame.toLuma());
+        assertEquals(0, estimator.measure(frame.toLuma()), 0);
+    }
+
+    @Test
+    public void changedFrameHasMotion() {
+        MotionEstimator estimator = new MotionEstimator();
+        estimator.measure(FakeFrame.blank(640, 480).toLuma());
+        float motion = estimator.measure(FakeFrame.withBarcode("hello", BarcodeFormat.QR_CODE, 300, 640, 480).toLuma());
+        assertTrue("motion " + motion, motion > 16);
+    }
+
+    @Test
+    public void changedCropIsUnknown() {
+        MotionEstimator estimator = new MotionEstimator();
+        FakeFrame frame = FakeFrame.blank(640, 480);
+        estimator.measure(frame.toLuma());
+        LumaPlane cropped = new LumaPlane(ByteBuffer.wrap(frame.luma), 640, 1, FakeFrame.rect(0, 0, 320, 240), 0);
+        assertEquals(MotionEstimator.UNKNOWN, estimator.measure(cropped), 0);
+        assertEquals(0, estimator.measure(cropped), 0);
+    }
+}
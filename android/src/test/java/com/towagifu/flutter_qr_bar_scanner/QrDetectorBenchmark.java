@@ -0,0 +1,130 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Frames passed through the QrDetector mailbox to a StubEngine.
+ * <p>
+ * schedule measures the cost of scheduling a frame, with an engine that calls back before detect() returns. paced
+ * feeds a frame every millisecond (a 30 fps camera sped up 33 times, so that an iteration sees a thousand frames) to
+ * an engine that takes detectionLatencyUs to call back, and counts the frames detected and dropped per second: the
+ * drop rate is dropped / (detected + dropped). Counts may be off by the frame being detected at the end of an
+ * iteration.
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QrDetectorBenchmark {
+    private static final long FRAME_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @State(Scope.Thread)
+    public static class Inline {
+        QrDetector detector;
+        FakeFrame frame;
+
+        @Setup
+        public void setUp() {
+            detector = new QrDetector(
+                data -> { }, new StubEngine(0, Collections.emptyList()), Runnable::run, new PipelineStats()
+            );
+            frame = FakeFrame.blank(64, 48);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Paced {
+        @Param({ "0", "500", "900", "2000", "4000" })
+        public int detectionLatencyUs;
+
+        StubEngine engine;
+        QrDetector detector;
+        FakeFrame frame;
+        final AtomicLong detected = new AtomicLong();
+        private long nextFrameNs;
+
+        @Setup
+        public void setUp() {
+            engine = new StubEngine(TimeUnit.MICROSECONDS.toNanos(detectionLatencyUs), Collections.emptyList());
+            detector = new QrDetector(data -> detected.incrementAndGet(), engine, Runnable::run, new PipelineStats());
+            frame = FakeFrame.blank(64, 48);
+            nextFrameNs = System.nanoTime();
+        }
+
+        @TearDown
+        public void tearDown() {
+            detector.close();
+            engine.close();
+        }
+
+        void awaitNextFrame() {
+            // a frame that is late (e.g. between iterations) is not made up for, as a camera does not queue frames
+            nextFrameNs = Math.max(nextFrameNs + FRAME_INTERVAL_NS, System.nanoTime());
+            long wait;
+            while((wait = nextFrameNs - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    /**
+     * Frames detected and dropped, reported per second.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Frames {
+        public long detected;
+        public long dropped;
+        /* totals at the previous update, carried over between iterations */
+        private long detectedBefore;
+        private long closedBefore;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            detected = 0;
+            dropped = 0;
+        }
+
+        void update(Paced paced) {
+            final long detectedNow = paced.detected.get(), closedNow = paced.frame.closed.get();
+            detected += detectedNow - detectedBefore;
+            // every frame is closed once: either when dropped, or once its detection has been counted
+            dropped += (closedNow - closedBefore) - (detectedNow - detectedBefore);
+            detectedBefore = detectedNow;
+            closedBefore = closedNow;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void schedule(Inline inline) {
+        inline.detector.detect(inline.frame);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void paced(Paced paced, Frames frames) {
+        paced.awaitNextFrame();
+        paced.detector.detect(paced.frame);
+        frames.update(paced);
+    }
+}
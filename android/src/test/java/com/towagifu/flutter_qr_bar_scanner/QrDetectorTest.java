@@ -0,0 +1,69 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class QrDetectorTest {
+    @Test
+    public void detectsEachFrameAndClosesItOnce() {
+        final AtomicInteger reads = new AtomicInteger();
+        final StubEngine engine = new StubEngine(0, Collections.emptyList());
+        final QrDetector detector = new QrDetector(
+            data -> reads.incrementAndGet(), engine, Runnable::run, new PipelineStats()
+        );
+
+        final FakeFrame first = FakeFrame.blank(64, 48), second = FakeFrame.blank(64, 48);
+        detector.detect(first);
+        detector.detect(second);
+
+        assertEquals(2, reads.get());
+        assertEquals(1, first.closed.get());
+        assertEquals(1, second.closed.get());
+    }
+
+    @Test
+    public void replacesWaitingFrameWhileDetecting() throws InterruptedException {
+        final StubEngine engine = new StubEngine(TimeUnit.MILLISECONDS.toNanos(50), Collections.emptyList());
+        final CountDownLatch read = new CountDownLatch(2);
+        final QrDetector detector = new QrDetector(
+            data -> read.countDown(), engine, Runnable::run, new PipelineStats()
+        );
+
+        final FakeFrame detecting = FakeFrame.blank(64, 48), replaced = FakeFrame.blank(64, 48);
+        final FakeFrame latest = FakeFrame.blank(64, 48);
+        detector.detect(detecting);
+        detector.detect(replaced);
+        assertEquals(0, replaced.closed.get());
+        detector.detect(latest);
+        assertEquals(1, replaced.closed.get());
+
+        assertTrue(read.await(5, TimeUnit.SECONDS));
+        // waits for the detection of latest to be done with its frame
+        engine.close();
+        assertEquals(2, engine.detections.get());
+        assertEquals(1, detecting.closed.get());
+        assertEquals(1, latest.closed.get());
+    }
+
+    @Test
+    public void closesFramesAfterClose() {
+        final StubEngine engine = new StubEngine(0, Collections.emptyList());
+        final CountDownLatch read = new CountDownLatch(2);
+        final QrDetector detector = new QrDetector(
+            data -> read.countDown(), engine, Runnable::run, new PipelineStats()
+        );
+        detector.close();
+
+        final FakeFrame frame = FakeFrame.blank(64, 48);
+        detector.detect(frame);
+        assertEquals(0, engine.detections.get());
+        assertEquals(1, frame.closed.get());
+    }
+}
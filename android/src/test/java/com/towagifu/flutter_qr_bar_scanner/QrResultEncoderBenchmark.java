@@ -0,0 +1,61 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding the results of a frame for the results channel (encode) and for a method call (encodeToBytes), for frames
+ * with one or more URL QR codes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QrResultEncoderBenchmark {
+    @Param({ "1", "4", "16" })
+    public int barcodes;
+
+    private final QrResultEncoder encoder = new QrResultEncoder();
+    private List<QrBarcode> results;
+
+    @Setup
+    public void setUp() {
+        results = new ArrayList<>();
+        for(int i = 0; i < barcodes; ++i) {
+            final String content = "https://example.com/products/" + (4000 + i) + "?utm_source=qr";
+            results.add(new QrBarcode(
+                content, content.getBytes(StandardCharsets.UTF_8), FakeFrame.rect(100, 100 + i, 400, 400 + i),
+                Barcode.FORMAT_QR_CODE, null, 1
+            ));
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        return encoder.encode(1, results);
+    }
+
+    @Benchmark
+    public byte[] encodeToBytes() {
+        return encoder.encodeToBytes(1, results);
+    }
+}
@@ -0,0 +1,66 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passing the results of a frame through a ResultStabilizer that confirms barcodes over 3 frames and reports each once
+ * until it is gone, with the same barcodes in every frame; and keying a barcode, which the stabilizer, aggregator and
+ * tracker all do for every barcode of every frame.
+ * <p>
+ * SystemClock does not advance on the JVM, so no barcode is ever gone or expires from the cache here.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResultStabilizerBenchmark {
+    @Param({ "1", "4", "16" })
+    public int barcodes;
+
+    private ResultStabilizer stabilizer;
+    private List<QrBarcode> results;
+
+    @Setup
+    public void setUp() {
+        stabilizer = new ResultStabilizer(
+            data -> data.count(), new ResultStabilizer.Options(3, 1000, null, null, null)
+        );
+        results = new ArrayList<>();
+        for(int i = 0; i < barcodes; ++i) {
+            final String content = "https://example.com/products/" + (4000 + i) + "?utm_source=qr";
+            results.add(new QrBarcode(
+                content, content.getBytes(StandardCharsets.UTF_8), FakeFrame.rect(100, 100, 400, 400),
+                Barcode.FORMAT_QR_CODE, null, 1
+            ));
+        }
+    }
+
+    @Benchmark
+    public void stabilize() {
+        stabilizer.qrRead(results.stream());
+    }
+
+    @Benchmark
+    public int barcodeKey() {
+        return BarcodeKey.of(results.get(0)).hashCode();
+    }
+}
@@ -0,0 +1,57 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An engine that finds the same barcodes in every frame after a fixed latency, without reading the frame, for driving
+ * a QrDetector on the JVM.
+ */
+class StubEngine implements DetectionEngine {
+    private final long latencyNs;
+    private final List<QrBarcode> barcodes;
+    /** calls back once the latency has passed, as the thread ML Kit detects on does. null if there is no latency. */
+    private final ScheduledExecutorService worker;
+    /** number of detections started. */
+    final AtomicLong detections = new AtomicLong();
+
+    /**
+     * @param latencyNs - how long detection takes, or 0 to call back before detect() returns.
+     */
+    StubEngine(long latencyNs, List<QrBarcode> barcodes) {
+        this.latencyNs = latencyNs;
+        this.barcodes = barcodes;
+        this.worker = latencyNs > 0 ? Executors.newSingleThreadScheduledExecutor() : null;
+    }
+
+    @Override
+    public void detect(QrDetector.Frame frame, Executor executor, Callback callback) {
+        detections.incrementAndGet();
+        if(worker == null) {
+            executor.execute(() -> callback.onDetected(barcodes));
+        } else {
+            worker.schedule(
+                () -> executor.execute(() -> callback.onDetected(barcodes)), latencyNs, TimeUnit.NANOSECONDS
+            );
+        }
+    }
+
+    /**
+     * Waits for the detections started to call back, so that their frames have been closed once this returns.
+     */
+    @Override
+    public void close() {
+        if(worker != null) {
+            worker.shutdown();
+            try {
+                worker.awaitTermination(5, TimeUnit.SECONDS);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
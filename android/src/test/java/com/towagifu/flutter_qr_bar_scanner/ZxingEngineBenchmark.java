@@ -0,0 +1,71 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a 1280x720 frame with ZXing, on the benchmark thread: a frame with a QR code, one with a CODE_128 barcode
+ * delivered by a sensor mounted sideways (so it is rotated upright first), and one with nothing on it, as most frames
+ * are.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ZxingEngineBenchmark {
+    private static final List<String> FORMATS = Arrays.asList("QR_CODE", "CODE_128");
+
+    @Param({ "QR_CODE", "CODE_128_ROTATED", "BLANK" })
+    public String frame;
+
+    private ZxingEngine engine;
+    private FakeFrame fakeFrame;
+
+    @Setup
+    public void setUp() {
+        engine = new ZxingEngine(FORMATS);
+        switch(frame) {
+            case "QR_CODE":
+                fakeFrame = FakeFrame.withBarcode(
+                    "https://example.com/products/4000", BarcodeFormat.QR_CODE, 300, 1280, 720
+                );
+                break;
+            case "CODE_128_ROTATED":
+                fakeFrame = FakeFrame.withBarcode("0123456789", BarcodeFormat.CODE_128, 400, 1280, 720).rotated(90);
+                break;
+            default:
+                fakeFrame = FakeFrame.blank(1280, 720);
+        }
+        if(engine.decode(fakeFrame).isEmpty() != frame.equals("BLANK")) {
+            throw new IllegalStateException("Unexpected result for " + frame);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public List<QrBarcode> decode() {
+        return engine.decode(fakeFrame);
+    }
+}
@@ -0,0 +1,170 @@
+package com.towagifu.flutter_qr_bar_scanner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Point;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ZxingEngineTest {
+    @Test
+    public void possibleFormatsMapsRequestedFormats() {
+        assertEquals(
+            Arrays.asList(BarcodeFormat.QR_CODE, BarcodeFormat.CODE_128, BarcodeFormat.PDF_417),
+            ZxingEngine.possibleFormats(Arrays.asList("QR_CODE", "CODE_128", "PDF417"))
+        );
+    }
+
+    @Test
+    public void possibleFormatsSkipsUnknownFormats() {
+        assertEquals(
+            Collections.singletonList(BarcodeFormat.EAN_13),
+            ZxingEngine.possibleFormats(Arrays.asList("NOT_A_FORMAT", "EAN_13"))
+        );
+    }
+
+    @Test
+    public void possibleFormatsIsEmptyForAllFormats() {
+        assertTrue(ZxingEngine.possibleFormats(null).isEmpty());
+        assertTrue(ZxingEngine.possibleFormats(Collections.emptyList()).isEmpty());
+        assertTrue(ZxingEngine.possibleFormats(Arrays.asList("QR_CODE", "ALL_FORMATS")).isEmpty());
+    }
+
+    @Test
+    public void fromZxingMapsEveryBarcodeFormatBack() {
+        for(BarcodeFormats format : BarcodeFormats.values()) {
+            if(format == BarcodeFormats.ALL_FORMATS) {
+                continue;
+            }
+            List<BarcodeFormat> zxing = ZxingEngine.possibleFormats(Collections.singletonList(format.name()));
+            assertEquals(format.name(), 1, zxing.size());
+            assertEquals(format, ZxingEngine.fromZxing(zxing.get(0)));
+        }
+    }
+
+    @Test
+    public void fromZxingIsNullForFormatsWithoutValue() {
+        assertNull(ZxingEngine.fromZxing(BarcodeFormat.RSS_14));
+        assertNull(ZxingEngine.fromZxing(BarcodeFormat.RSS_EXPANDED));
+        assertNull(ZxingEngine.fromZxing(BarcodeFormat.MAXICODE));
+    }
+
+    @Test
+    public void toBarcodeReportsFormatValue() {
+        QrBarcode barcode = ZxingEngine.toBarcode(result("hello", BarcodeFormat.QR_CODE), new Point(), 1);
+        assertEquals("hello", barcode.getContent());
+        assertEquals(Barcode.FORMAT_QR_CODE, barcode.getFormatValue());
+        assertEquals(BarcodeFormats.QR_CODE, barcode.getFormat());
+    }
+
+    @Test
+    public void toBarcodeReportsUnknownFormatForFormatsWithoutValue() {
+        for(BarcodeFormat format : Arrays.asList(
+            BarcodeFormat.RSS_14, BarcodeFormat.RSS_EXPANDED, BarcodeFormat.MAXICODE
+        )) {
+            QrBarcode barcode = ZxingEngine.toBarcode(result("0123", format), new Point(), 1);
+            assertEquals(format.name(), Barcode.FORMAT_UNKNOWN, barcode.getFormatValue());
+        }
+    }
+
+    @Test
+    public void toBarcodeJoinsByteSegments() {
+        Result result = result("ab", BarcodeFormat.QR_CODE);
+        List<byte[]> segments = new ArrayList<>();
+        segments.add(new byte[] { 'a' });
+        segments.add(new byte[] { 'b' });
+        result.putMetadata(ResultMetadataType.BYTE_SEGMENTS, segments);
+
+        assertArrayEquals(
+            "ab".getBytes(StandardCharsets.ISO_8859_1),
+            ZxingEngine.toBarcode(result, new Point(), 1).getBytes()
+        );
+        assertNull(ZxingEngine.toBarcode(result("ab", BarcodeFormat.QR_CODE), new Point(), 1).getBytes());
+    }
+
+    @Test
+    public void decodesQrCode() throws InterruptedException {
+        List<QrBarcode> barcodes = detect(
+            new ZxingEngine(Collections.singletonList("QR_CODE")),
+            FakeFrame.withBarcode("hello", BarcodeFormat.QR_CODE, 200, 640, 480)
+        );
+        assertEquals(1, barcodes.size());
+        assertEquals("hello", barcodes.get(0).getContent());
+        assertEquals(Barcode.FORMAT_QR_CODE, barcodes.get(0).getFormatValue());
+    }
+
+    @Test
+    public void decodesRotatedFrame() throws InterruptedException {
+        List<QrBarcode> barcodes = detect(
+            new ZxingEngine(Collections.singletonList("CODE_128")),
+            FakeFrame.withBarcode("0123456789", BarcodeFormat.CODE_128, 400, 640, 480).rotated(90)
+        );
+        assertEquals(1, barcodes.size());
+        assertEquals("0123456789", barcodes.get(0).getContent());
+    }
+
+    @Test
+    public void findsNothingInBlankFrame() throws InterruptedException {
+        assertTrue(detect(new ZxingEngine(null), FakeFrame.blank(640, 480)).isEmpty());
+    }
+
+    @Test
+    public void preferredForSimpleFormatsOnly() {
+        assertTrue(ZxingEngine.preferredFor(Arrays.asList("QR_CODE", "CODE_128")));
+        assertFalse(ZxingEngine.preferredFor(Arrays.asList("QR_CODE", "PDF417")));
+        assertFalse(ZxingEngine.preferredFor(Collections.singletonList("ALL_FORMATS")));
+        assertFalse(ZxingEngine.preferredFor(null));
+    }
+
+    private static Result result(String text, BarcodeFormat format) {
+        return new Result(text, null, new ResultPoint[] { new ResultPoint(1, 2), new ResultPoint(30, 40) }, format);
+    }
+
+    private static List<QrBarcode> detect(DetectionEngine engine, QrDetector.Frame frame)
+        throws InterruptedException
+    {
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<QrBarcode> found = new ArrayList<>();
+        final Exception[] failure = new Exception[1];
+        engine.detect(frame, Runnable::run, new DetectionEngine.Callback() {
+            @Override
+            public void onDetected(List<QrBarcode> barcodes) {
+                found.addAll(barcodes);
+                done.countDown();
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                failure[0] = e;
+                done.countDown();
+            }
+        });
+        try {
+            assertTrue("detection timed out", done.await(10, TimeUnit.SECONDS));
+        } finally {
+            engine.close();
+        }
+        if(failure[0] != null) {
+            throw new AssertionError(failure[0]);
+        }
+        return found;
+    }
+}
@@ -73,6 +73,12 @@ class _MyAppState extends State<MyApp> {
                       qrCodeCallback: (code) {
                         _qrCallback(code);
                       },
+                      // logged so that pipeline changes can be compared on a device
+                      onStats: (stats) => debugPrint(
+                        'analysed ${stats.framesAnalysed}/${stats.framesReceived}, '
+                        'dropped ${stats.framesDropped}, detection ${stats.detection}, '
+                        'copy ${stats.copy}, encode ${stats.encode}, total ${stats.total}',
+                      ),
                     ),
                   ),
                 )
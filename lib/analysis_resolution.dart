@@ -0,0 +1,50 @@
+/// How the size of the frames sent for barcode detection is chosen.
+enum AnalysisMode {
+  /// About the same size as the preview, as before the analysis size could
+  /// be chosen. The default.
+  preview,
+
+  /// About [AnalysisResolution.width] x [AnalysisResolution.height].
+  fixed,
+
+  /// Sized for the requested formats: smaller for 1D only, larger when any 2D
+  /// format is requested.
+  auto,
+}
+
+/// Size of the frames sent for barcode detection, chosen independently of the
+/// preview size. Smaller frames are faster to analyse.
+class AnalysisResolution {
+  final AnalysisMode mode;
+
+  /// Requested width in [AnalysisMode.fixed] mode.
+  final int? width;
+
+  /// Requested height in [AnalysisMode.fixed] mode.
+  final int? height;
+
+  /// Upper limit on the number of pixels in an analysed frame.
+  final int? maxPixels;
+
+  const AnalysisResolution({
+    this.mode = AnalysisMode.preview,
+    this.width,
+    this.height,
+    this.maxPixels,
+  }) : assert(mode != AnalysisMode.fixed || (width != null && height != null));
+
+  const AnalysisResolution.fixed(int width, int height, {int? maxPixels})
+      : this(
+          mode: AnalysisMode.fixed,
+          width: width,
+          height: height,
+          maxPixels: maxPixels,
+        );
+
+  Map<String, dynamic> toChannelArgs() => {
+        'analysisMode': mode.name,
+        'analysisWidth': width,
+        'analysisHeight': height,
+        'analysisMaxPixels': maxPixels,
+      };
+}
@@ -1,3 +1,5 @@
+/// Scan results refer to formats by index, so the order must match the native
+/// `BarcodeFormats` enum.
 enum BarcodeFormats {
   ALL_FORMATS,
   AZTEC,
@@ -5,6 +5,9 @@ class CameraStateController {
   final ValueNotifier<bool> torchNotifier;
   final ValueNotifier<CameraOrientation> cameraOrientationNotifier;
 
+  /// Zoom ratio of the camera, see `FlutterQrReader.setZoom`.
+  final ValueNotifier<double> zoomNotifier;
+
   bool get isTorchOn => torchNotifier.value;
   void set isTorchOn(bool isTorchOn) => torchNotifier.value = isTorchOn;
 
@@ -12,13 +15,21 @@ class CameraStateController {
   void set orientation(CameraOrientation orientation) =>
       cameraOrientationNotifier.value = orientation;
 
-  CameraStateController({bool? isTorchOn, CameraOrientation? orientation})
-      : torchNotifier = new ValueNotifier(isTorchOn ?? false),
+  double get zoom => zoomNotifier.value;
+  void set zoom(double zoom) => zoomNotifier.value = zoom;
+
+  CameraStateController({
+    bool? isTorchOn,
+    CameraOrientation? orientation,
+    double? zoom,
+  })  : torchNotifier = new ValueNotifier(isTorchOn ?? false),
         cameraOrientationNotifier =
-            new ValueNotifier(orientation ?? CameraOrientation.awayFromUser);
+            new ValueNotifier(orientation ?? CameraOrientation.awayFromUser),
+        zoomNotifier = new ValueNotifier(zoom ?? 1);
 
   void dispose() {
     torchNotifier.dispose();
     cameraOrientationNotifier.dispose();
+    zoomNotifier.dispose();
   }
 }
@@ -0,0 +1,34 @@
+import 'dart:typed_data';
+
+import 'package:flutter_qr_bar_scanner/scan_result.dart';
+
+/// Outcome of decoding one image of a batch started with
+/// `FlutterQrReader.decodeBatch`.
+class DecodedImage {
+  /// Position of the image in the list passed to `decodeBatch`.
+  final int index;
+
+  /// Barcodes found in the image, with bounds in the image's pixel
+  /// coordinates. Empty if [error] is set.
+  final List<ScanResult> results;
+
+  /// Why the image could not be decoded, or null.
+  final String? error;
+
+  const DecodedImage(this.index, this.results, [this.error]);
+
+  static DecodedImage fromChannelArgs(Map<dynamic, dynamic> args) {
+    final Uint8List? results = args['results'];
+    return DecodedImage(
+      args['index'] as int,
+      results == null
+          ? const []
+          : ScanResult.decodeList(ByteData.sublistView(results, 4)),
+      args['error'] as String?,
+    );
+  }
+
+  @override
+  String toString() =>
+      error == null ? '$index: $results' : '$index: error $error';
+}
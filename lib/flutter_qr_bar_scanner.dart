@@ -1,18 +1,58 @@
 import 'dart:async';
+import 'dart:collection';
 import 'dart:developer' as developer;
 
 import 'package:flutter/services.dart';
+import 'package:flutter_qr_bar_scanner/analysis_resolution.dart';
 import 'package:flutter_qr_bar_scanner/barcode_formats.dart';
+import 'package:flutter_qr_bar_scanner/scan_auto_torch.dart';
 import 'package:flutter_qr_bar_scanner/camera_orientation.dart';
+import 'package:flutter_qr_bar_scanner/decoded_image.dart';
+import 'package:flutter_qr_bar_scanner/scan_aggregation.dart';
+import 'package:flutter_qr_bar_scanner/scan_buffering.dart';
+import 'package:flutter_qr_bar_scanner/scan_engine.dart';
+import 'package:flutter_qr_bar_scanner/scan_filter.dart';
+import 'package:flutter_qr_bar_scanner/scan_focus.dart';
+import 'package:flutter_qr_bar_scanner/scan_frame_buffers.dart';
+import 'package:flutter_qr_bar_scanner/scan_frame_gate.dart';
+import 'package:flutter_qr_bar_scanner/scan_frame_rate.dart';
+import 'package:flutter_qr_bar_scanner/scan_replay.dart';
 import 'package:flutter_qr_bar_scanner/scan_result.dart';
+import 'package:flutter_qr_bar_scanner/scan_stabilization.dart';
+import 'package:flutter_qr_bar_scanner/scan_tiling.dart';
+import 'package:flutter_qr_bar_scanner/scan_tracking.dart';
+import 'package:flutter_qr_bar_scanner/scan_stats.dart';
+import 'package:flutter_qr_bar_scanner/scan_watchdog.dart';
 
 class PreviewDetails {
   final Size size;
   final int sensorOrientation;
   final int textureId;
 
-  PreviewDetails(int width, int height, this.sensorOrientation, this.textureId)
-      : size = Size(width.toDouble(), height.toDouble());
+  /// Size of the frames that barcode bounds are reported in.
+  final Size analysisSize;
+
+  /// Identifies the session in calls to [FlutterQrReader].
+  final int sessionId;
+
+  /// Largest zoom ratio that [FlutterQrReader.setZoom] takes, 1 if the camera
+  /// cannot zoom.
+  final double maxZoom;
+
+  PreviewDetails(
+    int width,
+    int height,
+    this.sensorOrientation,
+    this.textureId, {
+    int? analysisWidth,
+    int? analysisHeight,
+    this.sessionId = 0,
+    this.maxZoom = 1,
+  })  : size = Size(width.toDouble(), height.toDouble()),
+        analysisSize = Size(
+          (analysisWidth ?? width).toDouble(),
+          (analysisHeight ?? height).toDouble(),
+        );
 }
 
 const _defaultBarcodeFormats = const [
@@ -22,16 +62,55 @@ const _defaultBarcodeFormats = const [
 class FlutterQrReader {
   static const MethodChannel _channel =
       const MethodChannel('com.towagifu/flutter_qr_bar_scanner');
-  static QrChannelReader channelReader = QrChannelReader(_channel);
+  static const BasicMessageChannel<ByteData> _resultsChannel =
+      const BasicMessageChannel(
+          'com.towagifu/flutter_qr_bar_scanner/results', BinaryCodec());
+  static const BasicMessageChannel<ByteData> _tracksChannel =
+      const BasicMessageChannel(
+          'com.towagifu/flutter_qr_bar_scanner/tracks', BinaryCodec());
+  static QrChannelReader channelReader =
+      QrChannelReader(_channel, _resultsChannel, _tracksChannel);
+
+  /// Session used by the methods below when no sessionId is given.
+  static int? _lastSessionId;
 
+  static int _nextBatchId = 1;
+
+  /// Starts a new scanning session, and returns its details including the
+  /// [PreviewDetails.sessionId] that the other methods take. Starting a
+  /// session takes the camera from any other session, which gets it back when
+  /// the new session is stopped or paused with `yieldCamera`.
+  ///
+  /// Results are passed to [qrCodeHandler], and/or to a stream from
+  /// [results].
   //Set target size before starting
   static Future<PreviewDetails> start({
     required int width,
     required int height,
     required Rect Function(Rect) Function() transformBuilder,
-    required QRCodeHandler qrCodeHandler,
+    QRCodeHandler? qrCodeHandler,
     List<BarcodeFormats>? formats,
     CameraOrientation cameraOrientation = CameraOrientation.awayFromUser,
+    ScanEngine engine = ScanEngine.mlKit,
+    ScanTiling? tiling,
+    AnalysisResolution analysisResolution = const AnalysisResolution(),
+    ScanFilter? filter,
+    ScanStabilization stabilization = const ScanStabilization(),
+    ScanFrameRate frameRate = const ScanFrameRate(),
+    ScanFrameGate? frameGate,
+    ScanFrameBuffers frameBuffers = const ScanFrameBuffers(),
+    ScanFocus focus = const ScanFocus(),
+    AutoTorch? autoTorch,
+    ScanReplay? replay,
+    ScanRecording? recording,
+    ScanAggregation? aggregation,
+    AggregateHandler? aggregateHandler,
+    ScanTracking? tracking,
+    TrackHandler? trackHandler,
+    ScanWatchdog watchdog = const ScanWatchdog(),
+    HealthHandler? healthHandler,
+    Duration? statsInterval,
+    StatsHandler? statsHandler,
   }) async {
     developer.log('$width x $height $cameraOrientation ($formats)', name: 'FlutterQrReader');
     final formatsResolved = formats ?? _defaultBarcodeFormats;
@@ -44,9 +123,24 @@ class FlutterQrReader {
     var details = await _channel.invokeMethod('start', {
       'targetWidth': width,
       'targetHeight': height,
-      'heartbeatTimeout': 0,
       'formats': formatStrings,
       'orientation': cameraOrientation.name,
+      'engine': engine.name,
+      ...?tiling?.toChannelArgs(),
+      ...analysisResolution.toChannelArgs(),
+      ...?filter?.toChannelArgs(),
+      ...stabilization.toChannelArgs(),
+      ...frameRate.toChannelArgs(),
+      ...?frameGate?.toChannelArgs(),
+      ...frameBuffers.toChannelArgs(),
+      ...focus.toChannelArgs(),
+      ...?autoTorch?.toChannelArgs(),
+      ...?replay?.toChannelArgs(),
+      ...?recording?.toChannelArgs(),
+      ...?aggregation?.toChannelArgs(),
+      ...?tracking?.toChannelArgs(),
+      ...watchdog.toChannelArgs(),
+      'statsIntervalMs': statsInterval?.inMilliseconds,
     });
 
     // invokeMethod returns Map<dynamic,...> in dart 2.0
@@ -56,49 +150,312 @@ class FlutterQrReader {
     int surfaceOrientation = details["surfaceOrientation"];
     int surfaceHeight = details["surfaceHeight"];
     int surfaceWidth = details["surfaceWidth"];
+    int? analysisHeight = details["analysisHeight"];
+    int? analysisWidth = details["analysisWidth"];
+    int sessionId = details["sessionId"];
+    double? maxZoom = details["maxZoom"];
 
-    channelReader.setTransformBuilder(transformBuilder);
-    channelReader.setQrCodeHandler(qrCodeHandler);
+    channelReader.setHandlers(
+      sessionId,
+      qrCodeHandler: qrCodeHandler,
+      transformBuilder: transformBuilder,
+      statsHandler: statsHandler,
+      healthHandler: healthHandler,
+      aggregateHandler: aggregateHandler,
+      trackHandler: trackHandler,
+    );
+    _lastSessionId = sessionId;
 
     return PreviewDetails(
-        surfaceWidth, surfaceHeight, surfaceOrientation, textureId);
+      surfaceWidth,
+      surfaceHeight,
+      surfaceOrientation,
+      textureId,
+      analysisWidth: analysisWidth,
+      analysisHeight: analysisHeight,
+      sessionId: sessionId,
+      maxZoom: maxZoom ?? 1,
+    );
+  }
+
+  /// Returns a stream of the results of a started session, one list per
+  /// analysed frame in which barcodes were found (the `qrCodeHandler` of
+  /// [start] is also called for frames without any). Results that arrive while
+  /// the stream is paused (including while an `await for` body runs) or not
+  /// listened to yet are buffered according to [buffering], and once the
+  /// buffer is full, detection is paused until the stream is resumed. Bounds
+  /// are only mapped with the session's `transformBuilder` when a result is
+  /// read.
+  ///
+  /// The stream closes when the session is stopped. Calling this again for
+  /// the same session closes the previous stream.
+  static Stream<List<ScanResult>> results({
+    ScanBuffering buffering = const ScanBuffering(),
+    int? sessionId,
+  }) {
+    final id = sessionId ?? _lastSessionId;
+    final stream = id == null ? null : channelReader.openStream(id, buffering);
+    return stream ?? Stream.error(StateError('No scanning session'));
   }
 
-  static Future setTorchState(bool isOn) {
+  /// Opens the camera and loads the barcode detector ahead of [start], so that
+  /// the first frame is analysed sooner once the scanner is shown. Call it
+  /// shortly before navigating to the scanner, with the same [formats] and
+  /// [cameraOrientation] as the scanner will use.
+  ///
+  /// The camera is only opened if camera permission has already been granted,
+  /// and is closed again if [start] is not called within about 10 seconds.
+  /// Returns whether the camera is being opened.
+  static Future<bool> prewarm({
+    List<BarcodeFormats>? formats,
+    CameraOrientation cameraOrientation = CameraOrientation.awayFromUser,
+  }) async {
+    final formatStrings = (formats ?? _defaultBarcodeFormats)
+        .map((format) => format.toString().split('.')[1])
+        .toList(growable: false);
+    final bool? prewarmed = await _channel.invokeMethod('prewarm', {
+      'formats': formatStrings,
+      'orientation': cameraOrientation.name,
+    });
+    return prewarmed ?? false;
+  }
+
+  static Future setTorchState(bool isOn, {int? sessionId}) {
     return _channel.invokeMethod(
       'setTorchState',
-      {'isOn': isOn},
+      {'sessionId': sessionId ?? _lastSessionId, 'isOn': isOn},
+    ).catchError(print);
+  }
+
+  /// Restricts reading to [region] of the frame, normalized to 0..1 in the
+  /// same (upright) coordinates that [ScanResult.bounds] are reported in.
+  /// Passing null reads in the whole frame again.
+  static Future setScanRegion(Rect? region, {int? sessionId}) {
+    return _channel.invokeMethod(
+      'setScanRegion',
+      {
+        'sessionId': sessionId ?? _lastSessionId,
+        if (region != null) ...{
+          'left': region.left,
+          'top': region.top,
+          'right': region.right,
+          'bottom': region.bottom,
+        },
+      },
+    ).catchError(print);
+  }
+
+  /// Zooms the camera to [zoom] times, clamped to 1..[PreviewDetails.maxZoom].
+  /// Zooming in lets small or distant barcodes be read at a lower analysis
+  /// resolution.
+  static Future setZoom(double zoom, {int? sessionId}) {
+    return _channel.invokeMethod(
+      'setZoom',
+      {'sessionId': sessionId ?? _lastSessionId, 'zoom': zoom},
     ).catchError(print);
   }
 
-  static Future stop() {
-    channelReader.setQrCodeHandler(null);
-    return _channel.invokeMethod('stop').catchError(print);
+  /// Returns the performance counters of the current session, or null if not
+  /// running.
+  static Future<ScanStats?> getStats({int? sessionId}) async {
+    final stats = await _channel.invokeMethod(
+      'getStats',
+      {'sessionId': sessionId ?? _lastSessionId},
+    );
+    return stats == null ? null : ScanStats.fromChannelArgs(stats);
   }
 
-  static Future heartbeat() {
-    return _channel.invokeMethod('heartbeat').catchError(print);
+  /// Stops analysing frames and the camera preview, but keeps the camera
+  /// session and preview texture open so that [resume] is quick. The session
+  /// is stopped for real after [idleTimeout] (never if [Duration.zero]).
+  ///
+  /// While paused, calling [start] again with the same arguments resumes the
+  /// session and returns the same [PreviewDetails].
+  ///
+  /// Pass [yieldCamera] when the session is leaving the screen: the camera is
+  /// closed as well, so that a session whose camera it took resumes and other
+  /// apps can open it, and [resume] opens it again.
+  static Future pause({
+    Duration idleTimeout = const Duration(seconds: 30),
+    bool yieldCamera = false,
+    int? sessionId,
+  }) {
+    return _channel.invokeMethod('pause', {
+      'sessionId': sessionId ?? _lastSessionId,
+      'idleTimeoutMs': idleTimeout.inMilliseconds,
+      'yieldCamera': yieldCamera,
+    }).catchError(print);
+  }
+
+  /// Resumes a session paused with [pause]. Returns false if there is no
+  /// session to resume (for example because the idle timeout expired), in
+  /// which case [start] must be called again.
+  static Future<bool> resume({int? sessionId}) async {
+    final bool? resumed = await _channel.invokeMethod(
+      'resume',
+      {'sessionId': sessionId ?? _lastSessionId},
+    );
+    return resumed ?? false;
+  }
+
+  static Future stop({int? sessionId}) {
+    final id = sessionId ?? _lastSessionId;
+    if (id == null) {
+      return Future.value();
+    }
+    channelReader.removeHandlers(id);
+    if (id == _lastSessionId) {
+      _lastSessionId = null;
+    }
+    return _channel.invokeMethod('stop', {'sessionId': id}).catchError(print);
+  }
+
+  /// Reads barcodes in a still image, given either as the [path] of an image
+  /// file or as encoded image [bytes] (JPEG, PNG, WebP...). Images larger than
+  /// [maxDimension] on either side are downsampled before detection; bounds
+  /// are reported in the original image's pixels. Only barcodes that match
+  /// [filter] are reported, as with [start].
+  static Future<List<ScanResult>> decodeImage({
+    String? path,
+    Uint8List? bytes,
+    List<BarcodeFormats>? formats,
+    int? maxDimension,
+    ScanFilter? filter,
+  }) async {
+    assert((path == null) != (bytes == null));
+    final Uint8List results = await _channel.invokeMethod('decodeImage', {
+      'path': path,
+      'bytes': bytes,
+      'formats': _formatStrings(formats),
+      'maxDimension': maxDimension,
+      ...?filter?.toChannelArgs(),
+    });
+    return ScanResult.decodeList(ByteData.sublistView(results, 4));
+  }
+
+  /// Reads barcodes in each of [images] (file path Strings or encoded image
+  /// [Uint8List]s), decoding up to [parallelism] images at once. Emits one
+  /// [DecodedImage] per image as it completes, so not necessarily in order,
+  /// then closes. Cancelling the subscription skips the images not started
+  /// yet. Only barcodes that match [filter] are reported.
+  static Stream<DecodedImage> decodeBatch(
+    List<Object> images, {
+    List<BarcodeFormats>? formats,
+    int parallelism = 2,
+    int? maxDimension,
+    ScanFilter? filter,
+  }) {
+    assert(images.every((image) => image is String || image is Uint8List));
+    final batchId = _nextBatchId++;
+    late final StreamController<DecodedImage> controller;
+    controller = StreamController(
+      onListen: () {
+        channelReader.addBatch(batchId, controller);
+        _channel.invokeMethod('decodeBatch', {
+          'batchId': batchId,
+          'images': images,
+          'formats': _formatStrings(formats),
+          'parallelism': parallelism,
+          'maxDimension': maxDimension,
+          ...?filter?.toChannelArgs(),
+        }).catchError((Object error) {
+          channelReader.removeBatch(batchId);
+          controller.addError(error);
+          controller.close();
+        });
+      },
+      onCancel: () {
+        if (channelReader.removeBatch(batchId)) {
+          _channel
+              .invokeMethod('cancelDecodeBatch', {'batchId': batchId})
+              .catchError(print);
+        }
+      },
+    );
+    return controller.stream;
+  }
+
+  static List<String> _formatStrings(List<BarcodeFormats>? formats) {
+    return (formats ?? _defaultBarcodeFormats)
+        .map((format) => format.toString().split('.')[1])
+        .toList(growable: false);
+  }
+
+  /// Empties the set of barcodes collected with [ScanAggregation], and starts
+  /// a new collection.
+  static Future resetAggregation({int? sessionId}) {
+    return _channel.invokeMethod(
+      'resetAggregation',
+      {'sessionId': sessionId ?? _lastSessionId},
+    ).catchError(print);
+  }
+
+  /// Tells the watchdog that the app is still alive, see
+  /// [ScanWatchdog.heartbeatTimeout].
+  static Future heartbeat({int? sessionId}) {
+    return _channel.invokeMethod(
+      'heartbeat',
+      {'sessionId': sessionId ?? _lastSessionId},
+    ).catchError(print);
   }
 }
 
 enum FrameRotation { none, ninetyCC, oneeighty, twoseventyCC }
 
 typedef void QRCodeHandler(Iterable<ScanResult> qr);
+typedef void StatsHandler(ScanStats stats);
+typedef void HealthHandler(ScanHealthEvent event);
+typedef void AggregateHandler(ScanAggregateDelta delta);
+typedef void TrackHandler(List<TrackedBarcode> tracks);
 
 class QrChannelReader {
-  QrChannelReader(this.channel) {
-    channel.setMethodCallHandler((MethodCall call) async {
-      switch (call.method) {
-        case 'qrRead':
+  QrChannelReader(this.channel, this.resultsChannel, this.tracksChannel) {
+    resultsChannel.setMessageHandler((ByteData? message) async {
+      if (message != null && message.lengthInBytes >= 4) {
+        // each message starts with the id of the session it belongs to
+        final handlers = _handlers[message.getInt32(0, Endian.little)];
+        if (handlers != null) {
+          final data = ByteData.sublistView(message, 4);
+          handlers.stream?.add(data);
+          final qrCodeHandler = handlers.qrCodeHandler;
           if (qrCodeHandler != null) {
-            var args = (call.arguments as List)
-                .map((e) => ScanResult.fromChannelArgs(Map.from(e)));
-            if (this._transformBuilder != null) {
-              final transform = this._transformBuilder!();
-              args = args.map((e) => e.applyTransform(transform));
-            }
-            qrCodeHandler!(args);
+            qrCodeHandler(_TransformedResults(
+              ScanResult.decodeList(data),
+              handlers.transformBuilder,
+            ));
           }
+        }
+      }
+      // the native side does not wait for a reply
+      return ByteData(0);
+    });
+    tracksChannel.setMessageHandler((ByteData? message) async {
+      if (message != null && message.lengthInBytes >= 4) {
+        _onTracks(message);
+      }
+      return ByteData(0);
+    });
+    channel.setMethodCallHandler((MethodCall call) async {
+      switch (call.method) {
+        case 'stats':
+          _handlers[call.arguments['sessionId']]
+              ?.statsHandler
+              ?.call(ScanStats.fromChannelArgs(call.arguments));
+          break;
+        case 'aggregate':
+          _onAggregate(call.arguments);
+          break;
+        case 'health':
+          _handlers[call.arguments['sessionId']]
+              ?.healthHandler
+              ?.call(ScanHealthEvent.fromChannelArgs(call.arguments));
+          break;
+        case 'decodeResult':
+          _batches[call.arguments['batchId']]
+              ?.add(DecodedImage.fromChannelArgs(call.arguments));
+          break;
+        case 'decodeDone':
+          _batches.remove(call.arguments['batchId'])?.close();
           break;
         default:
           print("QrChannelHandler: unknown method call received at "
@@ -107,15 +464,244 @@ class QrChannelReader {
     });
   }
 
-  void setQrCodeHandler(QRCodeHandler? qrch) {
-    this.qrCodeHandler = qrch;
+  void _onAggregate(Map<dynamic, dynamic> args) {
+    final handlers = _handlers[args['sessionId']];
+    final aggregateHandler = handlers?.aggregateHandler;
+    if (aggregateHandler != null) {
+      aggregateHandler(ScanAggregateDelta.fromChannelArgs(
+        args,
+        handlers!.transformBuilder(),
+      ));
+    }
+  }
+
+  void _onTracks(ByteData message) {
+    final handlers = _handlers[message.getInt32(0, Endian.little)];
+    final trackHandler = handlers?.trackHandler;
+    if (trackHandler != null) {
+      trackHandler(TrackedBarcode.decodeList(
+        ByteData.sublistView(message, 4),
+        handlers!.trackContents,
+        handlers.transformBuilder(),
+      ));
+    }
+  }
+
+  void setHandlers(
+    int sessionId, {
+    QRCodeHandler? qrCodeHandler,
+    required Rect Function(Rect) Function() transformBuilder,
+    StatsHandler? statsHandler,
+    HealthHandler? healthHandler,
+    AggregateHandler? aggregateHandler,
+    TrackHandler? trackHandler,
+  }) {
+    _handlers[sessionId] = _SessionHandlers(
+      qrCodeHandler,
+      transformBuilder,
+      statsHandler,
+      healthHandler,
+      aggregateHandler,
+      trackHandler,
+    );
+  }
+
+  void removeHandlers(int sessionId) {
+    _handlers.remove(sessionId)?.stream?.close();
+  }
+
+  /// Returns a new results stream for the session, or null if there is no
+  /// such session.
+  Stream<List<ScanResult>>? openStream(
+    int sessionId,
+    ScanBuffering buffering,
+  ) {
+    final handlers = _handlers[sessionId];
+    if (handlers == null) {
+      return null;
+    }
+    handlers.stream?.close();
+    late final _ResultStream stream;
+    stream = _ResultStream(
+      buffering,
+      handlers.transformBuilder,
+      (paused) {
+        // a stream replaced by a newer one no longer has a say
+        if (identical(handlers.stream, stream)) {
+          _setDetectionPaused(sessionId, paused);
+        }
+      },
+      () {
+        if (identical(handlers.stream, stream)) {
+          _setDetectionPaused(sessionId, true);
+          handlers.stream = null;
+        }
+      },
+    );
+    handlers.stream = stream;
+    return stream.controller.stream;
+  }
+
+  void _setDetectionPaused(int sessionId, bool paused) {
+    final handlers = _handlers[sessionId];
+    if (handlers == null || handlers.detectionPaused == paused) {
+      return;
+    }
+    if (paused && handlers.qrCodeHandler != null) {
+      // the handler still consumes every result
+      return;
+    }
+    handlers.detectionPaused = paused;
+    channel.invokeMethod(
+      'pauseDetection',
+      {'sessionId': sessionId, 'paused': paused},
+    ).catchError(print);
+  }
+
+  void addBatch(int batchId, StreamController<DecodedImage> controller) {
+    _batches[batchId] = controller;
   }
 
-  void setTransformBuilder(Rect Function(Rect) Function() transformBuilder) {
-    this._transformBuilder = transformBuilder;
+  /// Returns whether the batch was still running.
+  bool removeBatch(int batchId) {
+    return _batches.remove(batchId) != null;
   }
 
   MethodChannel channel;
-  QRCodeHandler? qrCodeHandler;
-  Rect Function(Rect) Function()? _transformBuilder;
+  BasicMessageChannel<ByteData> resultsChannel;
+  BasicMessageChannel<ByteData> tracksChannel;
+  final Map<int, _SessionHandlers> _handlers = {};
+  final Map<int, StreamController<DecodedImage>> _batches = {};
+}
+
+class _SessionHandlers {
+  _SessionHandlers(
+    this.qrCodeHandler,
+    this.transformBuilder,
+    this.statsHandler,
+    this.healthHandler,
+    this.aggregateHandler,
+    this.trackHandler,
+  );
+
+  final QRCodeHandler? qrCodeHandler;
+  final Rect Function(Rect) Function() transformBuilder;
+  final StatsHandler? statsHandler;
+  final HealthHandler? healthHandler;
+  final AggregateHandler? aggregateHandler;
+  final TrackHandler? trackHandler;
+
+  /// Content of the barcodes tracked, by track id.
+  final Map<int, String?> trackContents = {};
+  _ResultStream? stream;
+  bool detectionPaused = false;
+}
+
+/// Buffers the encoded results of a session for a results stream, and pauses
+/// detection while the buffer is full. Results are only decoded when they are
+/// delivered.
+class _ResultStream {
+  _ResultStream(
+    this.buffering,
+    this.transformBuilder,
+    this.setDetectionPaused,
+    this.onCancelled,
+  ) {
+    controller = StreamController(
+      onListen: _flush,
+      onResume: _flush,
+      onCancel: () {
+        _pending.clear();
+        onCancelled();
+      },
+    );
+  }
+
+  final ScanBuffering buffering;
+  final Rect Function(Rect) Function() transformBuilder;
+  final void Function(bool paused) setDetectionPaused;
+  final void Function() onCancelled;
+  late final StreamController<List<ScanResult>> controller;
+  final Queue<ByteData> _pending = Queue();
+
+  bool get _ready => controller.hasListener && !controller.isPaused;
+
+  void add(ByteData data) {
+    // results are sent for every analysed frame, but the stream only has
+    // frames with barcodes, so that empty ones neither fill the buffer nor
+    // replace a buffered result
+    if (data.getInt32(0, Endian.little) == 0) {
+      return;
+    }
+    if (_ready && _pending.isEmpty) {
+      _emit(data);
+      return;
+    }
+    switch (buffering.mode) {
+      case ScanBufferMode.latestOnly:
+        _pending
+          ..clear()
+          ..add(data);
+        break;
+      case ScanBufferMode.bounded:
+        if (_pending.length >= buffering.capacity) {
+          _pending.removeFirst();
+        }
+        _pending.add(data);
+        break;
+      case ScanBufferMode.drop:
+        break;
+    }
+    final full = buffering.mode != ScanBufferMode.bounded ||
+        _pending.length >= buffering.capacity;
+    if (full) {
+      setDetectionPaused(true);
+    }
+  }
+
+  void close() {
+    _pending.clear();
+    controller.close();
+  }
+
+  void _flush() {
+    while (_ready && _pending.isNotEmpty) {
+      _emit(_pending.removeFirst());
+    }
+    if (_ready) {
+      setDetectionPaused(false);
+    }
+  }
+
+  void _emit(ByteData data) {
+    controller.add(
+      _TransformedResults(ScanResult.decodeList(data), transformBuilder),
+    );
+  }
+}
+
+/// Results of one frame, with bounds mapped to widget coordinates only when a
+/// result is first read.
+class _TransformedResults extends ListBase<ScanResult> {
+  _TransformedResults(this._results, this._transformBuilder)
+      : _transformed = List.filled(_results.length, null);
+
+  final List<ScanResult> _results;
+  final Rect Function(Rect) Function() _transformBuilder;
+  final List<ScanResult?> _transformed;
+  Rect Function(Rect)? _transform;
+
+  @override
+  int get length => _results.length;
+
+  @override
+  set length(int newLength) => throw UnsupportedError('Unmodifiable list');
+
+  @override
+  ScanResult operator [](int index) => _transformed[index] ??= _results[index]
+      .applyTransform(_transform ??= _transformBuilder());
+
+  @override
+  void operator []=(int index, ScanResult value) =>
+      throw UnsupportedError('Unmodifiable list');
 }
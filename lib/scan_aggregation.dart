@@ -0,0 +1,103 @@
+import 'dart:typed_data';
+
+import 'package:flutter/rendering.dart';
+import 'package:flutter_qr_bar_scanner/scan_result.dart';
+
+/// Collects the distinct barcodes seen across frames instead of reporting
+/// the barcodes of each frame, for reading many labels (such as a pallet) in
+/// one pass: a label that is occluded or blurred in one frame still counts
+/// from the frames it was read in. Changes to the collected set are reported
+/// as [ScanAggregateDelta]s.
+///
+/// A collection completes when it holds [completeAfterCodes] barcodes, or
+/// [completeAfter] after the first barcode was seen. The whole set is then
+/// reported in [ScanAggregateDelta.collected], and a new collection starts.
+class ScanAggregation {
+  /// A barcode leaves the set when it has not been seen for this many
+  /// analysed frames, or 0 to keep every barcode until the collection
+  /// completes (or `FlutterQrReader.resetAggregation` is called).
+  final int windowFrames;
+
+  /// Number of frames a barcode must be read in before it is added, to keep
+  /// out occasional misreads. The frames must all be within [windowFrames]
+  /// of each other (any frames if [windowFrames] is 0).
+  final int minSightings;
+  final int? completeAfterCodes;
+  final Duration? completeAfter;
+
+  const ScanAggregation({
+    this.windowFrames = 30,
+    this.minSightings = 1,
+    this.completeAfterCodes,
+    this.completeAfter,
+  });
+
+  Map<String, dynamic> toChannelArgs() => {
+        'aggregate': true,
+        'aggregateWindowFrames': windowFrames,
+        'aggregateMinSightings': minSightings,
+        'aggregateCompleteAfterCodes': completeAfterCodes,
+        'aggregateCompleteAfterMs': completeAfter?.inMilliseconds,
+      };
+}
+
+/// A barcode of the collected set.
+class AggregatedCode {
+  /// The barcode, with the bounds it was last reported at.
+  final ScanResult result;
+
+  /// Number of frames the barcode was read in, as a measure of confidence.
+  final int sightings;
+
+  const AggregatedCode(this.result, this.sightings);
+
+  @override
+  String toString() => '${result.content} (x$sightings)';
+}
+
+/// Changes to the collected set of barcodes since the previous delta.
+class ScanAggregateDelta {
+  final List<AggregatedCode> added;
+
+  /// Barcodes of the set that were seen at a clearly different position.
+  final List<AggregatedCode> moved;
+  final List<AggregatedCode> removed;
+
+  /// The whole set when the collection completed, otherwise null.
+  final List<AggregatedCode>? collected;
+
+  const ScanAggregateDelta(
+    this.added,
+    this.moved,
+    this.removed,
+    this.collected,
+  );
+
+  bool get isComplete => collected != null;
+
+  /// Decodes an `aggregate` call from the native side: the barcodes encoded
+  /// like the results channel, with for each a change (0 added, 1 moved,
+  /// 2 removed, 3 collected) and a sighting count.
+  static ScanAggregateDelta fromChannelArgs(
+    Map<dynamic, dynamic> args,
+    Rect Function(Rect) transform,
+  ) {
+    final Uint8List results = args['results'];
+    final List<dynamic> changes = args['changes'];
+    final List<dynamic> counts = args['counts'];
+    final lists = List.generate(4, (_) => <AggregatedCode>[]);
+    final decoded = ScanResult.decodeList(ByteData.sublistView(results, 4));
+    for (int i = 0; i < decoded.length; ++i) {
+      lists[changes[i] as int].add(AggregatedCode(
+        decoded[i].applyTransform(transform),
+        counts[i] as int,
+      ));
+    }
+    return ScanAggregateDelta(
+      lists[0],
+      lists[1],
+      lists[2],
+      args['complete'] == true ? lists[3] : null,
+    );
+  }
+}
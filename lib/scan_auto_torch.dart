@@ -0,0 +1,26 @@
+/// Turns the torch on by itself in dark surroundings, and off again once they
+/// get brighter. Darkness is judged from the exposure time and sensitivity
+/// (ISO) the camera's auto exposure settles on. Switching the torch with
+/// `setTorchState` / `CameraStateController.isTorchOn`, on or off, takes it
+/// over from auto torch until the session is started again.
+class AutoTorch {
+  /// Exposure time in milliseconds times ISO above which the surroundings
+  /// count as dark, 20000 (for example 1/30 s at ISO 600) by default. Lower it
+  /// to turn the torch on sooner.
+  final double darkLevel;
+
+  /// How long the lighting must have changed before the torch follows, so
+  /// that passing shadows and reflections do not switch it.
+  final Duration hold;
+
+  const AutoTorch({
+    this.darkLevel = 20000,
+    this.hold = const Duration(seconds: 1),
+  });
+
+  Map<String, dynamic> toChannelArgs() => {
+        'autoTorch': true,
+        'autoTorchDarkLevel': darkLevel.toDouble(),
+        'autoTorchHoldMs': hold.inMilliseconds,
+      };
+}
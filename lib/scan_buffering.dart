@@ -0,0 +1,29 @@
+/// What happens to results that arrive while a results stream is paused or
+/// not listened to yet.
+enum ScanBufferMode {
+  /// Keep only the most recent result.
+  latestOnly,
+
+  /// Keep up to [ScanBuffering.capacity] results, dropping the oldest.
+  bounded,
+
+  /// Drop results until the stream is resumed.
+  drop,
+}
+
+/// Buffering of a stream from `FlutterQrReader.results()`.
+///
+/// Once the buffer is full (for [ScanBufferMode.drop], as soon as a result
+/// is dropped), barcode detection is paused on the native side until the
+/// stream is resumed, unless the session also has a `qrCodeHandler`.
+class ScanBuffering {
+  final ScanBufferMode mode;
+
+  /// Number of results kept in [ScanBufferMode.bounded] mode.
+  final int capacity;
+
+  const ScanBuffering({
+    this.mode = ScanBufferMode.latestOnly,
+    this.capacity = 4,
+  }) : assert(capacity > 0);
+}
@@ -0,0 +1,13 @@
+/// Barcode detection library used on the native side.
+enum ScanEngine {
+  /// ML Kit barcode scanning.
+  mlKit,
+
+  /// ZXing, reading the brightness of frames directly. Cheaper for QR codes
+  /// and 1D codes held roughly level, and needs no model to be loaded, but
+  /// reads at most one barcode per frame.
+  zxing,
+
+  /// ZXing when only QR codes and 1D formats are requested, ML Kit otherwise.
+  auto,
+}
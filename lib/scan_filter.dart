@@ -0,0 +1,45 @@
+/// Rules a barcode's content must match to be reported. Filtering happens
+/// natively, before results are encoded, so barcodes that do not match are
+/// never sent to Dart. Every rule that is set must match; barcodes without
+/// text content never match.
+class ScanFilter {
+  /// Regular expression (Java syntax) the whole content must match.
+  final String? pattern;
+  final int? minLength;
+  final int? maxLength;
+
+  /// The content must start with one of these.
+  final List<String>? prefixes;
+
+  /// EAN, UPC and ITF-14 barcodes must have a valid check digit, as must the
+  /// SSCC, GTIN and GLN values of GS1 element strings when [gs1] is set.
+  final bool validateChecksum;
+
+  /// The content must be a well formed GS1 element string (GS1-128, GS1
+  /// DataMatrix or GS1 QR code, or the bracketed form "(01)...(10)...").
+  final bool gs1;
+
+  /// GS1 application identifiers (such as '01' for the GTIN) the content must
+  /// contain. Implies [gs1].
+  final List<String>? gs1Ais;
+
+  const ScanFilter({
+    this.pattern,
+    this.minLength,
+    this.maxLength,
+    this.prefixes,
+    this.validateChecksum = false,
+    this.gs1 = false,
+    this.gs1Ais,
+  });
+
+  Map<String, dynamic> toChannelArgs() => {
+        'filterPattern': pattern,
+        'filterMinLength': minLength,
+        'filterMaxLength': maxLength,
+        'filterPrefixes': prefixes,
+        'filterValidateChecksum': validateChecksum,
+        'filterGs1': gs1,
+        'filterGs1Ais': gs1Ais,
+      };
+}
@@ -0,0 +1,28 @@
+/// Focus and exposure settings tuned for reading barcodes.
+class ScanFocus {
+  /// Prefer the camera's macro focus mode, for labels held close to the
+  /// camera. Ignored by cameras without one.
+  final bool macro;
+
+  /// Number of consecutive analysed frames without a barcode after which the
+  /// camera is made to focus again, or 0 to leave focusing to the camera.
+  final int refocusAfterFrames;
+
+  /// Whether focus and exposure are metered on the scan region (set with
+  /// `FlutterQrReader.setScanRegion` or `ScannerCamera.scanRegion`) rather
+  /// than the whole frame, so that a label in front of a bright or distant
+  /// background comes out sharp and readable.
+  final bool meterScanRegion;
+
+  const ScanFocus({
+    this.macro = false,
+    this.refocusAfterFrames = 0,
+    this.meterScanRegion = true,
+  });
+
+  Map<String, dynamic> toChannelArgs() => {
+        'macroFocus': macro,
+        'refocusAfterFrames': refocusAfterFrames,
+        'meterScanRegion': meterScanRegion,
+      };
+}
@@ -0,0 +1,35 @@
+/// How camera frames are handed to the barcode detector.
+enum FrameBufferMode {
+  /// Detect on the camera's frame directly. The frame is held until detection
+  /// completes, so a slow detection can hold up the camera's frames.
+  image,
+
+  /// Copy each frame into one of a few reused buffers and give it back to the
+  /// camera straight away.
+  copy,
+
+  /// Like [copy], but only copy the brightness of each frame (grayscale),
+  /// which is all barcode detection uses. Copies about a third less.
+  luma,
+}
+
+/// Controls whether camera frames are copied before barcode detection, which
+/// keeps the camera's frame rate independent of how long detection takes and
+/// caps the memory used by frames waiting for detection.
+class ScanFrameBuffers {
+  final FrameBufferMode mode;
+
+  /// Number of buffers frames are copied into, at least 2. Frames arriving
+  /// while all are in use are skipped. Null for the default (3).
+  final int? count;
+
+  const ScanFrameBuffers({
+    this.mode = FrameBufferMode.image,
+    this.count,
+  });
+
+  Map<String, dynamic> toChannelArgs() => {
+        'frameBufferMode': mode.name,
+        'frameBufferCount': count,
+      };
+}
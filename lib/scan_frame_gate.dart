@@ -0,0 +1,43 @@
+/// Keeps blurred and moving frames from barcode detection, which would spend
+/// as long on them as on any other frame only to find nothing, as typically
+/// happens while the camera is being aimed. Frames are measured natively on
+/// a grid of samples of the scan region, which takes a fraction of the time
+/// a detection does.
+///
+/// The frames skipped are counted in [ScanStats.framesBlurred] and
+/// [ScanStats.framesMoving].
+class ScanFrameGate {
+  /// Sharpness (variance of the Laplacian of the luminance) below which a
+  /// frame counts as blurred. Sharp print usually scores in the hundreds or
+  /// more.
+  final double minSharpness;
+
+  /// Fraction of the sharpest recent frame's sharpness below which a frame
+  /// counts as blurred, as sharpness also depends on the scene. 0 to only
+  /// use [minSharpness].
+  final double sharpnessRatio;
+
+  /// Mean difference in luminance (0-255) from the previous frame above
+  /// which a frame counts as moving, or 0 to not check for motion.
+  final int maxMotion;
+
+  /// A frame is analysed regardless once frames have been skipped for this
+  /// long, so that scenes that never measure up are still read. Null to skip
+  /// for as long as it takes.
+  final Duration? maxSkip;
+
+  const ScanFrameGate({
+    this.minSharpness = 50,
+    this.sharpnessRatio = 0.5,
+    this.maxMotion = 16,
+    this.maxSkip = const Duration(milliseconds: 500),
+  });
+
+  Map<String, dynamic> toChannelArgs() => {
+        'frameGate': true,
+        'frameGateMinSharpness': minSharpness,
+        'frameGateSharpnessRatio': sharpnessRatio,
+        'frameGateMaxMotion': maxMotion,
+        'frameGateMaxSkipMs': maxSkip?.inMilliseconds ?? 0,
+      };
+}
@@ -0,0 +1,33 @@
+/// Controls how often camera frames are analysed for barcodes.
+///
+/// Analysing fewer frames saves battery and heat. With [idleFps] and
+/// [idleAfter] set, analysis backs off to [idleFps] when no barcode has been
+/// seen and the picture has not changed for [idleAfter], and returns to
+/// [targetFps] as soon as either happens.
+class ScanFrameRate {
+  /// Maximum number of frames analysed per second, or null for every frame.
+  final int? targetFps;
+
+  /// Number of frames analysed per second once idle.
+  final int? idleFps;
+
+  /// Time without barcodes or motion before backing off to [idleFps].
+  final Duration? idleAfter;
+
+  /// Preferred camera frame rate, or null for the device default.
+  final int? cameraFps;
+
+  const ScanFrameRate({
+    this.targetFps,
+    this.idleFps,
+    this.idleAfter,
+    this.cameraFps,
+  });
+
+  Map<String, dynamic> toChannelArgs() => {
+        'targetFps': targetFps,
+        'idleFps': idleFps,
+        'idleAfterMs': idleAfter?.inMilliseconds,
+        'cameraFps': cameraFps,
+      };
+}
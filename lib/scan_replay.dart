@@ -0,0 +1,50 @@
+/// How fast recorded frames are replayed.
+enum ReplaySpeed {
+  /// With the timing they were recorded with.
+  realTime,
+
+  /// As fast as they are detected, without dropping any.
+  max,
+}
+
+/// Replays frames recorded with [ScanRecording] (or any raw NV21 frames
+/// listed in a `manifest.csv` of the same format) instead of using the
+/// camera, for repeatable measurements of decode rate and latency with
+/// `ScanStats`. The preview stays blank.
+class ScanReplay {
+  /// Directory holding `manifest.csv` and the frames it lists.
+  final String directory;
+  final ReplaySpeed speed;
+
+  /// Whether to start over after the last frame.
+  final bool loop;
+
+  const ScanReplay(
+    this.directory, {
+    this.speed = ReplaySpeed.realTime,
+    this.loop = false,
+  });
+
+  Map<String, dynamic> toChannelArgs() => {
+        'replayDirectory': directory,
+        'replaySpeed': speed.name,
+        'replayLoop': loop,
+      };
+}
+
+/// Records the camera frames of a session to [directory] as raw NV21 files
+/// plus a `manifest.csv` of their sizes, rotations and timing, for replaying
+/// with [ScanReplay].
+class ScanRecording {
+  final String directory;
+
+  /// Number of frames recorded before recording stops.
+  final int maxFrames;
+
+  const ScanRecording(this.directory, {this.maxFrames = 300});
+
+  Map<String, dynamic> toChannelArgs() => {
+        'recordDirectory': directory,
+        'recordMaxFrames': maxFrames,
+      };
+}
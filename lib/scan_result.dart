@@ -1,6 +1,6 @@
+import 'dart:convert';
 import 'dart:typed_data';
 
-import 'package:collection/collection.dart';
 import 'package:flutter/rendering.dart';
 import 'package:flutter_qr_bar_scanner/barcode_formats.dart';
 
@@ -22,22 +22,55 @@ class ScanResult {
     );
   }
 
-  static ScanResult fromChannelArgs(Map<String, dynamic> args) {
-    final bb = Map.from(args["bounds"]);
-    final bounds = Rect.fromLTRB(
-      (bb["left"] as int).toDouble(),
-      (bb["top"] as int).toDouble(),
-      (bb["right"] as int).toDouble(),
-      (bb["bottom"] as int).toDouble(),
-    );
+  /// Decodes results sent on the results channel by the native
+  /// `QrResultEncoder`: a little endian int32 count followed, for each result,
+  /// by int32 format (the index of the [BarcodeFormats] value, or -1 if
+  /// unknown), left, top, right and bottom, then the length prefixed
+  /// raw bytes and UTF-8 content (length -1 when absent).
+  static List<ScanResult> decodeList(ByteData data) {
+    int offset = 0;
+    int readInt() {
+      final value = data.getInt32(offset, Endian.little);
+      offset += 4;
+      return value;
+    }
 
-    final format = args["format"] as String;
+    Uint8List? readBytes() {
+      final length = readInt();
+      if (length < 0) {
+        return null;
+      }
+      final bytes = Uint8List.fromList(
+        data.buffer.asUint8List(data.offsetInBytes + offset, length),
+      );
+      offset += length;
+      return bytes;
+    }
 
-    return ScanResult(
-      args["content"] as String?,
-      args["bytes"] as Uint8List,
-      bounds,
-      BarcodeFormats.values.firstWhereOrNull((e) => e.name == format),
-    );
+    final count = readInt();
+    final results = <ScanResult>[];
+    for (int i = 0; i < count; ++i) {
+      final formatIndex = readInt();
+      final format =
+          formatIndex >= 0 && formatIndex < BarcodeFormats.values.length
+              ? BarcodeFormats.values[formatIndex]
+              : null;
+      final bounds = Rect.fromLTRB(
+        readInt().toDouble(),
+        readInt().toDouble(),
+        readInt().toDouble(),
+        readInt().toDouble(),
+      );
+      final bytes = readBytes() ?? Uint8List(0);
+      final content = readBytes();
+      results.add(ScanResult(
+        content == null ? null : utf8.decode(content, allowMalformed: true),
+        bytes,
+        bounds,
+        format,
+      ));
+    }
+    return results;
   }
 }
+
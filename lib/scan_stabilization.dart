@@ -0,0 +1,39 @@
+/// Controls which detected barcodes are reported. Applied natively, so
+/// results that are not reported are never sent to Dart.
+///
+/// The default reports every barcode in every frame it is detected in.
+class ScanStabilization {
+  /// Number of consecutive frames a barcode must be detected in before it is
+  /// reported.
+  final int confirmFrames;
+
+  /// If set, a barcode is reported once and then not again until it has been
+  /// out of view for this long.
+  final Duration? reportOnceUntilGone;
+
+  /// Only report when the set of barcodes in view changes. An empty result is
+  /// reported when all barcodes have gone.
+  final bool reportOnChangeOnly;
+
+  /// Maximum number of barcodes remembered at a time.
+  final int? cacheSize;
+
+  /// How long a barcode that is out of view is remembered for.
+  final Duration? cacheTtl;
+
+  const ScanStabilization({
+    this.confirmFrames = 1,
+    this.reportOnceUntilGone,
+    this.reportOnChangeOnly = false,
+    this.cacheSize,
+    this.cacheTtl,
+  }) : assert(confirmFrames >= 1);
+
+  Map<String, dynamic> toChannelArgs() => {
+        'confirmFrames': confirmFrames,
+        'reportOnceUntilGoneMs': reportOnceUntilGone?.inMilliseconds,
+        'reportOnChangeOnly': reportOnChangeOnly,
+        'dedupCacheSize': cacheSize,
+        'dedupCacheTtlMs': cacheTtl?.inMilliseconds,
+      };
+}
@@ -0,0 +1,117 @@
+/// Latency of one stage of the scanning pipeline, in milliseconds.
+///
+/// Percentiles are approximate (within about 12.5%).
+class StageLatency {
+  final int count;
+  final double p50Ms;
+  final double p95Ms;
+  final double p99Ms;
+  final double maxMs;
+
+  const StageLatency(this.count, this.p50Ms, this.p95Ms, this.p99Ms, this.maxMs);
+
+  static StageLatency fromChannelArgs(Map<dynamic, dynamic> args) {
+    return StageLatency(
+      args['count'] as int,
+      (args['p50Ms'] as num).toDouble(),
+      (args['p95Ms'] as num).toDouble(),
+      (args['p99Ms'] as num).toDouble(),
+      (args['maxMs'] as num).toDouble(),
+    );
+  }
+
+  @override
+  String toString() => 'p50: ${p50Ms}ms, p95: ${p95Ms}ms, p99: ${p99Ms}ms, '
+      'max: ${maxMs}ms ($count)';
+}
+
+/// Performance counters of the current scanning session.
+class ScanStats {
+  /// Frames delivered by the camera.
+  final int framesReceived;
+
+  /// Frames that were not analysed: skipped to limit the frame rate, or
+  /// replaced by a newer frame while detection was busy.
+  final int framesDropped;
+
+  /// Frames `frameGate` kept from detection as blurred.
+  final int framesBlurred;
+
+  /// Frames `frameGate` kept from detection as moving.
+  final int framesMoving;
+
+  /// Frames that went through detection.
+  final int framesAnalysed;
+
+  /// Frames whose results were delivered with at least one barcode.
+  final int framesWithResults;
+
+  final Duration uptime;
+
+  /// Time from start until the first barcode was delivered, if any has been.
+  final Duration? timeToFirstScan;
+
+  /// Frame waiting for detection to become free.
+  final StageLatency queue;
+
+  /// Barcode detection itself.
+  final StageLatency detection;
+
+  /// Detection completion until results are delivered on the main thread.
+  final StageLatency dispatch;
+
+  /// Frame arrival until results are delivered on the main thread.
+  final StageLatency total;
+
+  /// Copying frames into pooled buffers, when `frameBuffers` copies them.
+  final StageLatency copy;
+
+  /// Encoding the results of a frame for sending to Dart.
+  final StageLatency encode;
+
+  const ScanStats({
+    required this.framesReceived,
+    required this.framesDropped,
+    required this.framesBlurred,
+    required this.framesMoving,
+    required this.framesAnalysed,
+    required this.framesWithResults,
+    required this.uptime,
+    required this.timeToFirstScan,
+    required this.queue,
+    required this.detection,
+    required this.dispatch,
+    required this.total,
+    required this.copy,
+    required this.encode,
+  });
+
+  /// Fraction of the frames received that `frameGate` kept from detection.
+  double get gateSkipRate => framesReceived == 0
+      ? 0
+      : (framesBlurred + framesMoving) / framesReceived;
+
+  static ScanStats fromChannelArgs(Map<dynamic, dynamic> args) {
+    Duration duration(num ms) =>
+        Duration(microseconds: (ms.toDouble() * 1000).round());
+    final timeToFirstScan = args['timeToFirstScanMs'] as num?;
+
+    return ScanStats(
+      framesReceived: args['framesReceived'] as int,
+      framesDropped: args['framesDropped'] as int,
+      framesBlurred: args['framesBlurred'] as int,
+      framesMoving: args['framesMoving'] as int,
+      framesAnalysed: args['framesAnalysed'] as int,
+      framesWithResults: args['framesWithResults'] as int,
+      uptime: duration(args['uptimeMs'] as num),
+      timeToFirstScan:
+          timeToFirstScan == null ? null : duration(timeToFirstScan),
+      queue: StageLatency.fromChannelArgs(args['queue']),
+      detection: StageLatency.fromChannelArgs(args['detection']),
+      dispatch: StageLatency.fromChannelArgs(args['dispatch']),
+      total: StageLatency.fromChannelArgs(args['total']),
+      copy: StageLatency.fromChannelArgs(args['copy']),
+      encode: StageLatency.fromChannelArgs(args['encode']),
+    );
+  }
+}
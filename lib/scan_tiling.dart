@@ -0,0 +1,30 @@
+/// Detects in two passes so that small and distant barcodes are read
+/// without detecting in every frame at full resolution: a quick pass on the
+/// frame scaled down, then, if that finds nothing, a pass over overlapping
+/// full resolution tiles of the frame. Tiles without sharp edges are left
+/// out, and a barcode read in two tiles is reported once.
+///
+/// Only worth it with a large `analysisResolution`, such as
+/// `AnalysisResolution.fixed(1920, 1080)`: frames no larger than a tile are
+/// detected as they are.
+class ScanTiling {
+  /// Edge of the square tiles, in frame pixels. Tiles overlap by a quarter of
+  /// this, so barcodes up to that size are always whole in some tile.
+  final int tileSize;
+
+  /// Number of tiles detected at once, each with an engine of its own (at
+  /// most the number of cores). More engines take more memory, ML Kit ones
+  /// in particular.
+  final int parallelism;
+
+  const ScanTiling({
+    this.tileSize = 640,
+    this.parallelism = 2,
+  });
+
+  Map<String, dynamic> toChannelArgs() => {
+        'tiled': true,
+        'tileSize': tileSize,
+        'tileParallelism': parallelism,
+      };
+}
@@ -0,0 +1,93 @@
+import 'dart:convert';
+import 'dart:typed_data';
+
+import 'package:flutter/rendering.dart';
+
+/// Follows barcodes between detections, which come far less often than
+/// preview frames, so that an overlay can move along with the preview
+/// without detecting in every frame. The position of each barcode is
+/// predicted natively from its recent detections (allowing for the time
+/// detection took), and reported as [TrackedBarcode]s at [updateFps] while
+/// any barcode is tracked.
+class ScanTracking {
+  /// A barcode is no longer tracked once it has not been detected for this
+  /// long.
+  final Duration lostAfter;
+
+  /// How many times a second positions are reported.
+  final int updateFps;
+
+  const ScanTracking({
+    this.lostAfter = const Duration(milliseconds: 500),
+    this.updateFps = 30,
+  });
+
+  Map<String, dynamic> toChannelArgs() => {
+        'track': true,
+        'trackLostAfterMs': lostAfter.inMilliseconds,
+        'trackUpdateFps': updateFps,
+      };
+}
+
+/// The predicted position of a tracked barcode.
+class TrackedBarcode {
+  /// Identifies the barcode for as long as it is tracked.
+  final int id;
+  final String? content;
+  final Rect bounds;
+
+  const TrackedBarcode(this.id, this.content, this.bounds);
+
+  /// Decodes positions sent on the tracks channel by the native
+  /// `QrResultEncoder`: a little endian int32 count followed, for each
+  /// barcode, by int32 id, float32 left, top, right and bottom, and the
+  /// length prefixed UTF-8 content, which is only sent the first time
+  /// (length -1 otherwise).
+  ///
+  /// [contents] holds the content of each tracked barcode by id, and is
+  /// updated to hold only the barcodes in this message.
+  static List<TrackedBarcode> decodeList(
+    ByteData data,
+    Map<int, String?> contents,
+    Rect Function(Rect) transform,
+  ) {
+    int offset = 0;
+    int readInt() {
+      final value = data.getInt32(offset, Endian.little);
+      offset += 4;
+      return value;
+    }
+
+    double readFloat() {
+      final value = data.getFloat32(offset, Endian.little);
+      offset += 4;
+      return value;
+    }
+
+    final count = readInt();
+    final tracks = <TrackedBarcode>[];
+    for (int i = 0; i < count; ++i) {
+      final id = readInt();
+      final bounds = Rect.fromLTRB(
+        readFloat(),
+        readFloat(),
+        readFloat(),
+        readFloat(),
+      );
+      final length = readInt();
+      if (length >= 0) {
+        contents[id] = utf8.decode(
+          data.buffer.asUint8List(data.offsetInBytes + offset, length),
+          allowMalformed: true,
+        );
+        offset += length;
+      }
+      tracks.add(TrackedBarcode(id, contents[id], transform(bounds)));
+    }
+    contents.removeWhere((id, _) => !tracks.any((track) => track.id == id));
+    return tracks;
+  }
+
+  @override
+  String toString() => '#$id $content $bounds';
+}
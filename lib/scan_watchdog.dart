@@ -0,0 +1,82 @@
+/// A stall of the scanning pipeline found by the watchdog.
+enum ScanHealthIssue {
+  /// The camera stopped delivering frames.
+  cameraStalled,
+
+  /// The camera stopped delivering frames because every frame buffer was
+  /// held and never given back.
+  imagesLeaked,
+
+  /// A barcode detection did not complete.
+  detectionStuck,
+
+  /// `FlutterQrReader.heartbeat` was not called within
+  /// [ScanWatchdog.heartbeatTimeout].
+  heartbeatMissed,
+}
+
+/// What the watchdog did about a [ScanHealthIssue].
+enum ScanRecovery {
+  /// Closed and reopened the camera (with new frame buffers for
+  /// [ScanHealthIssue.imagesLeaked]).
+  restartCamera,
+
+  /// Abandoned the stuck detection and continued with a new detector.
+  restartDetector,
+
+  /// Stopped the session.
+  stop,
+}
+
+/// Reported to `healthHandler` / `ScannerCamera.onHealthEvent` each time the
+/// watchdog recovers the session from a stall.
+class ScanHealthEvent {
+  final ScanHealthIssue issue;
+  final ScanRecovery recovery;
+
+  /// How long the pipeline had been stalled for.
+  final Duration stalledFor;
+
+  const ScanHealthEvent(this.issue, this.recovery, this.stalledFor);
+
+  static ScanHealthEvent fromChannelArgs(Map<dynamic, dynamic> args) {
+    return ScanHealthEvent(
+      ScanHealthIssue.values.byName(args['issue']),
+      ScanRecovery.values.byName(args['action']),
+      Duration(milliseconds: args['stalledMs'] as int),
+    );
+  }
+
+  @override
+  String toString() =>
+      '${issue.name} for ${stalledFor.inMilliseconds}ms: ${recovery.name}';
+}
+
+/// Controls the native watchdog, which notices when a session stops
+/// producing frames or results and recovers it without user action. Pass
+/// [Duration.zero] to turn a check off.
+class ScanWatchdog {
+  /// The camera is restarted when it delivers no frame for this long. Repeated
+  /// restarts that do not help are spaced out, up to 8 times this.
+  final Duration cameraStallTimeout;
+
+  /// A detection running for this long is abandoned and the detector
+  /// replaced.
+  final Duration detectionTimeout;
+
+  /// The session is stopped when `FlutterQrReader.heartbeat` is not called
+  /// for this long. Off by default.
+  final Duration heartbeatTimeout;
+
+  const ScanWatchdog({
+    this.cameraStallTimeout = const Duration(seconds: 3),
+    this.detectionTimeout = const Duration(seconds: 5),
+    this.heartbeatTimeout = Duration.zero,
+  });
+
+  Map<String, dynamic> toChannelArgs() => {
+        'cameraStallTimeoutMs': cameraStallTimeout.inMilliseconds,
+        'detectionTimeoutMs': detectionTimeout.inMilliseconds,
+        'heartbeatTimeout': heartbeatTimeout.inMilliseconds,
+      };
+}
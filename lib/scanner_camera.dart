@@ -1,16 +1,48 @@
 import 'dart:async';
 
 import 'package:flutter/material.dart';
+import 'package:flutter_qr_bar_scanner/analysis_resolution.dart';
 import 'package:flutter_qr_bar_scanner/barcode_formats.dart';
+import 'package:flutter_qr_bar_scanner/scan_auto_torch.dart';
 import 'package:flutter_qr_bar_scanner/flutter_qr_bar_scanner.dart';
+import 'package:flutter_qr_bar_scanner/scan_aggregation.dart';
+import 'package:flutter_qr_bar_scanner/scan_engine.dart';
+import 'package:flutter_qr_bar_scanner/scan_filter.dart';
+import 'package:flutter_qr_bar_scanner/scan_focus.dart';
+import 'package:flutter_qr_bar_scanner/scan_frame_buffers.dart';
+import 'package:flutter_qr_bar_scanner/scan_frame_gate.dart';
+import 'package:flutter_qr_bar_scanner/scan_frame_rate.dart';
+import 'package:flutter_qr_bar_scanner/scan_replay.dart';
 import 'package:flutter_qr_bar_scanner/scan_result.dart';
+import 'package:flutter_qr_bar_scanner/scan_stabilization.dart';
+import 'package:flutter_qr_bar_scanner/scan_tiling.dart';
+import 'package:flutter_qr_bar_scanner/scan_tracking.dart';
+import 'package:flutter_qr_bar_scanner/scan_stats.dart';
+import 'package:flutter_qr_bar_scanner/scan_watchdog.dart';
 import 'package:flutter_qr_bar_scanner/camera_state_controller.dart';
 import 'package:native_device_orientation/native_device_orientation.dart';
 
+export 'package:flutter_qr_bar_scanner/analysis_resolution.dart';
 export 'package:flutter_qr_bar_scanner/barcode_formats.dart';
+export 'package:flutter_qr_bar_scanner/scan_auto_torch.dart';
 export 'package:flutter_qr_bar_scanner/camera_orientation.dart';
 export 'package:flutter_qr_bar_scanner/camera_state_controller.dart';
+export 'package:flutter_qr_bar_scanner/decoded_image.dart';
+export 'package:flutter_qr_bar_scanner/scan_aggregation.dart';
+export 'package:flutter_qr_bar_scanner/scan_buffering.dart';
+export 'package:flutter_qr_bar_scanner/scan_engine.dart';
+export 'package:flutter_qr_bar_scanner/scan_filter.dart';
+export 'package:flutter_qr_bar_scanner/scan_focus.dart';
+export 'package:flutter_qr_bar_scanner/scan_frame_buffers.dart';
+export 'package:flutter_qr_bar_scanner/scan_frame_gate.dart';
+export 'package:flutter_qr_bar_scanner/scan_frame_rate.dart';
+export 'package:flutter_qr_bar_scanner/scan_replay.dart';
 export 'package:flutter_qr_bar_scanner/scan_result.dart';
+export 'package:flutter_qr_bar_scanner/scan_stabilization.dart';
+export 'package:flutter_qr_bar_scanner/scan_tiling.dart';
+export 'package:flutter_qr_bar_scanner/scan_tracking.dart';
+export 'package:flutter_qr_bar_scanner/scan_stats.dart';
+export 'package:flutter_qr_bar_scanner/scan_watchdog.dart';
 
 final WidgetBuilder _defaultNotStartedBuilder =
     (context) => Text("Camera Loading ...");
@@ -26,13 +58,35 @@ typedef Widget ErrorCallback(BuildContext context, Object? error);
 class ScannerCamera extends StatefulWidget {
   ScannerCamera({
     Key? key,
-    required this.qrCodeCallback,
+    this.qrCodeCallback,
     this.child,
     this.fit = BoxFit.cover,
     WidgetBuilder? notStartedBuilder,
     WidgetBuilder? offscreenBuilder,
     ErrorCallback? onError,
     this.formats,
+    this.engine = ScanEngine.mlKit,
+    this.tiling,
+    this.analysisResolution = const AnalysisResolution(),
+    this.scanRegion,
+    this.filter,
+    this.stabilization = const ScanStabilization(),
+    this.frameRate = const ScanFrameRate(),
+    this.frameGate,
+    this.frameBuffers = const ScanFrameBuffers(),
+    this.focus = const ScanFocus(),
+    this.autoTorch,
+    this.replay,
+    this.recording,
+    this.aggregation,
+    this.onAggregate,
+    this.tracking,
+    this.onTracks,
+    this.watchdog = const ScanWatchdog(),
+    this.onHealthEvent,
+    this.onStats,
+    this.statsInterval = const Duration(seconds: 5),
+    this.pauseTimeout = const Duration(seconds: 30),
     CameraStateController? cameraController,
   })  : notStartedBuilder = notStartedBuilder ?? _defaultNotStartedBuilder,
         offscreenBuilder =
@@ -42,12 +96,77 @@ class ScannerCamera extends StatefulWidget {
         super(key: key);
 
   final BoxFit fit;
-  final ValueChanged<Iterable<ScanResult>> qrCodeCallback;
+  /// Called with the results of each frame in which barcodes were found.
+  /// Alternatively, results can be read from `FlutterQrReader.results()`.
+  final ValueChanged<Iterable<ScanResult>>? qrCodeCallback;
   final Widget? child;
   final WidgetBuilder notStartedBuilder;
   final WidgetBuilder offscreenBuilder;
   final ErrorCallback onError;
   final List<BarcodeFormats>? formats;
+  final ScanEngine engine;
+
+  /// Detects in a coarse pass and then in tiles, for reading small and
+  /// distant barcodes, or null to detect in whole frames.
+  final ScanTiling? tiling;
+  final AnalysisResolution analysisResolution;
+
+  /// Part of the widget (normalized to 0..1) that barcodes are read in, or null
+  /// to read in the whole preview. Reading in a smaller region is faster.
+  final Rect? scanRegion;
+
+  /// Rules a barcode must match to be reported, or null to report every
+  /// barcode.
+  final ScanFilter? filter;
+  final ScanStabilization stabilization;
+  final ScanFrameRate frameRate;
+
+  /// Keeps blurred and moving frames from detection, or null to analyse
+  /// every frame.
+  final ScanFrameGate? frameGate;
+  final ScanFrameBuffers frameBuffers;
+
+  /// Focus and exposure settings. The zoom ratio is set with
+  /// [CameraStateController.zoom].
+  final ScanFocus focus;
+
+  /// Turns the torch on by itself in the dark, or null to leave it to
+  /// [CameraStateController.isTorchOn]. Setting
+  /// [CameraStateController.isTorchOn] takes the torch over until the scanner
+  /// is started again.
+  final AutoTorch? autoTorch;
+
+  /// Recorded frames to read instead of the camera, for testing.
+  final ScanReplay? replay;
+
+  /// Where to record camera frames to, for replaying later.
+  final ScanRecording? recording;
+
+  /// Collects barcodes across frames and reports changes to [onAggregate]
+  /// instead of reporting each frame to [qrCodeCallback], or null.
+  final ScanAggregation? aggregation;
+  final ValueChanged<ScanAggregateDelta>? onAggregate;
+
+  /// Tracks barcodes between detections and reports their predicted
+  /// positions (in widget coordinates, like [ScanResult.bounds]) to
+  /// [onTracks] several times per detection, for overlays that follow the
+  /// preview smoothly. Null to not track.
+  final ScanTracking? tracking;
+  final ValueChanged<List<TrackedBarcode>>? onTracks;
+
+  /// Notices when scanning stalls and recovers it.
+  final ScanWatchdog watchdog;
+
+  /// Called each time the watchdog recovered scanning from a stall.
+  final ValueChanged<ScanHealthEvent>? onHealthEvent;
+
+  /// Called with performance counters every [statsInterval] while scanning.
+  final ValueChanged<ScanStats>? onStats;
+  final Duration statsInterval;
+
+  /// How long the camera session is kept open while the app is in the
+  /// background or the scanner is off screen, so that coming back is quick.
+  final Duration pauseTimeout;
   final CameraStateController cameraController;
 
   @override
@@ -61,12 +180,14 @@ class _ScannerCameraState extends State<ScannerCamera>
     super.initState();
     WidgetsBinding.instance.addObserver(this);
     widget.cameraController.torchNotifier.addListener(_setTorchState);
+    widget.cameraController.zoomNotifier.addListener(_setZoom);
     widget.cameraController.cameraOrientationNotifier.addListener(restart);
   }
 
   @override
   dispose() {
     widget.cameraController.cameraOrientationNotifier.removeListener(restart);
+    widget.cameraController.zoomNotifier.removeListener(_setZoom);
     widget.cameraController.torchNotifier.removeListener(_setTorchState);
     WidgetsBinding.instance.removeObserver(this);
     super.dispose();
@@ -75,26 +196,60 @@ class _ScannerCameraState extends State<ScannerCamera>
   @override
   void didChangeAppLifecycleState(AppLifecycleState state) {
     if (state == AppLifecycleState.resumed) {
-      setState(() => onScreen = true);
+      if (!onScreen) {
+        _resume();
+      }
     } else {
-      if (_asyncInitOnce != null && onScreen) {
-        FlutterQrReader.stop();
+      if (_sessionId != null && onScreen) {
+        FlutterQrReader.pause(
+          idleTimeout: widget.pauseTimeout,
+          sessionId: _sessionId,
+        );
       }
-      setState(() {
-        onScreen = false;
-        _asyncInitOnce = null;
-      });
+      setState(() => onScreen = false);
     }
   }
 
+  /// Resumes the paused session, or starts a new one if it has been released.
+  Future<void> _resume() async {
+    final resumed = _asyncInitOnce != null &&
+        _sessionId != null &&
+        await FlutterQrReader.resume(sessionId: _sessionId);
+    if (!resumed) {
+      await _stopSession();
+    }
+    if (!mounted) {
+      return;
+    }
+    setState(() {
+      onScreen = true;
+      if (!resumed) {
+        _asyncInitOnce = null;
+      }
+    });
+  }
+
   bool onScreen = true;
   Future<PreviewDetails>? _asyncInitOnce;
+  int? _sessionId;
   Orientation? _deviceOrientation;
   PreviewDetails? _previewDetails;
+  Rect? _lastFrameRegion;
 
   Future<void> _setTorchState() async {
     bool isOn = widget.cameraController.isTorchOn;
-    await FlutterQrReader.setTorchState(isOn);
+    if (_sessionId != null) {
+      await FlutterQrReader.setTorchState(isOn, sessionId: _sessionId);
+    }
+  }
+
+  Future<void> _setZoom() async {
+    if (_sessionId != null) {
+      await FlutterQrReader.setZoom(
+        widget.cameraController.zoom,
+        sessionId: _sessionId,
+      );
+    }
   }
 
   Future<PreviewDetails> _asyncInit(num width, num height) async {
@@ -107,19 +262,60 @@ class _ScannerCameraState extends State<ScannerCamera>
       qrCodeHandler: widget.qrCodeCallback,
       transformBuilder: _transformBuilder,
       formats: widget.formats,
+      engine: widget.engine,
+      tiling: widget.tiling,
       cameraOrientation: widget.cameraController.orientation,
+      analysisResolution: widget.analysisResolution,
+      filter: widget.filter,
+      stabilization: widget.stabilization,
+      frameRate: widget.frameRate,
+      frameGate: widget.frameGate,
+      frameBuffers: widget.frameBuffers,
+      focus: widget.focus,
+      autoTorch: widget.autoTorch,
+      replay: widget.replay,
+      recording: widget.recording,
+      aggregation: widget.aggregation,
+      aggregateHandler: widget.onAggregate,
+      tracking: widget.tracking,
+      trackHandler: widget.onTracks,
+      watchdog: widget.watchdog,
+      healthHandler: widget.onHealthEvent,
+      statsInterval: widget.onStats == null ? null : widget.statsInterval,
+      statsHandler: widget.onStats,
     );
+    _sessionId = ret.sessionId;
+    if (!mounted) {
+      // disposed while starting
+      await _stopSession();
+      return ret;
+    }
 
-    await _setTorchState();
+    // the torch starts off, and switching it takes it over from autoTorch
+    if (widget.cameraController.isTorchOn) {
+      await _setTorchState();
+    }
+    if (widget.cameraController.zoom != 1) {
+      await _setZoom();
+    }
+    _lastFrameRegion = null;
 
     return ret;
   }
 
   Rect Function(Rect) _transformBuilder() {
+    final geometry = _coverGeometry();
+    if (geometry == null) {
+      return (r) => r;
+    }
+    return geometry.toWidget;
+  }
+
+  _CoverGeometry? _coverGeometry() {
     assert(widget.fit == BoxFit.cover);
 
     if (_previewDetails == null) {
-      return (r) => r;
+      return null;
     }
     final preview = _previewDetails!;
     final devicePixelRatio = MediaQuery.of(context).devicePixelRatio;
@@ -138,6 +334,9 @@ class _ScannerCameraState extends State<ScannerCamera>
     );
     final previewSizeResolved =
         (rotationCompensation % 2 == 0) ? preview.size.flipped : preview.size;
+    final analysisSizeResolved = (rotationCompensation % 2 == 0)
+        ? preview.analysisSize.flipped
+        : preview.analysisSize;
 
     switch (widget.fit) {
       case BoxFit.cover:
@@ -150,14 +349,14 @@ class _ScannerCameraState extends State<ScannerCamera>
           (previewSizeResolved.height * scale - displaySize.height) / 2,
         );
 
-        return (bounds) {
-          return Rect.fromLTWH(
-            (bounds.left * scale - offset.dx) / devicePixelRatio,
-            (bounds.top * scale - offset.dy) / devicePixelRatio,
-            bounds.width * scale / devicePixelRatio,
-            bounds.height * scale / devicePixelRatio,
-          );
-        };
+        return _CoverGeometry(
+          devicePixelRatio: devicePixelRatio,
+          widgetSize: widgetSize,
+          previewSize: previewSizeResolved,
+          analysisSize: analysisSizeResolved,
+          scale: scale,
+          offset: offset,
+        );
       case BoxFit.fill:
       case BoxFit.contain:
       case BoxFit.fitWidth:
@@ -168,11 +367,27 @@ class _ScannerCameraState extends State<ScannerCamera>
     }
   }
 
+  /// Sends [ScannerCamera.scanRegion] to the scanner, mapped from widget to
+  /// frame coordinates. Only sends it when the mapped region changed.
+  void _applyScanRegion() {
+    if (!mounted || _previewDetails == null) {
+      return;
+    }
+    final region = widget.scanRegion;
+    final frameRegion =
+        region == null ? null : _coverGeometry()?.toNormalizedFrame(region);
+    if (frameRegion == _lastFrameRegion) {
+      return;
+    }
+    _lastFrameRegion = frameRegion;
+    FlutterQrReader.setScanRegion(frameRegion, sessionId: _sessionId);
+  }
+
   /// This method can be used to restart scanning
   ///  the event that it was paused.
   void restart() {
     (() async {
-      await FlutterQrReader.stop();
+      await _stopSession();
       setState(() {
         _asyncInitOnce = null;
       });
@@ -183,14 +398,40 @@ class _ScannerCameraState extends State<ScannerCamera>
   /// camera.
   void stop() {
     (() async {
-      await FlutterQrReader.stop();
+      await _stopSession();
     })();
   }
 
+  Future<void> _stopSession() async {
+    final sessionId = _sessionId;
+    _sessionId = null;
+    if (sessionId != null) {
+      await FlutterQrReader.stop(sessionId: sessionId);
+    }
+  }
+
   @override
   deactivate() {
     super.deactivate();
-    FlutterQrReader.stop();
+    // a scanner built again with the same settings (e.g. when switching back
+    // to its tab) picks the paused session up again when it starts, and a
+    // scanner below this one gets the camera back. The camera is closed
+    // meanwhile, so only the session is kept for pauseTimeout.
+    if (_sessionId != null) {
+      FlutterQrReader.pause(
+        idleTimeout: widget.pauseTimeout,
+        yieldCamera: true,
+        sessionId: _sessionId,
+      );
+    }
+  }
+
+  @override
+  void activate() {
+    super.activate();
+    if (onScreen && _asyncInitOnce != null) {
+      _resume();
+    }
   }
 
   @override
@@ -224,6 +465,8 @@ class _ScannerCameraState extends State<ScannerCamera>
                 return OrientationBuilder(
                   builder: (context, orientation) {
                     _deviceOrientation = orientation;
+                    WidgetsBinding.instance
+                        .addPostFrameCallback((_) => _applyScanRegion());
 
                     Widget preview = SizedBox(
                       width: constraints.maxWidth,
@@ -257,6 +500,54 @@ class _ScannerCameraState extends State<ScannerCamera>
   }
 }
 
+class _CoverGeometry {
+  final double devicePixelRatio;
+  final Size widgetSize;
+
+  /// preview and analysis sizes, rotated to match the widget.
+  final Size previewSize;
+  final Size analysisSize;
+  final double scale;
+  final Offset offset;
+
+  _CoverGeometry({
+    required this.devicePixelRatio,
+    required this.widgetSize,
+    required this.previewSize,
+    required this.analysisSize,
+    required this.scale,
+    required this.offset,
+  });
+
+  /// Maps bounds in analysis frame coordinates to widget coordinates.
+  Rect toWidget(Rect bounds) {
+    final analysisScaleX = previewSize.width / analysisSize.width;
+    final analysisScaleY = previewSize.height / analysisSize.height;
+    return Rect.fromLTWH(
+      (bounds.left * analysisScaleX * scale - offset.dx) / devicePixelRatio,
+      (bounds.top * analysisScaleY * scale - offset.dy) / devicePixelRatio,
+      bounds.width * analysisScaleX * scale / devicePixelRatio,
+      bounds.height * analysisScaleY * scale / devicePixelRatio,
+    );
+  }
+
+  /// Maps a region normalized to the widget to one normalized to the frame.
+  Rect toNormalizedFrame(Rect region) {
+    double x(double dx) =>
+        ((dx * widgetSize.width * devicePixelRatio + offset.dx) / scale) /
+        previewSize.width;
+    double y(double dy) =>
+        ((dy * widgetSize.height * devicePixelRatio + offset.dy) / scale) /
+        previewSize.height;
+    return Rect.fromLTRB(
+      x(region.left),
+      y(region.top),
+      x(region.right),
+      y(region.bottom),
+    );
+  }
+}
+
 int _getRotationCompensation(
   final NativeDeviceOrientation deviceOrientation,
   final int cameraOrientation,